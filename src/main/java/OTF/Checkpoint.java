@@ -0,0 +1,325 @@
+package OTF;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+import OTF.Model.DeterminizeRecord;
+import OTF.Model.Frontier;
+import OTF.Registry.Registry;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import net.automatalib.alphabet.Alphabet;
+import net.automatalib.automaton.fsa.impl.CompactDFA;
+import net.automatalib.automaton.fsa.impl.CompactNFA;
+
+/**
+ * Checkpoints of a running OTF determinization: the partial DFA, finished states, free state IDs, the frontier,
+ * and the registry contents, in a compact binary format.
+ * Checkpoints are written right after a minimization pass (when the registry has just been compressed),
+ * at most once per interval, to a temporary file that then replaces the previous checkpoint atomically.
+ * <p>
+ * Format (big-endian): magic, version, fingerprint of the run (see {@link #fingerprint}), number of inputs;
+ * DFA size, initial state, accepting words, transition table; finished words; free state IDs;
+ * frontier records (address, words) in pop order; registry contents (see {@link Registry#writeCheckpoint(DataOutput)}).
+ * Bit sets are written as a word count followed by the words.
+ * <p>
+ * The restored frontier pops its records in the same order as the checkpointed one, so a resumed run continues
+ * the original exploration order.
+ */
+public final class Checkpoint {
+    private static final int MAGIC = 0x4F544643; // "OTFC"
+    private static final int VERSION = 2;
+    private static final int BUFFER_BYTES = 1 << 20;
+
+    private final Path path;
+    private final long intervalMillis;
+    private final boolean resume;
+    private final long fingerprint;
+
+    private long lastWriteMillis;
+    private int written = 0;
+    private long lastWriteBytes = 0;
+    private long lastWriteNanos = 0;
+
+    /**
+     * @param path - checkpoint file
+     * @param intervalMillis - minimum time between checkpoints; 0 writes one after every minimization pass
+     * @param resume - whether doOTF resumes from path if it exists
+     * @param fingerprint - fingerprint of the run; a checkpoint is only resumed by a run with the same fingerprint
+     */
+    public Checkpoint(Path path, long intervalMillis, boolean resume, long fingerprint) {
+        this.path = path;
+        this.intervalMillis = intervalMillis;
+        this.resume = resume;
+        this.fingerprint = fingerprint;
+        this.lastWriteMillis = System.currentTimeMillis();
+    }
+
+    /**
+     * Fingerprint of a run: a hash of the NFA (transitions, acceptance, initial states), the simulation relations,
+     * and the algorithm. Resuming a checkpoint written for another NFA would otherwise silently give a wrong DFA
+     * whenever the state and input counts happen to match.
+     * @param nfa - NFA as explored by the OTF loop, i.e., after trimming
+     * @param simRels - simulation relations of the registry; empty without simulation
+     * @param algorithm - e.g., CCL or CCLS
+     */
+    public static long fingerprint(CompactNFA<Integer> nfa, BitSet[] simRels, String algorithm) {
+        final int numStates = nfa.size();
+        final int numInputs = nfa.numInputs();
+        long hash = mix(mix(algorithm.toUpperCase().hashCode(), numStates), numInputs);
+        for (int q : nfa.getInitialStates().stream().mapToInt(Integer::intValue).sorted().toArray()) {
+            hash = mix(hash, q);
+        }
+        for (int q = 0; q < numStates; q++) {
+            hash = mix(hash, nfa.isAccepting(q) ? 1 : 0);
+            for (int j = 0; j < numInputs; j++) {
+                final int[] targets = nfa.getTransitions(q, j).stream().mapToInt(Integer::intValue).toArray();
+                Arrays.sort(targets);
+                hash = mix(hash, targets.length);
+                for (int t : targets) {
+                    hash = mix(hash, t);
+                }
+            }
+        }
+        hash = mix(hash, simRels.length);
+        for (BitSet rel : simRels) {
+            final long[] words = rel.toLongArray();
+            hash = mix(hash, words.length);
+            for (long word : words) {
+                hash = mix(hash, word);
+            }
+        }
+        return hash;
+    }
+
+    private static long mix(long hash, long value) {
+        return (Long.rotateLeft(hash, 23) ^ value) * 0x9E3779B97F4A7C15L;
+    }
+
+    /**
+     * Whether doOTF should resume from this checkpoint, rather than start from the initial state.
+     */
+    public boolean canResume() {
+        return resume && Files.exists(path);
+    }
+
+    /**
+     * Called by the OTF loop after each minimization pass; writes a checkpoint if the interval has passed.
+     */
+    <I> void afterMinimization(CompactDFA<I> out, BitSet finishedStates, IntArrayList stateBuffer,
+                               Frontier frontier, Registry registry) {
+        if (System.currentTimeMillis() - lastWriteMillis < intervalMillis) {
+            return;
+        }
+        write(out, finishedStates, stateBuffer, frontier, registry);
+        if (OTFDeterminization.DEBUG) {
+            System.out.println("DEBUG: Checkpoint " + written + " written: " + lastWriteBytes + " bytes in "
+                + (lastWriteNanos / 1000000) + "ms");
+        }
+    }
+
+    /**
+     * Write a checkpoint now.
+     */
+    public <I> void write(CompactDFA<I> out, BitSet finishedStates, IntArrayList stateBuffer,
+                          Frontier frontier, Registry registry) {
+        final long start = System.nanoTime();
+        final Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (DataOutputStream dos = new DataOutputStream(
+            new BufferedOutputStream(Files.newOutputStream(temp), BUFFER_BYTES))) {
+            dos.writeInt(MAGIC);
+            dos.writeInt(VERSION);
+            dos.writeLong(fingerprint);
+            writeDFA(dos, out);
+            writeBitSet(dos, finishedStates);
+            dos.writeInt(stateBuffer.size());
+            for (int i = 0; i < stateBuffer.size(); i++) {
+                dos.writeInt(stateBuffer.getInt(i));
+            }
+            writeFrontier(dos, frontier);
+            registry.writeCheckpoint(dos);
+            dos.flush();
+            lastWriteBytes = dos.size();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write checkpoint " + temp, e);
+        }
+        try {
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not replace checkpoint " + path, e);
+        }
+        written++;
+        lastWriteMillis = System.currentTimeMillis();
+        lastWriteNanos = System.nanoTime() - start;
+    }
+
+    /**
+     * Restore a checkpoint into the given (empty) containers, frontier, and registry.
+     * @return the partial DFA
+     */
+    public <I> CompactDFA<I> restore(Alphabet<I> inputs, BitSet finishedStates, IntArrayList stateBuffer,
+                                     Frontier frontier, Registry registry) {
+        try (DataInputStream dis = new DataInputStream(
+            new BufferedInputStream(Files.newInputStream(path), BUFFER_BYTES))) {
+            if (dis.readInt() != MAGIC) {
+                throw new IOException("Not an OTF checkpoint");
+            }
+            final int version = dis.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported checkpoint version " + version);
+            }
+            if (dis.readLong() != fingerprint) {
+                throw new IOException("Checkpoint was written for another NFA or algorithm");
+            }
+            final CompactDFA<I> out = readDFA(dis, inputs);
+            finishedStates.or(readBitSet(dis));
+            final int numFree = dis.readInt();
+            for (int i = 0; i < numFree; i++) {
+                stateBuffer.add(dis.readInt());
+            }
+            final int numRecords = dis.readInt();
+            if (numRecords < 0) {
+                throw new IOException("Corrupt checkpoint: frontier of " + numRecords + " records");
+            }
+            final List<DeterminizeRecord<BitSet>> records = new ArrayList<>(numRecords);
+            for (int i = 0; i < numRecords; i++) {
+                final int address = dis.readInt();
+                records.add(new DeterminizeRecord<>(readBitSet(dis), address));
+            }
+            frontier.pushAll(records);
+            registry.readCheckpoint(dis);
+            return out;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read checkpoint " + path, e);
+        }
+    }
+
+    private static <I> void writeDFA(DataOutput out, CompactDFA<I> dfa) throws IOException {
+        final int numStates = dfa.size();
+        final int numInputs = dfa.numInputs();
+        out.writeInt(numInputs);
+        out.writeInt(numStates);
+        out.writeInt(dfa.getIntInitialState());
+        final BitSet accepting = new BitSet(numStates);
+        for (int q = 0; q < numStates; q++) {
+            if (dfa.isAccepting(q)) {
+                accepting.set(q);
+            }
+        }
+        writeBitSet(out, accepting);
+        for (int q = 0; q < numStates; q++) {
+            for (int j = 0; j < numInputs; j++) {
+                out.writeInt(dfa.getSuccessor(q, j)); // negative if undefined
+            }
+        }
+    }
+
+    private static <I> CompactDFA<I> readDFA(DataInput in, Alphabet<I> inputs) throws IOException {
+        final int numInputs = in.readInt();
+        if (numInputs != inputs.size()) {
+            throw new IOException("Checkpoint has " + numInputs + " inputs, expected " + inputs.size());
+        }
+        final int numStates = in.readInt();
+        final int init = in.readInt();
+        final BitSet accepting = readBitSet(in);
+        final CompactDFA<I> dfa = new CompactDFA<>(inputs, numStates);
+        for (int q = 0; q < numStates; q++) {
+            dfa.addState(accepting.get(q));
+        }
+        dfa.setInitialState(init);
+        for (int q = 0; q < numStates; q++) {
+            for (int j = 0; j < numInputs; j++) {
+                final int succ = in.readInt();
+                if (succ >= 0) {
+                    dfa.setTransition(q, j, succ);
+                }
+            }
+        }
+        return dfa;
+    }
+
+    private static void writeFrontier(DataOutput out, Frontier frontier) throws IOException {
+        final int numRecords = frontier.size();
+        out.writeInt(numRecords);
+        final int[] count = {0};
+        frontier.forEach(record -> {
+            try {
+                out.writeInt(record.outputAddress());
+                writeBitSet(out, record.inputState());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            count[0]++;
+        });
+        if (count[0] != numRecords) {
+            throw new IllegalStateException("Frontier visited " + count[0] + " of " + numRecords + " records");
+        }
+    }
+
+    /**
+     * Write a BitSet as its word count and words.
+     */
+    public static void writeBitSet(DataOutput out, BitSet set) throws IOException {
+        final long[] words = set.toLongArray();
+        writeWords(out, words, words.length);
+    }
+
+    public static BitSet readBitSet(DataInput in) throws IOException {
+        return BitSet.valueOf(readWords(in));
+    }
+
+    /**
+     * Write the first numWords words, preceded by numWords.
+     */
+    public static void writeWords(DataOutput out, long[] words, int numWords) throws IOException {
+        out.writeInt(numWords);
+        for (int w = 0; w < numWords; w++) {
+            out.writeLong(words[w]);
+        }
+    }
+
+    public static long[] readWords(DataInput in) throws IOException {
+        final int numWords = in.readInt();
+        if (numWords < 0) {
+            throw new IOException("Corrupt checkpoint: bit set of " + numWords + " words");
+        }
+        final long[] words = new long[numWords];
+        for (int w = 0; w < numWords; w++) {
+            words[w] = in.readLong();
+        }
+        return words;
+    }
+
+    /**
+     * Checkpoints written so far.
+     */
+    public int getWritten() {
+        return written;
+    }
+
+    /**
+     * Size of the last checkpoint written, in bytes.
+     */
+    public long getLastWriteBytes() {
+        return lastWriteBytes;
+    }
+
+    /**
+     * Time taken by the last checkpoint write, in nanoseconds.
+     */
+    public long getLastWriteNanos() {
+        return lastWriteNanos;
+    }
+}
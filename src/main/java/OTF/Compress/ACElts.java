@@ -10,17 +10,29 @@ import java.util.*;
 public final class ACElts {
     List<SmartBitSet> elts = new ArrayList<>(2);
 
-    // small-elt (non-InvertedIndex) fields
-    boolean isSorted = true; // on-demand sorting, used for isSubset short-circuit
+    // small-elt (non-SubsetIndex) fields
+    // Until there's a SubsetIndex, elts is kept in ascending order of cardinality, so each cardinality is a
+    // contiguous bucket, and the first and last elements have the min and max cardinalities.
+    // Subset probes only scan the buckets below a cardinality, superset probes the ones above it.
 
-    // large-elt (InvertedIndex) fields
-    private final SmartBitSet deadElts = new SmartBitSet(); // re-use of elements, for performance -- only used by InvertedIndex
-    InvertedIndex invertedIndex = null;
-    private static final int MAX_DEAD_ELTS = 400; // maximum dead elts before we just rebuild
-    private static final int MIN_INVERTED_INDEX_SIZE = 32; // size before we start using an inverted index
+    // large-elt (SubsetIndex) fields
+    private final SmartBitSet deadElts = new SmartBitSet(); // re-use of elements, for performance -- only used by SubsetIndex
+    SubsetIndex subsetIndex = null;
+    private final SubsetIndex.Kind indexKind;
+    private static final int MAX_DEAD_ELTS = 400; // maximum dead elts before we just rebuild, if most elts are dead
+    private static final int COMPACTION_STEPS = 8; // dead elts compacted away per unify
+    private static final int MIN_INVERTED_INDEX_SIZE = 32; // size before we start using an index
 
     public ACElts(SmartBitSet elt) {
+        this(elt, SubsetIndex.Kind.INVERTED);
+    }
+
+    /**
+     * @param indexKind - index to use once this AC is large enough
+     */
+    public ACElts(SmartBitSet elt, SubsetIndex.Kind indexKind) {
         this.elts.add((SmartBitSet)elt.clone());
+        this.indexKind = indexKind;
     }
 
     public int getEltsSize() {
@@ -31,12 +43,17 @@ public final class ACElts {
      * Is there an element of this ACElts that's a subset of newElt ?
      */
     boolean properSubsetExists(SmartBitSet newElt) {
-        if (invertedIndex != null) {
-            return invertedIndex.findFirstSubset(this.elts, this.deadElts, newElt) != null;
-        }
-        if (!isSorted) {
-            this.elts.sort(SmartBitSet.SMART_CARDINALITY_COMPARATOR);
-            isSorted = true;
+        return properSubsetExists(newElt, null);
+    }
+
+    /**
+     * As above; with a non-null tempUnionInv, the inverted index search uses it as scratch instead of its own.
+     * Concurrent callers must each pass their own, after prepareForConcurrentSearch().
+     */
+    boolean properSubsetExists(SmartBitSet newElt, SmartBitSet tempUnionInv) {
+        if (subsetIndex != null) {
+            return (tempUnionInv == null ? subsetIndex.findFirstSubset(this.elts, this.deadElts, newElt)
+                : subsetIndex.findFirstSubset(this.elts, this.deadElts, newElt, tempUnionInv)) != null;
         }
         final int newEltCard = newElt.cardinality();
         for (SmartBitSet oldElt : this.elts) {
@@ -44,7 +61,7 @@ public final class ACElts {
                 break; // oldElt is larger (or equal in size) to newElt, can't be a subset
                 // if equal, it would have been found already
             }
-            if (oldElt.isSubset(newElt)) {
+            if (oldElt.isSubsetBySignature(newElt)) {
                 // newElt is a superset of oldElt, thus in the AC
                 return true;
             }
@@ -52,6 +69,35 @@ public final class ACElts {
         return false;
     }
 
+    /**
+     * Position of the first element with a cardinality larger than card, i.e., where an element of
+     * cardinality card goes. Only for small elts, which are in ascending order of cardinality.
+     */
+    private int bucketEnd(int card) {
+        int lo = 0;
+        int hi = this.elts.size();
+        while (lo < hi) {
+            final int mid = (lo + hi) >>> 1;
+            if (this.elts.get(mid).cardinality() <= card) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Do the lazy work of properSubsetExists() now: cache the element cardinalities.
+     * Afterwards, properSubsetExists() only reads this ACElts, until it's modified again.
+     */
+    void prepareForConcurrentSearch() {
+        for (SmartBitSet elt : this.elts) {
+            elt.cardinality();
+            elt.signature();
+        }
+    }
+
     /**
      * Get live elements.
      */
@@ -71,76 +117,111 @@ public final class ACElts {
     final boolean unifyEltIntoAC(SmartBitSet newElt, int nNFA, int sizeHint) {
         // unifySubsetOrReplaceElt() can alter deadElts
         if (!this.unifySubsetOrReplaceElt(newElt, nNFA)) {
+            compactDeadElts();
             return false;
         }
         // we add elements here, to avoid re-checking if elements to add are ACs of each other
-        this.isSorted = false; // most likely, this element will change sorting.
-        if (this.invertedIndex == null) {
-            this.elts.add((SmartBitSet) newElt.clone());
+        if (this.subsetIndex == null) {
+            this.elts.add(bucketEnd(newElt.cardinality()), (SmartBitSet) newElt.clone());
             if (this.elts.size() > MIN_INVERTED_INDEX_SIZE) {
-                this.invertedIndex = new InvertedIndex(nNFA, this.elts);
+                this.subsetIndex = indexKind.create(nNFA, this.elts);
             }
         } else {
             if (!this.deadElts.isEmpty()) {
                 // Re-use a dead element.
                 final int i = this.deadElts.nextSetBit(0);
-                this.invertedIndex.overwrite(newElt, this.elts.get(i), i);
+                this.subsetIndex.overwrite(newElt, this.elts.get(i), i);
                 this.elts.set(i, (SmartBitSet) newElt.clone());
                 this.deadElts.clear(i);
             } else {
                 // insert a new element
-                this.invertedIndex.insert(newElt, sizeHint);
+                this.subsetIndex.insert(newElt, sizeHint);
                 this.elts.add((SmartBitSet) newElt.clone());
             }
+            compactDeadElts();
         }
         return true;
     }
 
     /**
-     * There are a lot of dead elements. Just rebuild the InvertedIndex.
+     * Remove a few dead elements, so that they don't pile up until a rebuild: drop dead elements at the end,
+     * and move live ones from the end into the first dead slots. Takes O(|elt|) per step, at most COMPACTION_STEPS.
+     */
+    private void compactDeadElts() {
+        if (this.subsetIndex == null) {
+            return;
+        }
+        int last = this.elts.size() - 1;
+        for (int step = 0; step < COMPACTION_STEPS && !this.deadElts.isEmpty(); step++) {
+            if (!this.deadElts.get(last)) {
+                // Move the last element into the first dead slot; the last slot is then dead
+                final int i = this.deadElts.nextSetBit(0);
+                final SmartBitSet lastElt = this.elts.get(last);
+                this.subsetIndex.overwrite(lastElt, this.elts.get(i), i);
+                this.elts.set(i, lastElt);
+                this.deadElts.clear(i);
+            } else {
+                this.deadElts.clear(last);
+            }
+            this.subsetIndex.removeLast(this.elts.remove(last--));
+        }
+    }
+
+    /**
+     * Most elements are dead. Just rebuild the SubsetIndex.
      */
-    private void rebuildInvertedIndex(int nNFA) {
+    private void rebuildSubsetIndex(int nNFA) {
         final List<SmartBitSet> rebuildElts = getLiveElts();
         this.deadElts.clear();
         this.elts = rebuildElts;
         // we don't keep elts sorted after this, but this is useful for a build/rebuild
         this.elts.sort(SmartBitSet.SMART_CARDINALITY_COMPARATOR);
-        isSorted = true;
-        this.invertedIndex = new InvertedIndex(nNFA, rebuildElts);
+        this.subsetIndex = indexKind.create(nNFA, rebuildElts);
     }
 
     /**
      * Check newElt against current ACElts. Ignore, replace, or add to eltsToAdd.
      */
     private boolean unifySubsetOrReplaceElt(SmartBitSet newElt, int nNFA) {
-        if (this.invertedIndex != null) {
-            if(invertedIndex.findFirstSubset(this.elts, this.deadElts, newElt) != null) {
+        if (this.subsetIndex != null) {
+            if(subsetIndex.findFirstSubset(this.elts, this.deadElts, newElt) != null) {
                 return false; // already contained in an AC element; ignore
             }
-            final SmartBitSet supersets = invertedIndex.findSupersetIndices(this.elts, this.deadElts, newElt, false);
+            final SmartBitSet supersets = subsetIndex.findSupersetIndices(this.elts, this.deadElts, newElt, false);
             if (!supersets.isEmpty()) {
                 // newElt is a subset of some current elements. Replace one; the rest are now dead.
                 final int idxToReplace = supersets.nextSetBit(0);
-                this.invertedIndex.overwrite(newElt, this.elts.get(idxToReplace), idxToReplace);
+                this.subsetIndex.overwrite(newElt, this.elts.get(idxToReplace), idxToReplace);
                 this.elts.set(idxToReplace, (SmartBitSet) newElt.clone());
                 for (int i = supersets.nextSetBit(idxToReplace+1); i >= 0; i = supersets.nextSetBit(i + 1)) {
                     this.deadElts.set(i);
                 }
-                if (this.deadElts.cardinality() > MAX_DEAD_ELTS) {
-                    rebuildInvertedIndex(nNFA);
+                // Usually compactDeadElts() keeps up; rebuilding is cheaper if a unify killed most elements
+                final int numDead = this.deadElts.cardinality();
+                if (numDead > MAX_DEAD_ELTS && numDead > this.elts.size() - numDead) {
+                    rebuildSubsetIndex(nNFA);
                 }
                 return false;
             }
         } else {
             final int eltSize = elts.size();
-            for (int i = 0; i < eltSize; i++) {
+            final int newEltCard = newElt.cardinality();
+            int i = 0;
+            // Buckets up to newElt's cardinality: only these can hold subsets of newElt
+            for (; i < eltSize; i++) {
                 final SmartBitSet currentElt = this.elts.get(i);
-                if (currentElt.isSubset(newElt)) {
+                if (currentElt.cardinality() > newEltCard) {
+                    break;
+                }
+                if (currentElt.isSubsetBySignature(newElt)) {
                     return false; // already contained in an AC element; ignore
                 }
-                if (newElt.isSubset(currentElt)) {
+            }
+            // Larger buckets: only these can hold (proper) supersets of newElt
+            for (int j = i; j < eltSize; j++) {
+                if (newElt.isSubsetBySignature(this.elts.get(j))) {
                     // newElt is a subset of at least one AC element. Replace it.
-                    this.replaceAC(newElt, i);
+                    this.replaceAC(newElt, i, j);
                     return false;
                 }
             }
@@ -150,22 +231,38 @@ public final class ACElts {
     }
 
     /**
-     * Replace all current elements that are supersets of newElt.
+     * Replace all current elements that are supersets of newElt, the first of which is at j.
+     * newElt goes at i, the start of the buckets above its cardinality.
      */
-    private void replaceAC(SmartBitSet newElt, int i) {
-        // subset of the current AC element. Replace.
-        this.elts.set(i, (SmartBitSet) newElt.clone());
-        final ListIterator<SmartBitSet> iterator = this.elts.listIterator(i+1);
+    private void replaceAC(SmartBitSet newElt, int i, int j) {
+        this.elts.remove(j);
+        final ListIterator<SmartBitSet> iterator = this.elts.listIterator(j);
         while (iterator.hasNext()) {
             final SmartBitSet oldElt = iterator.next();
-            if (newElt.isSubset(oldElt)) {
+            if (newElt.isSubsetBySignature(oldElt)) {
                 iterator.remove();
             }
         }
-        this.isSorted = false;
+        this.elts.add(i, (SmartBitSet) newElt.clone());
+    }
+
+    /**
+     * Add elements known to be incomparable with each other and with the current elements,
+     * e.g., the live elements of a checkpointed AC.
+     */
+    void addAntichain(List<SmartBitSet> newElts, int nNFA) {
+        this.elts.addAll(newElts);
+        if (this.subsetIndex != null || this.elts.size() > MIN_INVERTED_INDEX_SIZE) {
+            rebuildSubsetIndex(nNFA);
+        } else {
+            this.elts.sort(SmartBitSet.SMART_CARDINALITY_COMPARATOR);
+        }
     }
 
     boolean minCardinality(int minCardinality) {
+        if (this.subsetIndex == null) {
+            return !this.elts.isEmpty() && this.elts.get(0).cardinality() <= minCardinality; // smallest bucket
+        }
         final int eltsSize = this.elts.size();
         for (int i = deadElts.nextClearBit(0); i >= 0 && i < eltsSize;
              i = deadElts.nextClearBit(i + 1)) {
@@ -179,9 +276,9 @@ public final class ACElts {
     void clear() {
         elts.clear();
         deadElts.clear();
-        if (this.invertedIndex != null) {
-            this.invertedIndex.clear();
-            this.invertedIndex = null;
+        if (this.subsetIndex != null) {
+            this.subsetIndex.clear();
+            this.subsetIndex = null;
         }
     }
 
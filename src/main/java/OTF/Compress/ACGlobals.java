@@ -6,6 +6,7 @@ import it.unimi.dsi.fastutil.objects.Object2IntMap;
 import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
 Global state fields and methods, e.g., maps and inverse maps.
@@ -16,10 +17,10 @@ public final class ACGlobals {
     final Object2IntMap<SmartBitSet> singleEquivToStateId;
     final Int2ObjectOpenHashMap<ACPlus> stateIdToAC;
     final Set<ACPlus> allACs; // So we don't have to rebuild this every time we do a find
-    final List<SmartBitSet> searchableACsUnions;
-    ACPlus[] searchableACsList;
-    InvertedIndex ACsInvertedIndex;
+    volatile SearchIndex searchIndex; // updated by compress(); if concurrent, only by replacing it as a whole
     final SimAccelerate simAccelerate;
+    final boolean concurrent;
+    SubsetIndex.Kind subsetIndexKind = SubsetIndex.Kind.INVERTED; // for new ACs and search index rebuilds
 
     // BitSets that have been discovered as part of ACs.
     // NOTE: these have to match what's sent to OTFDeterminization. We can't "find" more sets.
@@ -27,19 +28,37 @@ public final class ACGlobals {
     final Map<ACPlus, List<SmartBitSet>> foundSetsInv;
     int nNFA; // number of states in the original NFA
 
+    /**
+     * Searchable ACs, their unions (in the same order), a subset index over the unions,
+     * and the tombstoned positions of ACs merged away since the last full rebuild.
+     * Maintained by compress(); otherwise only unify modifies it, by clearing the unions of merged ACs.
+     */
+    record SearchIndex(ACPlus[] acs, List<SmartBitSet> unions, SubsetIndex subsetIndex, SmartBitSet deadSlots) {
+        static SearchIndex empty(int nNFA) {
+            return new SearchIndex(new ACPlus[0], List.of(), new InvertedIndex(nNFA, List.of()), new SmartBitSet());
+        }
+    }
+
     public ACGlobals(int nNFA, BitSet[] simSupersetRels) {
+        this(nNFA, simSupersetRels, false);
+    }
+
+    /**
+     * @param concurrent - use thread-safe maps for the 1-element classes and found sets
+     */
+    public ACGlobals(int nNFA, BitSet[] simSupersetRels, boolean concurrent) {
         this.nNFA = nNFA;
+        this.concurrent = concurrent;
 
         stateIdToAC = new Int2ObjectOpenHashMap<>();
-        foundSets = new HashMap<>();
-        foundSetsInv = new HashMap<>();
+        foundSets = concurrent ? new ConcurrentHashMap<>() : new HashMap<>();
+        foundSetsInv = concurrent ? new ConcurrentHashMap<>() : new HashMap<>();
         allACs = new HashSet<>();
-        searchableACsUnions = new ArrayList<>();
-        ACsInvertedIndex = new InvertedIndex(nNFA, List.of());
+        searchIndex = SearchIndex.empty(nNFA);
         stateIdToSingleEquiv = new Int2ObjectOpenHashMap<>();
-        singleEquivToStateId = new Object2IntOpenHashMap<>();
+        singleEquivToStateId = concurrent ? new StripedObject2IntMap<>() : new Object2IntOpenHashMap<>();
         singleEquivToStateId.defaultReturnValue(AntichainForest.MISSING_ELEMENT);
-        simAccelerate = new SimAccelerate(simSupersetRels, nNFA);
+        simAccelerate = new SimAccelerate(simSupersetRels, nNFA, concurrent);
     }
 
 
@@ -58,9 +77,13 @@ public final class ACGlobals {
         bitSets.addAll(newElts);
     }
     void addToFoundSets(ACPlus ACPlus, SmartBitSet newElt) {
-        foundSets.put(newElt, ACPlus);
+        if (foundSets.put(newElt, ACPlus) == ACPlus) {
+            return; // already found, e.g., by a concurrent find
+        }
         final List<SmartBitSet> bitSets = foundSetsInv.computeIfAbsent(ACPlus, k -> new ArrayList<>());
-        bitSets.add(newElt);
+        synchronized (bitSets) { // uncontended unless concurrent
+            bitSets.add(newElt);
+        }
     }
 
     /**
@@ -2,6 +2,8 @@ package OTF.Compress;
 
 import OTF.SmartBitSet;
 
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
 /**
  * This represents the additive semi-lattice associated with an equivalence class (stateId).
  * acElts are the lower boundary, and acUnion is the upper boundary.
@@ -12,15 +14,32 @@ public final class ACPlus {
     public final SmartBitSet acUnion; // upper boundary of the convex set
     private int stateId; // state associated with this equivalence class
     public boolean searchable=false; // If the ACPlus is large enough to justify searching
+    private volatile int hits = 0; // finds resolved through this AC, decayed every compress; counted atomically
+    private int recentHits = 0; // hits as of the last compress; stable while compress sorts by them
+    int missedHits = 0; // elements unified into this AC while it wasn't searchable, decayed every compress
+    private int idleCompresses = 0; // compress passes in a row this AC was searchable without hits
+    private boolean demoted = false; // demoted for lack of hits; only missed hits make it searchable again
 
     public static final int MIN_CARDINALITY_SEARCHABLE_DIFF = 8;
     // cardinality between largest and smallest element(s)
     public static final int MIN_AC_SEARCHABLE = 5;
     // minimum element count before searchable
+    public static final int MIN_MISSED_HITS_SEARCHABLE = 2;
+    // missed hits before an unsearchable AC is promoted
+    public static final int MAX_IDLE_COMPRESSES = 4;
+    // compress passes without hits before a searchable AC is demoted
+
+    // concurrent finds count hits on the same AC, also while compress decays them
+    private static final AtomicIntegerFieldUpdater<ACPlus> HITS =
+        AtomicIntegerFieldUpdater.newUpdater(ACPlus.class, "hits");
 
     ACPlus(int stateId, SmartBitSet firstElt) {
+        this(stateId, firstElt, SubsetIndex.Kind.INVERTED);
+    }
+
+    ACPlus(int stateId, SmartBitSet firstElt, SubsetIndex.Kind indexKind) {
         this.stateId = stateId;
-        this.acElts = new ACElts(firstElt);
+        this.acElts = new ACElts(firstElt, indexKind);
         this.acUnion = (SmartBitSet) firstElt.clone();
     }
 
@@ -36,6 +55,9 @@ public final class ACPlus {
      * Determine if this ACPlus is large enough to justify searching
      */
     public void determineSearchable() {
+        if (this.demoted) {
+            return;
+        }
         this.searchable = this.searchable || this.acElts.getEltsSize() > MIN_AC_SEARCHABLE;
         if (this.searchable) {
             return;
@@ -48,12 +70,72 @@ public final class ACPlus {
         this.searchable = this.acElts.minCardinality(unionCard - MIN_CARDINALITY_SEARCHABLE_DIFF);
     }
 
+    /**
+     * Re-determine searchable from the hits since the last decay.
+     * Unsearchable ACs that missed hits are promoted; searchable ACs without hits for a while are demoted.
+     */
+    void determineSearchableByHits() {
+        this.recentHits = this.hits;
+        if (this.searchable) {
+            this.idleCompresses = this.recentHits > 0 ? 0 : this.idleCompresses + 1;
+            if (this.idleCompresses >= MAX_IDLE_COMPRESSES) {
+                this.searchable = false;
+                this.demoted = true;
+                this.idleCompresses = 0;
+            }
+        } else if (this.missedHits >= MIN_MISSED_HITS_SEARCHABLE) {
+            this.searchable = true;
+            this.demoted = false;
+        }
+    }
+
+    /**
+     * Halve the hit counts, so that they measure recent hit frequency.
+     */
+    void decayHits() {
+        HITS.updateAndGet(this, h -> h >> 1);
+        this.missedHits >>= 1;
+    }
+
+    /**
+     * Take over the hit counts of an AC merged into this one.
+     */
+    void addHits(ACPlus other) {
+        HITS.addAndGet(this, other.hits);
+        this.missedHits += other.missedHits;
+    }
+
+    /**
+     * Count a find resolved through this AC. Safe from several threads at once.
+     */
+    void hit() {
+        HITS.incrementAndGet(this);
+    }
+
+    /**
+     * @return hits as of the last compress (ACPlus.determineSearchableByHits)
+     */
+    int getRecentHits() {
+        return this.recentHits;
+    }
+
+    /**
+     * Compute everything that searches cache lazily, so that several threads can search this AC at once.
+     */
+    void prepareForConcurrentSearch() {
+        this.acElts.prepareForConcurrentSearch();
+        this.acUnion.signature();
+    }
+
     public void unionOr(SmartBitSet elt) {
         this.acUnion.or(elt);
     }
 
     void clear() {
         this.searchable = false;
+        HITS.set(this, 0);
+        this.recentHits = 0;
+        this.missedHits = 0;
         this.acElts.clear();
         this.acUnion.clear();
     }
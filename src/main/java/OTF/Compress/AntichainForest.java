@@ -1,33 +1,194 @@
 package OTF.Compress;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.*;
 
 import OTF.*;
 import OTF.Registry.Registry;
+import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
 import net.automatalib.automaton.fsa.NFA;
 
 /**
  * Antichain Disjoint-Set Forest, representing equivalence classes.
  * 1-element equivalence classes are simply represented as BitSets <-> ints.
  * Larger equivalence classes are represented by ACPlus elements.
+ * <p>
+ * A concurrent forest allows get, put, getOrPut, and compress from several threads at once:
+ * the 1-element classes and found sets are in thread-safe maps, each thread searches with its own buffers,
+ * and compress replaces the search index as a whole. unify and checkpointing still need exclusive access.
+ * A get concurrent with compress may miss an AC match, which only costs a duplicate state, as other misses do.
  */
 public final class AntichainForest {
     public ACGlobals acG;
     public static final int MISSING_ELEMENT = Registry.MISSING_ELEMENT;
+    private static final long SET_OVERHEAD_BYTES = 96; // SmartBitSet and its array headers, plus a map entry
     public int curIntermediateCount = 0; // used for metrics
     public int maxIntermediateCount = 0; // used for metrics
+    public int parallelFinds = 0; // used for metrics; approximate if concurrent
+    private int parallelFindThreshold = 0; // minimum candidate ACs for a parallel find; 0 never
+    public int searchIndexRebuilds = 0; // used for metrics
+    private long acEltCount = 0; // live elements over all ACs, for estimatedBytes(); updated by unify
+    // compress() rebuilds the search index from scratch when more than this fraction of it is tombstoned
+    private static final double MAX_DEAD_SEARCH_SLOTS = 0.25;
+    // compress() bookkeeping: position of each AC in the search index, and its union cardinality when indexed
+    private final Object2IntOpenHashMap<ACPlus> searchSlots = new Object2IntOpenHashMap<>();
+    private int[] indexedUnionCardinalities = new int[0];
+    private final SearchBuffers buffers; // null if concurrent
+    private final ThreadLocal<SearchBuffers> threadBuffers; // null if not concurrent
+
+    /**
+     * Scratch bitsets for a lookup. None of them is ever stored.
+     */
+    private static final class SearchBuffers {
+        final SmartBitSet elt = new SmartBitSet(); // incoming BitSet
+        final SmartBitSet supersetIndices = new SmartBitSet(); // SubsetIndex.findSupersetIndices result
+        final SmartBitSet unionInv = new SmartBitSet(); // SubsetIndex.findFirstSubset scratch
+        final SmartBitSet supersetStatesInB; // SimAccelerate scratch
+
+        SearchBuffers(int nNFA) {
+            this.supersetStatesInB = new SmartBitSet(nNFA);
+        }
+    }
 
     public AntichainForest(NFA<?, Integer> nfa, BitSet[] simSupers) {
-        this.acG = new ACGlobals(nfa.size(), simSupers);
+        this(nfa, simSupers, false);
+    }
+
+    /**
+     * @param concurrent - allow get, put, getOrPut, and compress from several threads at once
+     */
+    public AntichainForest(NFA<?, Integer> nfa, BitSet[] simSupers, boolean concurrent) {
+        final int nNFA = nfa.size();
+        this.acG = new ACGlobals(nNFA, simSupers, concurrent);
+        this.buffers = concurrent ? null : new SearchBuffers(nNFA);
+        this.threadBuffers = concurrent ? ThreadLocal.withInitial(() -> new SearchBuffers(nNFA)) : null;
+    }
+
+    public boolean isConcurrent() {
+        return acG.concurrent;
+    }
+
+    /**
+     * Search the candidate ACs of a find on several threads (FindTask) when there are at least minCandidates.
+     * Small finds stay on the calling thread. 0 turns parallel finds off.
+     */
+    public void setParallelFindThreshold(int minCandidates) {
+        if (minCandidates < 0) {
+            throw new IllegalArgumentException("Parallel find threshold must not be negative: " + minCandidates);
+        }
+        this.parallelFindThreshold = minCandidates;
+        if (minCandidates > 0) {
+            for (ACPlus acPlus : acG.searchIndex.acs()) {
+                acPlus.prepareForConcurrentSearch();
+            }
+        }
+    }
+
+    /**
+     * Index for the elements of ACs created from now on, and for the AC unions from the next full rebuild of the
+     * search index on. SubsetIndex.Kind.INVERTED by default.
+     */
+    public void setSubsetIndex(SubsetIndex.Kind kind) {
+        acG.subsetIndexKind = kind;
+    }
+
+    /**
+     * Whether ACs are searched by several threads at once, so they have to be prepared for it when they change.
+     */
+    private boolean searchesConcurrently() {
+        return acG.concurrent || parallelFindThreshold > 0;
+    }
+
+    private SearchBuffers buffers() {
+        return buffers != null ? buffers : threadBuffers.get();
+    }
+
+    /**
+     * Re-determine which ACs are searchable from their hits (ACPlus.determineSearchableByHits),
+     * and bring the search index over the searchable AC unions up to date.
+     * Unions that grew are updated in place, newly searchable ACs are appended,
+     * and ACs merged away or demoted are tombstoned.
+     * The index is rebuilt from scratch (and re-sorted) only when it's empty or too many of its ACs are tombstoned.
+     * A concurrent forest updates a copy and swaps it in, so concurrent finds see a consistent index.
+     */
+    public synchronized void compress() {
+        for (ACPlus acPlus : acG.getAllACs()) {
+            acPlus.determineSearchableByHits();
+        }
+        updateSearchIndex();
+        for (ACPlus acPlus : acG.getAllACs()) {
+            acPlus.decayHits();
+        }
+    }
+
+    private void updateSearchIndex() {
+        final ACGlobals.SearchIndex current = acG.searchIndex;
+        final ACPlus[] currentACs = current.acs();
+        final int slots = currentACs.length;
+        final SmartBitSet deadSlots = acG.concurrent ? current.deadSlots().trimmedCopy() : current.deadSlots();
+        for (int i = deadSlots.nextClearBit(0); i < slots; i = deadSlots.nextClearBit(i + 1)) {
+            if (!currentACs[i].searchable) {
+                deadSlots.set(i); // demoted, or merged into another AC (see ACGlobals.pointToPrimary)
+                searchSlots.removeInt(currentACs[i]); // appended again if it's promoted again
+            }
+        }
+        if (slots == 0 || deadSlots.cardinality() > slots * MAX_DEAD_SEARCH_SLOTS) {
+            rebuildSearchIndex();
+            return;
+        }
+
+        final SubsetIndex subsetIndex = acG.concurrent ? current.subsetIndex().copy() : current.subsetIndex();
+        for (int i = deadSlots.nextClearBit(0); i < slots; i = deadSlots.nextClearBit(i + 1)) {
+            final SmartBitSet acUnion = currentACs[i].acUnion;
+            final int unionCardinality = acUnion.cardinality();
+            if (unionCardinality != indexedUnionCardinalities[i]) {
+                subsetIndex.or(acUnion, i); // a live AC's union only grows
+                indexedUnionCardinalities[i] = unionCardinality;
+            }
+        }
+
+        final List<ACPlus> newACs = new ArrayList<>();
+        for (ACPlus acPlus : acG.getAllACs()) {
+            if (acPlus.searchable && !searchSlots.containsKey(acPlus)) {
+                newACs.add(acPlus);
+            }
+        }
+        newACs.sort(SEARCH_ORDER);
+        final ACPlus[] searchableACs = Arrays.copyOf(currentACs, slots + newACs.size());
+        final List<SmartBitSet> searchableUnions = new ArrayList<>(searchableACs.length);
+        searchableUnions.addAll(current.unions());
+        indexedUnionCardinalities = Arrays.copyOf(indexedUnionCardinalities, searchableACs.length);
+        int index = slots;
+        for (ACPlus acPlus : newACs) {
+            if (searchesConcurrently()) {
+                acPlus.prepareForConcurrentSearch();
+            }
+            subsetIndex.insert(acPlus.acUnion, searchableACs.length);
+            searchableUnions.add(acPlus.acUnion);
+            indexedUnionCardinalities[index] = acPlus.acUnion.cardinality();
+            searchSlots.put(acPlus, index);
+            searchableACs[index++] = acPlus;
+        }
+        acG.searchIndex = new ACGlobals.SearchIndex(searchableACs, searchableUnions, subsetIndex, deadSlots);
     }
 
-    public void compress() {
-        // Rebuild an inverted index for the AC Unions.
+    // Most (recent) hits first, then most elements.
+    // Note: here we don't ignore dead elts. They're useful to indicate complexity of InvertedIndex.
+    private static final Comparator<ACPlus> SEARCH_ORDER =
+        Comparator.<ACPlus>comparingInt(ACPlus::getRecentHits).reversed()
+            .thenComparing(Comparator.<ACPlus>comparingInt(a -> a.acElts.elts.size()).reversed())
+            .thenComparingInt(ACPlus::getStateId);  // stable tiebreak
 
-        // first, save peak memory
-        acG.searchableACsList = null;
-        acG.searchableACsUnions.clear();
-        acG.ACsInvertedIndex.clear();
+    /**
+     * Rebuild the subset index for the AC unions from scratch.
+     */
+    private void rebuildSearchIndex() {
+        // first, save peak memory. Concurrent finds still holding the old index keep it alive until they're done.
+        acG.searchIndex = ACGlobals.SearchIndex.empty(acG.nNFA);
+        searchSlots.clear();
 
         final List<ACPlus> nextACs = new ArrayList<>(acG.getAllACs().size());
         // inverted-index ACs first
@@ -36,50 +197,85 @@ public final class AntichainForest {
                 nextACs.add(acPlus);
             }
         }
-        // Note: here we don't ignore dead elts. They're useful to indicate complexity of InvertedIndex.
-        // TODO: Another option would be adding a "hit count", and sort by that (also an extra searchable condition)
-        nextACs.sort(Comparator.<ACPlus>comparingInt(a -> a.acElts.elts.size()).reversed()
-                .thenComparingInt(ACPlus::getStateId));  // stable tiebreak
+        nextACs.sort(SEARCH_ORDER);
 
         int index = 0;
-        acG.searchableACsList = new ACPlus[nextACs.size()];
+        final ACPlus[] searchableACs = new ACPlus[nextACs.size()];
+        final List<SmartBitSet> searchableUnions = new ArrayList<>(searchableACs.length);
+        indexedUnionCardinalities = new int[searchableACs.length];
         for (ACPlus acPlus: nextACs) {
-            acG.searchableACsUnions.add(acPlus.acUnion);
-            acG.searchableACsList[index++] = acPlus;
+            if (searchesConcurrently()) {
+                acPlus.prepareForConcurrentSearch(); // e.g., ACs restored from a checkpoint
+            }
+            searchableUnions.add(acPlus.acUnion);
+            indexedUnionCardinalities[index] = acPlus.acUnion.cardinality();
+            searchSlots.put(acPlus, index);
+            searchableACs[index++] = acPlus;
         }
         nextACs.clear(); // hint to save peak memory
-        acG.ACsInvertedIndex = new InvertedIndex(acG.nNFA, acG.searchableACsUnions);
+        acG.searchIndex = new ACGlobals.SearchIndex(
+            searchableACs, searchableUnions, acG.subsetIndexKind.create(acG.nNFA, searchableUnions), new SmartBitSet());
+        searchIndexRebuilds++;
     }
 
     /**
      * Put BitSet at state.
      */
     public void put(BitSet newEltFull, int newState) {
-        // It might make sense to just merge this with "get", e.g., "getOrPut"
-        // rather than doing a separate find to determine where the new ACPlus belongs.
-
-        // This creates a new equivalence class, so increment intermediate count
-        this.curIntermediateCount++;
-        if (this.curIntermediateCount > this.maxIntermediateCount) {
-            this.maxIntermediateCount = this.curIntermediateCount;
-        }
-        final SmartBitSet smartEltFull = SmartBitSet.valueOf(newEltFull.toLongArray());
-        final SmartBitSet newElt = acG.simAccelerate.shouldAccelerate ?
-            acG.simAccelerate.pruneEltWithSims(smartEltFull) : smartEltFull;
-
-        // Add a 1-element equivalence class. Larger equivalence classes are added in unify.
-        acG.stateIdToSingleEquiv.put(newState, newElt);
+        final SearchBuffers buffers = buffers();
+        final SmartBitSet newElt = stored(prune(newEltFull, buffers), buffers);
         acG.singleEquivToStateId.put(newElt, newState);
+        addSingle(newElt, newState);
     }
 
     /**
      * Get BitSet equivalence class (state), otherwise return MISSING_ELEMENT.
      */
     public int get(BitSet eltFull) {
-        final SmartBitSet smartEltFull = SmartBitSet.valueOf(eltFull.toLongArray());
-        final SmartBitSet prunedElt = acG.simAccelerate.shouldAccelerate ?
-            acG.simAccelerate.pruneEltWithSims(smartEltFull) : smartEltFull;
+        final SearchBuffers buffers = buffers();
+        return lookup(prune(eltFull, buffers), buffers);
+    }
+
+    /**
+     * Get BitSet equivalence class (state), otherwise put BitSet at newState and return newState.
+     * Converts and prunes the BitSet once for both.
+     * If concurrent, the check and the put are atomic: of several threads putting the same BitSet, one wins,
+     * and the others get its state.
+     */
+    public int getOrPut(BitSet eltFull, int newState) {
+        final SearchBuffers buffers = buffers();
+        final SmartBitSet prunedElt = prune(eltFull, buffers);
+        final int state = lookup(prunedElt, buffers);
+        if (state != MISSING_ELEMENT) {
+            return state;
+        }
+        final SmartBitSet newElt = stored(prunedElt, buffers);
+        final int existingState = acG.singleEquivToStateId.putIfAbsent(newElt, newState);
+        if (existingState != MISSING_ELEMENT) {
+            return existingState;
+        }
+        addSingle(newElt, newState);
+        return newState;
+    }
 
+    /**
+     * Converted BitSet, pruned with simulations if applicable.
+     * The result may be buffers.elt, which is overwritten by the next call; use stored() before keeping it.
+     */
+    private SmartBitSet prune(BitSet eltFull, SearchBuffers buffers) {
+        buffers.elt.copyFrom(eltFull);
+        return acG.simAccelerate.shouldAccelerate ?
+            acG.simAccelerate.pruneEltWithSims(buffers.elt, buffers.supersetStatesInB) : buffers.elt;
+    }
+
+    /**
+     * Element from prune() that can be kept in the maps: buffers.elt is copied, pruned elements are already private.
+     */
+    private static SmartBitSet stored(SmartBitSet prunedElt, SearchBuffers buffers) {
+        return prunedElt == buffers.elt ? prunedElt.trimmedCopy() : prunedElt;
+    }
+
+    private int lookup(SmartBitSet prunedElt, SearchBuffers buffers) {
         // Check 1-element equivalence classes first
         final int singleEquivState = acG.singleEquivToStateId.getInt(prunedElt);
         if (singleEquivState != MISSING_ELEMENT) {
@@ -93,7 +289,22 @@ public final class AntichainForest {
             return foundAC.getStateId();
         }
 
-        return find(prunedElt);
+        return find(prunedElt, buffers);
+    }
+
+    /**
+     * Complete a 1-element equivalence class already added to singleEquivToStateId.
+     * Larger equivalence classes are added in unify.
+     */
+    private void addSingle(SmartBitSet newElt, int newState) {
+        synchronized (acG.stateIdToSingleEquiv) { // uncontended unless concurrent
+            // This creates a new equivalence class, so increment intermediate count
+            this.curIntermediateCount++;
+            if (this.curIntermediateCount > this.maxIntermediateCount) {
+                this.maxIntermediateCount = this.curIntermediateCount;
+            }
+            acG.stateIdToSingleEquiv.put(newState, newElt);
+        }
     }
 
     /**
@@ -102,19 +313,38 @@ public final class AntichainForest {
      * @return - equivalence class (state number) if it exists, otherwise MISSING_ELEMENT
      */
     int find(SmartBitSet prunedElt) {
+        return find(prunedElt, buffers());
+    }
+
+    private int find(SmartBitSet prunedElt, SearchBuffers buffers) {
         // Now we search the ACs.
         // For performance, we only search ACs above a given size -- "visible" ACs
         // We may miss some matching ACs, but this is better performance-wise.
 
         // Find all unions that are supersets of this element
         // This is just an approximate filter -- we might find extras
-        final SmartBitSet potentialSupersets = acG.ACsInvertedIndex.findSupersetIndices(
-            acG.searchableACsUnions, SmartBitSet.EMPTY_SMART_BITSET, prunedElt, true);
+        final ACGlobals.SearchIndex searchIndex = acG.searchIndex;
+        final SmartBitSet potentialSupersets = searchIndex.subsetIndex().findSupersetIndices(
+            searchIndex.unions(), searchIndex.deadSlots(), prunedElt, true, buffers.supersetIndices);
 
         if (!potentialSupersets.isEmpty()) {
             // Saturate sElt to use in step 2
             final SmartBitSet saturatedElt = acG.simAccelerate.shouldAccelerate ?
-                acG.simAccelerate.saturateEltWithSims(prunedElt) : prunedElt;
+                acG.simAccelerate.saturateEltWithSims(prunedElt, buffers.supersetStatesInB) : prunedElt;
+
+            if (parallelFindThreshold > 0) {
+                potentialSupersets.markAsDirty(); // the filter leaves the cached cardinality stale
+                if (potentialSupersets.cardinality() >= parallelFindThreshold) {
+                    final ACPlus acPlus = FindTask.find(searchIndex, potentialSupersets, prunedElt, saturatedElt);
+                    parallelFinds++;
+                    if (acPlus == null) {
+                        return MISSING_ELEMENT;
+                    }
+                    acPlus.hit();
+                    acG.addToFoundSets(acPlus, stored(prunedElt, buffers)); // cache for the next search
+                    return acPlus.getStateId();
+                }
+            }
 
             // For each AC found above:
             // 1. validate its union is an actual superset
@@ -122,15 +352,16 @@ public final class AntichainForest {
             //    (if it was equal, it would have been found in caches earlier)
             for (int i = potentialSupersets.nextSetBit(0); i >= 0; i = potentialSupersets.nextSetBit(i + 1)) {
                 // Step 1
-                final SmartBitSet acUnion = acG.searchableACsUnions.get(i);
-                if (!prunedElt.isSubset(acUnion)) {
+                final SmartBitSet acUnion = searchIndex.unions().get(i);
+                if (!prunedElt.isSubsetBySignature(acUnion)) {
                     continue;
                 }
 
                 // Step 2
-                final ACPlus acPlus = acG.searchableACsList[i];
-                if (acPlus.acElts.properSubsetExists(saturatedElt)) {
-                    acG.addToFoundSets(acPlus, prunedElt); // cache for the next search
+                final ACPlus acPlus = searchIndex.acs()[i];
+                if (acPlus.acElts.properSubsetExists(saturatedElt, buffers.unionInv)) {
+                    acPlus.hit();
+                    acG.addToFoundSets(acPlus, stored(prunedElt, buffers)); // cache for the next search
                     return acPlus.getStateId();
                 }
             }
@@ -159,8 +390,10 @@ public final class AntichainForest {
             secondaries, tempIntermediateCount, secondaryEltsWithoutAC, secondaryACs);
 
         int eltsToUnifySize = secondaryEltsWithoutAC.size();
+        int acEltsBefore = primaryAC == null ? 0 : primaryAC.acElts.getEltsSize();
         for (ACPlus secondaryAC: secondaryACs) {
             eltsToUnifySize += secondaryAC.acElts.getEltsSize();
+            acEltsBefore += secondaryAC.acElts.getEltsSize();
         }
 
         // determine this before we clear all of the secondary AC unions
@@ -168,15 +401,25 @@ public final class AntichainForest {
 
         final List<SmartBitSet> eltsToUnify = new ArrayList<>(eltsToUnifySize + 1);
         eltsToUnify.addAll(secondaryEltsWithoutAC);
+        // 1-element classes unified into an existing unsearchable AC are finds that it might have resolved
+        final ACPlus existingAC = primaryAC != null ? primaryAC : secondaryACs.isEmpty() ? null : secondaryACs.get(0);
+        final boolean missedHits = existingAC != null && !existingAC.searchable;
         primaryAC = determineOrCreatePrimaryAC(primary, primaryAC, secondaryACs, primaryElt, eltsToUnify);
+        if (missedHits) {
+            primaryAC.missedHits += secondaryEltsWithoutAC.size() + (primaryElt == null ? 0 : 1);
+        }
 
         acG.addToFoundSets(primaryAC, secondaryEltsWithoutAC);
 
         unifyEltsIntoPrimaryAC(eltsToUnify, primaryAC);
 
         updateACUnion(primaryAC, newUnion);
+        if (searchesConcurrently()) {
+            primaryAC.prepareForConcurrentSearch();
+        }
 
         tempIntermediateCount += primaryAC.acElts.getEltsSize();
+        this.acEltCount += primaryAC.acElts.getEltsSize() - acEltsBefore;
 
         this.curIntermediateCount += tempIntermediateCount; // no need to check max value
     }
@@ -208,8 +451,8 @@ public final class AntichainForest {
         // sorted, so smallest (most impactful) elements are unified first
 
         int sizeHint = eltsToUnify.size(); // performance hint
-        if (primaryAC.acElts.invertedIndex != null) {
-            sizeHint += primaryAC.acElts.invertedIndex.maxElts;
+        if (primaryAC.acElts.subsetIndex != null) {
+            sizeHint += primaryAC.acElts.subsetIndex.size();
         }
         for (SmartBitSet eltToUnify: eltsToUnify) {
             primaryAC.acElts.unifyEltIntoAC(eltToUnify, acG.nNFA, sizeHint);
@@ -225,7 +468,7 @@ public final class AntichainForest {
             // primary is 1-elt
             if (secondaryACs.isEmpty()) {
                 // Everything is a 1-elt set. Create a new AC
-                primaryAC = new ACPlus(primary, primaryElt);
+                primaryAC = new ACPlus(primary, primaryElt, acG.subsetIndexKind);
                 acG.allACs.add(primaryAC);
             } else {
                 // point to secondary AC
@@ -268,15 +511,150 @@ public final class AntichainForest {
             eltsToUnify.addAll(secondaryAC.acElts.getLiveElts());
             // Clear or point to primary AC
             acG.pointToPrimary(primaryAC, secondaryAC);
+            primaryAC.addHits(secondaryAC);
             secondaryAC.setStateId(primary); // just in case it gets accessed
             secondaryAC.clear();
         }
     }
 
+    /**
+     * Make the equivalence class of stateID that of ref instead; see Registry.rename.
+     */
+    public void rename(int stateID, int ref) {
+        final SmartBitSet elt = acG.stateIdToSingleEquiv.remove(stateID);
+        if (elt != null) {
+            acG.stateIdToSingleEquiv.put(ref, elt);
+            acG.singleEquivToStateId.put(elt, ref);
+            return;
+        }
+        final ACPlus acPlus = acG.getACPlus(stateID, null);
+        acG.stateIdToAC.remove(stateID);
+        acPlus.setStateId(ref);
+        acG.stateIdToAC.put(ref, acPlus);
+    }
+
     public int size() {
         return acG.singleEquivToStateId.size() + acG.foundSets.size();
     }
 
+    /**
+     * Rough estimate of the heap used by the stored metastates: each costs its words plus object and map overhead.
+     * Constant time, since memory-pressure thresholds sample it while exploring.
+     */
+    public long estimatedBytes() {
+        final long sets = acG.singleEquivToStateId.size() + acG.foundSets.size() + acEltCount;
+        return sets * (SET_OVERHEAD_BYTES + (long) Long.BYTES * ((acG.nNFA + 63) / 64));
+    }
+
+    /**
+     * Live elements over all ACs.
+     */
+    long getACEltCount() {
+        return acEltCount;
+    }
+
+    /**
+     * Write 1-element classes, ACs (state, searchable, union, live elements), found sets, and metrics.
+     * Search structures are not written; they're rebuilt by compress() after reading.
+     */
+    public void writeCheckpoint(DataOutput out) throws IOException {
+        out.writeInt(acG.nNFA);
+        out.writeInt(curIntermediateCount);
+        out.writeInt(maxIntermediateCount);
+
+        out.writeInt(acG.stateIdToSingleEquiv.size());
+        for (Int2ObjectMap.Entry<SmartBitSet> entry : acG.stateIdToSingleEquiv.int2ObjectEntrySet()) {
+            out.writeInt(entry.getIntKey());
+            writeSmartBitSet(out, entry.getValue());
+        }
+
+        out.writeInt(acG.allACs.size());
+        for (ACPlus acPlus : acG.allACs) {
+            out.writeInt(acPlus.getStateId());
+            out.writeBoolean(acPlus.searchable);
+            writeSmartBitSet(out, acPlus.acUnion);
+            final List<SmartBitSet> liveElts = acPlus.acElts.getLiveElts();
+            out.writeInt(liveElts.size());
+            for (SmartBitSet elt : liveElts) {
+                writeSmartBitSet(out, elt);
+            }
+        }
+
+        int numFound = 0;
+        for (ACPlus acPlus : acG.foundSets.values()) {
+            if (acG.allACs.contains(acPlus)) {
+                numFound++;
+            }
+        }
+        out.writeInt(numFound);
+        for (Map.Entry<SmartBitSet, ACPlus> entry : acG.foundSets.entrySet()) {
+            if (acG.allACs.contains(entry.getValue())) {
+                out.writeInt(entry.getValue().getStateId());
+                writeSmartBitSet(out, entry.getKey());
+            }
+        }
+    }
+
+    /**
+     * Restore contents written by {@link #writeCheckpoint(DataOutput)} into this (empty) forest.
+     */
+    public void readCheckpoint(DataInput in) throws IOException {
+        final int nNFA = in.readInt();
+        if (nNFA != acG.nNFA) {
+            throw new IOException("Checkpoint is for an NFA of size " + nNFA + ", not " + acG.nNFA);
+        }
+        curIntermediateCount = in.readInt();
+        maxIntermediateCount = in.readInt();
+
+        final int numSingles = in.readInt();
+        for (int i = 0; i < numSingles; i++) {
+            final int stateId = in.readInt();
+            final SmartBitSet elt = readSmartBitSet(in);
+            acG.stateIdToSingleEquiv.put(stateId, elt);
+            acG.singleEquivToStateId.put(elt, stateId);
+        }
+
+        final int numACs = in.readInt();
+        for (int i = 0; i < numACs; i++) {
+            final int stateId = in.readInt();
+            final boolean searchable = in.readBoolean();
+            final SmartBitSet union = readSmartBitSet(in);
+            final int numElts = in.readInt();
+            if (numElts <= 0) {
+                throw new IOException("Corrupt checkpoint: AC " + stateId + " has " + numElts + " elements");
+            }
+            final List<SmartBitSet> elts = new ArrayList<>(numElts);
+            for (int e = 0; e < numElts; e++) {
+                elts.add(readSmartBitSet(in));
+            }
+            final ACPlus acPlus = new ACPlus(stateId, elts.get(0), acG.subsetIndexKind);
+            acPlus.acElts.addAntichain(elts.subList(1, numElts), acG.nNFA);
+            acPlus.unionOr(union);
+            acPlus.searchable = searchable;
+            acEltCount += acPlus.acElts.getEltsSize();
+            acG.allACs.add(acPlus);
+            acG.stateIdToAC.put(stateId, acPlus);
+        }
+
+        final int numFound = in.readInt();
+        for (int i = 0; i < numFound; i++) {
+            final int stateId = in.readInt();
+            final ACPlus acPlus = acG.stateIdToAC.get(stateId);
+            if (acPlus == null) {
+                throw new IOException("Corrupt checkpoint: found set of unknown AC " + stateId);
+            }
+            acG.addToFoundSets(acPlus, readSmartBitSet(in));
+        }
+    }
+
+    private static void writeSmartBitSet(DataOutput out, SmartBitSet set) throws IOException {
+        Checkpoint.writeWords(out, set.words, Math.min(set.wordsInUse, set.words.length));
+    }
+
+    private static SmartBitSet readSmartBitSet(DataInput in) throws IOException {
+        return SmartBitSet.valueOf(Checkpoint.readWords(in));
+    }
+
     @Override
     public String toString() {
       return "AC Forest\r\n" + acG + "\r\n-----------";
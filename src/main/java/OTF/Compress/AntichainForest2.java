@@ -33,6 +33,7 @@ public class AntichainForest2 implements Registry {
 
     @Override
     public void put(BitSet elements, int stateId) {
+        elements = (BitSet) elements.clone(); // callers may reuse elements as a buffer
         final AntichainElement wrapper = new AntichainElement(elements, stateId);
         bitsetToWrapper.put(elements, wrapper);
         singletonAntichains.put(stateId, wrapper);
@@ -58,10 +59,11 @@ public class AntichainForest2 implements Registry {
             return MISSING_ELEMENT;
         }
 
-        // cache result
+        // cache result; the caller may reuse elements, so cache a copy
         final int id = antichain.stateId;
-        AntichainElement wrapper = new AntichainElement(elements, id);
-        this.bitsetToWrapper.put(elements, wrapper);
+        final BitSet elementsCopy = (BitSet) elements.clone();
+        AntichainElement wrapper = new AntichainElement(elementsCopy, id);
+        this.bitsetToWrapper.put(elementsCopy, wrapper);
         antichain.add(wrapper);
 
         return id;
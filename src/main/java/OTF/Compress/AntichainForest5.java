@@ -34,6 +34,7 @@ public class AntichainForest5 implements Registry {
 
     @Override
     public void put(BitSet elements, int stateId) {
+        elements = (BitSet) elements.clone(); // callers may reuse elements as a buffer
         final AntichainElement wrapper = new AntichainElement(elements, stateId);
         cache.put(elements, wrapper);
         singletonAntichains.put(stateId, wrapper);
@@ -60,11 +61,12 @@ public class AntichainForest5 implements Registry {
             return MISSING_ELEMENT;
         }
 
-        // cache result
+        // cache result; the caller may reuse elements, so cache a copy
+        final BitSet elementsCopy = (BitSet) elements.clone();
+        final AntichainElement cachedWrapper = new AntichainElement(elementsCopy, antichain.stateId);
         final int id = antichain.stateId;
-        wrapper.stateId = id;
-        antichain.cachedElements.add(wrapper);
-        this.cache.put(elements, wrapper);
+        antichain.cachedElements.add(cachedWrapper);
+        this.cache.put(elementsCopy, cachedWrapper);
 
         return id;
     }
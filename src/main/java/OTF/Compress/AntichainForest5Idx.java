@@ -37,6 +37,7 @@ public class AntichainForest5Idx implements Registry {
 
     @Override
     public void put(BitSet elements, int stateId) {
+        elements = (BitSet) elements.clone(); // callers may reuse elements as a buffer
         final AntichainElement wrapper = new AntichainElement(elements, stateId);
         cache.put(elements, wrapper);
         singletonAntichains.put(stateId, wrapper);
@@ -61,10 +62,11 @@ public class AntichainForest5Idx implements Registry {
             return MISSING_ELEMENT;
         }
 
-        // cache result
-        final AntichainElement wrapper = new AntichainElement(elements, antichain.stateId);
+        // cache result; the caller may reuse elements, so cache a copy
+        final BitSet elementsCopy = (BitSet) elements.clone();
+        final AntichainElement wrapper = new AntichainElement(elementsCopy, antichain.stateId);
         antichain.cachedElements.add(wrapper);
-        this.cache.put(elements, wrapper);
+        this.cache.put(elementsCopy, wrapper);
 
         return wrapper.stateId;
     }
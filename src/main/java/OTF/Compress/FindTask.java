@@ -0,0 +1,99 @@
+package OTF.Compress;
+
+import java.io.Serial;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import OTF.SmartBitSet;
+
+/**
+ * Searches the candidate ACs of one AntichainForest.find on several threads.
+ * The candidates are split into ranges; each leaf runs the same two steps as the serial search.
+ * A hit at candidate position k cancels the search beyond k: leaves and splits past the best hit so far stop early.
+ * The result is the hit at the smallest position, i.e., the AC the serial search would return.
+ */
+final class FindTask extends RecursiveAction {
+    private final int lo, hi;
+    private final int[] candidates;
+    private final ACGlobals.SearchIndex searchIndex;
+    private final SmartBitSet prunedElt;
+    private final SmartBitSet saturatedElt;
+    private final AtomicInteger best; // smallest candidate position with a hit, MAX_VALUE if none yet
+
+    // Candidates per leaf task; properSubsetExists can be relatively expensive, so keep leaves small
+    private static final int MIN_SUBPROBLEM_SIZE = 4;
+    @Serial
+    private static final long serialVersionUID = 12348L;
+
+    private FindTask(int lo, int hi, int[] candidates, ACGlobals.SearchIndex searchIndex,
+                     SmartBitSet prunedElt, SmartBitSet saturatedElt, AtomicInteger best) {
+        this.lo = lo;
+        this.hi = hi;
+        this.candidates = candidates;
+        this.searchIndex = searchIndex;
+        this.prunedElt = prunedElt;
+        this.saturatedElt = saturatedElt;
+        this.best = best;
+    }
+
+    /**
+     * AC at the smallest index in candidateSet whose union contains prunedElt and whose elements have a proper
+     * subset of saturatedElt, or null if there's none.
+     * Runs in the current fork-join pool if called from one (e.g., by a parallel OTF worker), else in the common pool.
+     * The candidate ACs must have been prepared with ACPlus.prepareForConcurrentSearch().
+     */
+    static ACPlus find(ACGlobals.SearchIndex searchIndex, SmartBitSet candidateSet,
+                       SmartBitSet prunedElt, SmartBitSet saturatedElt) {
+        final int[] candidates = new int[candidateSet.cardinality()];
+        int n = 0;
+        for (int i = candidateSet.nextSetBit(0); i >= 0; i = candidateSet.nextSetBit(i + 1)) {
+            candidates[n++] = i;
+        }
+        // cache these before sharing across threads
+        prunedElt.signature();
+        saturatedElt.cardinality();
+        saturatedElt.signature();
+        final AtomicInteger best = new AtomicInteger(Integer.MAX_VALUE);
+        final FindTask task = new FindTask(0, n, candidates, searchIndex, prunedElt, saturatedElt, best);
+        if (ForkJoinTask.inForkJoinPool()) {
+            task.invoke();
+        } else {
+            ForkJoinPool.commonPool().invoke(task);
+        }
+        final int position = best.get();
+        return position == Integer.MAX_VALUE ? null : searchIndex.acs()[candidates[position]];
+    }
+
+    @Override
+    protected void compute() {
+        if (best.get() < lo) {
+            return; // a hit before this range was found
+        }
+        if (hi - lo <= MIN_SUBPROBLEM_SIZE) {
+            search();
+            return;
+        }
+        final int mid = lo + (hi - lo) / 2;
+        invokeAll(
+            new FindTask(lo, mid, candidates, searchIndex, prunedElt, saturatedElt, best),
+            new FindTask(mid, hi, candidates, searchIndex, prunedElt, saturatedElt, best));
+    }
+
+    private void search() {
+        final SmartBitSet unionInv = new SmartBitSet(); // SubsetIndex.findFirstSubset scratch for this leaf
+        for (int k = lo; k < hi && k < best.get(); k++) {
+            final int i = candidates[k];
+            // Step 1
+            if (!prunedElt.isSubsetBySignature(searchIndex.unions().get(i))) {
+                continue;
+            }
+            // Step 2
+            if (searchIndex.acs()[i].acElts.properSubsetExists(saturatedElt, unionInv)) {
+                best.accumulateAndGet(k, Math::min);
+                return;
+            }
+        }
+    }
+}
@@ -6,13 +6,19 @@ import java.util.*;
 
 /**
  * Inverted index in bitsets.
- * Total number of bitsets is nNFA.
+ * Total number of bitsets (columns) is nNFA.
  * Each bitset is of length ACElts.size().
- * bitsetArr[i] is a bitset, where its jth bit == the ith bit of the jth bitset in ACElts.
+ * Column i is a bitset, where its jth bit == the ith bit of the jth bitset in ACElts.
+ * Columns are packed in one long[], stride words each, so the filters stream through contiguous memory
+ * instead of chasing a SmartBitSet per column. Only non-null columns (ones that have been written) take a slot.
  */
-public final class InvertedIndex {
-  SmartBitSet[] inverted;
-  private final SmartBitSet nullInvertedElts; // tracks null elements of inverted
+public final class InvertedIndex implements SubsetIndex {
+  long[] matrix; // slot s holds the column at matrix[s * stride, (s + 1) * stride)
+  int stride; // words per column; doubles when elements outgrow it
+  int[] slots; // slots[i] == slot of column i, or -1 if it's null
+  private int numSlots = 0;
+  private final SmartBitSet nullInvertedElts; // tracks null columns
+  int[] columnCounts; // columnCounts[i] == cardinality of column i, including dead elements
 
   int maxElts; // maximum length of ACElts, corresponds to maximum possible length of bitsets
   private final SmartBitSet tempUnionInv = new SmartBitSet();
@@ -26,37 +32,74 @@ public final class InvertedIndex {
   private static final int MAX_FRACTION = 24;
   private static final double MAX_CARD_FRACTION = 0.9;
   private static final int LOOP_CARD_TEST = 50;
+
+  // Columns are ANDed rarest first and ORed densest first once they're at least this many elements (words) long.
+  // Below that, ordering costs about as much as the ANDs/ORs it saves.
+  private static final int MIN_PLANNED_ELTS = 4 * SmartBitSet.BITS_PER_WORD;
+  private static final int BUCKETS = Integer.SIZE + 1; // column populations, by power of 2
+  private static final int ADDRESS_BITS_PER_WORD = 6;
+  private static final int MIN_SLOTS = 8; // slots are added in chunks of at least this many
+
+  /**
+   * Scratch for ordering columns: they're searched concurrently, so each thread has its own.
+   */
+  private static final class Plan {
+    int[] columns = new int[64];
+    final int[] bucketStarts = new int[BUCKETS + 1];
+  }
+  private static final ThreadLocal<Plan> PLANS = ThreadLocal.withInitial(Plan::new);
+
   /**
    * Initialize the nNFA inverted bitsets.
    */
   public InvertedIndex(int nNFA, List<SmartBitSet> elts) {
-    inverted = new SmartBitSet[nNFA];
+    final int eltsSize = elts.size();
+    stride = Math.max(1, (eltsSize + SmartBitSet.BITS_PER_WORD - 1) / SmartBitSet.BITS_PER_WORD);
+    matrix = new long[0];
+    slots = new int[nNFA];
+    Arrays.fill(slots, -1);
+    columnCounts = new int[nNFA];
     nullInvertedElts = new SmartBitSet(nNFA);
     nullInvertedElts.set(0,nNFA); // completely null at first
     dirtyCommonRoot = new SmartBitSet(nNFA);
     dirtyCommonRoot.set(0,nNFA);
     MAX_CUTOFF = Math.max(MAX_CUTOFF, nNFA / MAX_FRACTION);
     // Initialize inverted array
-    final int eltsSize = elts.size();
     for (int j = 0; j < eltsSize; j++) {
       insert(elts.get(j), eltsSize);
     }
   }
 
+  /**
+   * Copy of other, to be modified while other is still being searched.
+   */
+  public InvertedIndex(InvertedIndex other) {
+    stride = other.stride;
+    matrix = Arrays.copyOf(other.matrix, other.numSlots * other.stride);
+    slots = other.slots.clone();
+    numSlots = other.numSlots;
+    columnCounts = other.columnCounts.clone();
+    nullInvertedElts = other.nullInvertedElts.trimmedCopy();
+    dirtyCommonRoot = other.dirtyCommonRoot.trimmedCopy();
+    maxElts = other.maxElts;
+    MAX_CUTOFF = other.MAX_CUTOFF;
+  }
+
   /**
    * Overwrite the jth element of ACElt. Takes nNFA operations.
    */
   public void overwrite(SmartBitSet b, int j) {
-    for (int k=0;k<inverted.length;k++) {
-      SmartBitSet inv = inverted[k];
-      if (inv == null) {
-        inverted[k] = inv = new SmartBitSet(this.maxElts);
-        nullInvertedElts.clear(k);
+    final int word = j >> ADDRESS_BITS_PER_WORD;
+    final long mask = 1L << j;
+    for (int k=0;k<slots.length;k++) {
+      final int w = columnOffset(k) + word;
+      if (b.get(k) != ((matrix[w] & mask) != 0)) {
+        columnCounts[k] += b.get(k) ? 1 : -1;
       }
       if (b.get(k)) {
-        inv.set(j);
+        matrix[w] |= mask;
       } else {
-        inv.clear(j);
+        matrix[w] &= ~mask;
       }
     }
     dirtyCommonRoot.dirtyAnd(b);
@@ -64,57 +107,132 @@ public final class InvertedIndex {
 
   // Overwrite only elements that have changed (average-case, this means writing half as many elements).
   // This should be even faster when b is sparse, which is common for the AC use-case.
+  @Override
   public void overwrite(SmartBitSet b, SmartBitSet oldElt, int j) {
     final SmartBitSet tempXOR = (SmartBitSet) b.clone();
     tempXOR.xor(oldElt);
+    final int word = j >> ADDRESS_BITS_PER_WORD;
+    final long mask = 1L << j;
     for (int k = tempXOR.nextSetBit(0); k >= 0; k = tempXOR.nextSetBit(k + 1)) {
-      SmartBitSet inv = inverted[k];
-      if (inv == null) {
-        inverted[k] = inv = new SmartBitSet(this.maxElts);
-        nullInvertedElts.clear(k);
-      }
+      final int w = columnOffset(k) + word;
       if (b.get(k)) {
-        inv.set(j);
+        matrix[w] |= mask;
+        columnCounts[k]++;
       } else {
-        inv.clear(j);
+        matrix[w] &= ~mask;
+        columnCounts[k]--;
       }
     }
     dirtyCommonRoot.dirtyAnd(b);
   }
 
+  /**
+   * Add the bits of b to the jth element of ACElt, which must be a subset of b (e.g., a union that grew).
+   * Takes |b| operations, and unlike overwrite leaves inverted bitsets of clear bits null.
+   */
+  @Override
+  public void or(SmartBitSet b, int j) {
+    final int word = j >> ADDRESS_BITS_PER_WORD;
+    final long mask = 1L << j;
+    for (int k = b.nextSetBit(0); k >= 0; k = b.nextSetBit(k + 1)) {
+      final int w = columnOffset(k) + word;
+      if ((matrix[w] & mask) == 0) {
+        matrix[w] |= mask;
+        columnCounts[k]++;
+      }
+    }
+    // the common root is an under-approximation, so it can stay as it is
+  }
+
+  /**
+   * Remove the last element of ACElt, oldElt. Takes |oldElt| operations.
+   */
+  @Override
+  public void removeLast(SmartBitSet oldElt) {
+    final int j = --maxElts;
+    final int word = j >> ADDRESS_BITS_PER_WORD;
+    final long mask = 1L << j;
+    for (int k = oldElt.nextSetBit(0); k >= 0; k = oldElt.nextSetBit(k + 1)) {
+      matrix[slots[k] * stride + word] &= ~mask;
+      columnCounts[k]--;
+    }
+    // the common root is an under-approximation, so it can stay as it is
+  }
+
   /**
    * Insert the jth element of ACElt.
    * Takes <= nNFA operations, on average more like nNFA/2.
    */
+  @Override
   public void insert(SmartBitSet b, int sizeHint) {
     final int index = maxElts++;
+    if (index >= stride * SmartBitSet.BITS_PER_WORD) {
+      growStride(Math.max(index + 1, sizeHint));
+    }
+    final int word = index >> ADDRESS_BITS_PER_WORD;
+    final long mask = 1L << index;
     for (int k = b.nextSetBit(0); k >= 0; k = b.nextSetBit(k + 1)) {
-      SmartBitSet inv = inverted[k];
-      if (inv == null) {
-        inverted[k] = inv = new SmartBitSet(sizeHint);
-        nullInvertedElts.clear(k);
-      }
-      inv.set(index);
+      final int w = columnOffset(k) + word; // before reading matrix, which this may grow
+      matrix[w] |= mask;
+      columnCounts[k]++;
     }
     dirtyCommonRoot.dirtyAnd(b);
   }
 
+  /**
+   * Offset in matrix of column k, giving it a slot if it's null.
+   */
+  private int columnOffset(int k) {
+    int slot = slots[k];
+    if (slot < 0) {
+      if ((numSlots + 1) * stride > matrix.length) {
+        matrix = Arrays.copyOf(matrix, Math.max(2 * numSlots, MIN_SLOTS) * stride); // zeroed
+      }
+      slots[k] = slot = numSlots++;
+      nullInvertedElts.clear(k);
+    }
+    return slot * stride;
+  }
+
+  /**
+   * Widen every column to hold at least minElts elements, at least doubling the stride.
+   */
+  private void growStride(int minElts) {
+    final int newStride = Math.max(2 * stride, (minElts + SmartBitSet.BITS_PER_WORD - 1) / SmartBitSet.BITS_PER_WORD);
+    final long[] newMatrix = new long[matrix.length / stride * newStride];
+    for (int slot = 0; slot < numSlots; slot++) {
+      System.arraycopy(matrix, slot * stride, newMatrix, slot * newStride, stride);
+    }
+    matrix = newMatrix;
+    stride = newStride;
+  }
+
   /**
    * Find the first element of acElts (ignoring deadElts) that's a subset of b, or return null.
    */
+  @Override
   public SmartBitSet findFirstSubset(List<SmartBitSet> acElts, SmartBitSet deadElts, SmartBitSet b) {
+    return findFirstSubset(acElts, deadElts, b, tempUnionInv);
+  }
+
+  /**
+   * As above, with a caller-supplied scratch bitset, so that several threads can search the same index.
+   */
+  @Override
+  public SmartBitSet findFirstSubset(
+      List<SmartBitSet> acElts, SmartBitSet deadElts, SmartBitSet b, SmartBitSet tempUnionInv) {
     if (!dirtyCommonRoot.isEmpty() && !dirtyCommonRoot.isSubset(b)) {
       // If common root isn't a subset of b, then clearly no ACElt is a subset of b
-      // This is a shortcut for an element of bShort corresponding to an element of inverted[i] that's all 1s
+      // This is a shortcut for an element of bShort corresponding to a column that's all 1s
       return null;
     }
-    filterPotentialSubsets(deadElts, b);
+    filterPotentialSubsets(deadElts, b, tempUnionInv);
 
-    return determineFirstSubset(acElts, b);
+    return determineFirstSubset(acElts, b, tempUnionInv);
   }
 
-  private void filterPotentialSubsets(SmartBitSet deadElts, SmartBitSet b) {
-    final SmartBitSet bShort = (SmartBitSet)b.clone();
+  private void filterPotentialSubsets(SmartBitSet deadElts, SmartBitSet b, SmartBitSet tempUnionInv) {
+    final SmartBitSet bShort = b.trimmedCopy(); // clone() would trim b, which may be shared
     bShort.dirtyOr(nullInvertedElts); // ignore null inverted bits
 
     // Start by including all dead elements
@@ -123,10 +241,15 @@ public final class InvertedIndex {
 
     final int maxCardinality = (int)(maxElts * MAX_CARD_FRACTION);
     int maxCount = 0;
-    // For each clear bit in 'b', OR the corresponding inverted BitSet
-    final SmartBitSet[] invertedArr = inverted;
-    for (int i = bShort.nextClearBit(0); i >= 0 && i < inverted.length; i = bShort.nextClearBit(i + 1)) {
-      tempUnionInv.dirtyOr(invertedArr[i]);
+    // For each clear bit in 'b', OR the corresponding column, densest first
+    final long[] matrixArr = matrix;
+    final int strideLen = stride;
+    final int[] slotArr = slots;
+    final Plan plan = PLANS.get();
+    final int numColumns = plan(bShort, true, false, plan);
+    final int[] columns = plan.columns;
+    for (int c = 0; c < numColumns; c++) {
+      tempUnionInv.dirtyOr(matrixArr, slotArr[columns[c]] * strideLen, strideLen);
       if (++maxCount > MAX_CUTOFF) {
         break; // Cutoff to avoid diminishing returns with repeated iterations
       }
@@ -139,11 +262,11 @@ public final class InvertedIndex {
     }
   }
 
-  private SmartBitSet determineFirstSubset(List<SmartBitSet> acElts, SmartBitSet b) {
+  private SmartBitSet determineFirstSubset(List<SmartBitSet> acElts, SmartBitSet b, SmartBitSet tempUnionInv) {
     // Iterate over potential indices
     for (int i = tempUnionInv.nextClearBit(0); i >= 0 && i < maxElts; i = tempUnionInv.nextClearBit(i + 1)) {
       final SmartBitSet oldElt = acElts.get(i);
-      if (oldElt.isSubset(b)) {
+      if (oldElt.isSubsetBySignature(b)) {
         return oldElt;
       }
     }
@@ -154,14 +277,25 @@ public final class InvertedIndex {
    * Find the indices of acElts (ignoring deadElts) that are supersets of b.
    * @param filterOnly if filterOnly, then only filter down, don't fully validate supersets.
    */
+  @Override
   public SmartBitSet findSupersetIndices(
       List<SmartBitSet> acElts, SmartBitSet deadElts, SmartBitSet b, boolean filterOnly) {
+    return findSupersetIndices(acElts, deadElts, b, filterOnly, tempIntInv);
+  }
+
+  /**
+   * As above, returning the indices in the caller-supplied tempIntInv (unless there's an early exit),
+   * so that several threads can search the same index.
+   */
+  @Override
+  public SmartBitSet findSupersetIndices(
+      List<SmartBitSet> acElts, SmartBitSet deadElts, SmartBitSet b, boolean filterOnly, SmartBitSet tempIntInv) {
     if (acElts.isEmpty()) {
       return SmartBitSet.EMPTY_SMART_BITSET; // empty list (can't happen): nothing can be a superset
     }
     if (b.isEmpty()) {
       // All zeroes, so everything is a superset. Return all (non-dead) elements
-      final SmartBitSet supersets = (SmartBitSet) deadElts.clone();
+      final SmartBitSet supersets = deadElts.trimmedCopy(); // clone() would trim deadElts, which may be shared
       supersets.flip(0, acElts.size());
       return supersets;
     }
@@ -169,29 +303,33 @@ public final class InvertedIndex {
       return SmartBitSet.EMPTY_SMART_BITSET; // bits in b but not in InvertedIndex: nothing can be a superset
     }
 
-    filterPotentialSupersets(deadElts, b);
+    filterPotentialSupersets(deadElts, b, tempIntInv);
 
     if (!filterOnly) {
-      validateSupersets(acElts, b);
+      validateSupersets(acElts, b, tempIntInv);
     }
 
     return tempIntInv;
   }
 
-  private void filterPotentialSupersets(SmartBitSet deadElts, SmartBitSet b) {
-    final int firstSetBit = b.nextSetBit(0);
-    final SmartBitSet[] invertedArr = inverted;
+  private void filterPotentialSupersets(SmartBitSet deadElts, SmartBitSet b, SmartBitSet tempIntInv) {
+    final Plan plan = PLANS.get();
+    final int numColumns = plan(b, false, true, plan);
+    final int[] columns = plan.columns;
+    final long[] matrixArr = matrix;
+    final int strideLen = stride;
+    final int[] slotArr = slots;
 
     tempIntInv.clear();
-    tempIntInv.dirtyOr(invertedArr[firstSetBit]);
+    tempIntInv.dirtyOr(matrixArr, slotArr[columns[0]] * strideLen, strideLen);
     // Exclude dead elements
     tempIntInv.dirtyAndNot(deadElts);
 
     final int minCardinality = (int)(maxElts * (1.0f -MAX_CARD_FRACTION));
     int maxCount = 0;
-    // For each set bit in 'b', AND the corresponding inverted BitSet
-    for (int i = b.nextSetBit(firstSetBit+1); i >= 0; i = b.nextSetBit(i + 1)) {
-      tempIntInv.dirtyAnd(invertedArr[i]);
+    // For each set bit in 'b', AND the corresponding column, rarest first
+    for (int c = 1; c < numColumns; c++) {
+      tempIntInv.dirtyAnd(matrixArr, slotArr[columns[c]] * strideLen, strideLen);
       if (tempIntInv.isEmpty()) {
         return;
       }
@@ -207,26 +345,90 @@ public final class InvertedIndex {
     }
   }
 
-  private void validateSupersets(List<SmartBitSet> acElts, SmartBitSet b) {
+  /**
+   * Put the columns to search in plan.columns and return how many there are: the clear bits of bits if clearBits,
+   * else its set bits (below nNFA either way).
+   * Once columns are long enough, they're ordered by population, rarest first if ascending, else densest first.
+   * The order is by power of 2 of the population (bucketed), so planning is linear in the number of columns.
+   */
+  private int plan(SmartBitSet bits, boolean clearBits, boolean ascending, Plan plan) {
+    final int nNFA = slots.length;
+    if (plan.columns.length < nNFA) {
+      plan.columns = new int[nNFA];
+    }
+    final int[] columns = plan.columns;
+    int numColumns = 0;
+    if (maxElts < MIN_PLANNED_ELTS) {
+      for (int k = clearBits ? bits.nextClearBit(0) : bits.nextSetBit(0); k >= 0 && k < nNFA;
+           k = clearBits ? bits.nextClearBit(k + 1) : bits.nextSetBit(k + 1)) {
+        columns[numColumns++] = k;
+      }
+      return numColumns;
+    }
+    // Counting sort by bucket: count, prefix sums, then place
+    final int[] bucketStarts = plan.bucketStarts;
+    Arrays.fill(bucketStarts, 0);
+    for (int k = clearBits ? bits.nextClearBit(0) : bits.nextSetBit(0); k >= 0 && k < nNFA;
+         k = clearBits ? bits.nextClearBit(k + 1) : bits.nextSetBit(k + 1)) {
+      bucketStarts[bucket(columnCounts[k], ascending) + 1]++;
+      numColumns++;
+    }
+    for (int i = 1; i <= BUCKETS; i++) {
+      bucketStarts[i] += bucketStarts[i - 1];
+    }
+    for (int k = clearBits ? bits.nextClearBit(0) : bits.nextSetBit(0); k >= 0 && k < nNFA;
+         k = clearBits ? bits.nextClearBit(k + 1) : bits.nextSetBit(k + 1)) {
+      columns[bucketStarts[bucket(columnCounts[k], ascending)]++] = k;
+    }
+    return numColumns;
+  }
+
+  private static int bucket(int count, boolean ascending) {
+    final int bucket = Integer.SIZE - Integer.numberOfLeadingZeros(count);
+    return ascending ? bucket : BUCKETS - 1 - bucket;
+  }
+
+  private void validateSupersets(List<SmartBitSet> acElts, SmartBitSet b, SmartBitSet tempIntInv) {
     // Iterate over potential indices
     for (int i = tempIntInv.nextSetBit(0); i >= 0 && i < maxElts; i = tempIntInv.nextSetBit(i + 1)) {
       final SmartBitSet oldElt = acElts.get(i);
-      if (!b.isSubset(oldElt)) {
+      if (!b.isSubsetBySignature(oldElt)) {
         tempIntInv.clear(i);
       }
     }
   }
 
+  @Override
+  public int size() {
+    return maxElts;
+  }
+
+  @Override
+  public SubsetIndex copy() {
+    return new InvertedIndex(this);
+  }
+
+  @Override
   public void clear() {
-    this.inverted = null;
+    this.matrix = null;
+    this.slots = null;
+    this.columnCounts = null;
     this.maxElts = 0;
   }
 
+  /**
+   * Copy of column k, or null if it's null.
+   */
+  SmartBitSet column(int k) {
+    final int slot = slots[k];
+    return slot < 0 ? null : SmartBitSet.valueOf(Arrays.copyOfRange(matrix, slot * stride, (slot + 1) * stride));
+  }
+
   public String toString() {
     final StringBuilder sb = new StringBuilder();
     sb.append("Inverted:\n");
-    for (int i = 0; i < this.inverted.length; i++) {
-      sb.append(i).append(" : ").append(inverted[i]).append("\n");
+    for (int i = 0; i < this.slots.length; i++) {
+      sb.append(i).append(" : ").append(column(i)).append("\n");
     }
     return sb.toString();
   }
@@ -0,0 +1,280 @@
+package OTF.Compress;
+
+import OTF.SmartBitSet;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Set-trie: each element is a path of its set bits in increasing order, ending in a node that holds its index.
+ * Subset and superset queries only walk the paths that can still match, so their cost is proportional to the
+ * trie nodes visited, rather than to nNFA inverted bitsets as in InvertedIndex; there are no cutoffs.
+ * Walks are iterative (via parent links), so they neither allocate nor recurse as deep as the elements are large.
+ */
+public final class SetTrie implements SubsetIndex {
+  private static final int[] NO_INTS = new int[0];
+  private static final Node[] NO_NODES = new Node[0];
+
+  private static final class Node {
+    final int key; // bit of this node, -1 at the root
+    final Node parent;
+    int[] keys = NO_INTS; // keys of the children, ascending
+    Node[] children = NO_NODES;
+    int numChildren = 0;
+    int[] indices = NO_INTS; // elements ending here: usually one, more if dead elements repeat live ones
+    int numIndices = 0;
+
+    Node(int key, Node parent) {
+      this.key = key;
+      this.parent = parent;
+    }
+
+    // position of the child with key, or (-(insertion point) - 1)
+    int position(int key) {
+      return Arrays.binarySearch(keys, 0, numChildren, key);
+    }
+
+    Node getOrAddChild(int key) {
+      int pos = position(key);
+      if (pos >= 0) {
+        return children[pos];
+      }
+      pos = -pos - 1;
+      if (numChildren == keys.length) {
+        final int capacity = Math.max(2, numChildren * 2);
+        keys = Arrays.copyOf(keys, capacity);
+        children = Arrays.copyOf(children, capacity);
+      }
+      System.arraycopy(keys, pos, keys, pos + 1, numChildren - pos);
+      System.arraycopy(children, pos, children, pos + 1, numChildren - pos);
+      final Node child = new Node(key, this);
+      keys[pos] = key;
+      children[pos] = child;
+      numChildren++;
+      return child;
+    }
+
+    void removeChild(int key) {
+      final int pos = position(key);
+      System.arraycopy(keys, pos + 1, keys, pos, numChildren - pos - 1);
+      System.arraycopy(children, pos + 1, children, pos, numChildren - pos - 1);
+      children[--numChildren] = null;
+    }
+
+    void addIndex(int j) {
+      if (numIndices == indices.length) {
+        indices = Arrays.copyOf(indices, Math.max(1, numIndices * 2));
+      }
+      indices[numIndices++] = j;
+    }
+
+    void removeIndex(int j) {
+      for (int i = 0; i < numIndices; i++) {
+        if (indices[i] == j) {
+          indices[i] = indices[--numIndices];
+          return;
+        }
+      }
+    }
+
+    /**
+     * An index ending here that's not in deadElts, or -1.
+     */
+    int liveIndex(SmartBitSet deadElts) {
+      for (int i = 0; i < numIndices; i++) {
+        if (!deadElts.get(indices[i])) {
+          return indices[i];
+        }
+      }
+      return -1;
+    }
+  }
+
+  private Node root = new Node(-1, null);
+  private Node[] terminals = NO_NODES; // node of each element, by index
+  private int size = 0;
+  private final SmartBitSet tempIndices = new SmartBitSet();
+
+  public SetTrie(List<SmartBitSet> elts) {
+    final int eltsSize = elts.size();
+    for (SmartBitSet elt : elts) {
+      insert(elt, eltsSize);
+    }
+  }
+
+  @Override
+  public void insert(SmartBitSet b, int sizeHint) {
+    if (size == terminals.length) {
+      terminals = Arrays.copyOf(terminals, Math.max(sizeHint, Math.max(4, size * 2)));
+    }
+    add(b, size++);
+  }
+
+  @Override
+  public void overwrite(SmartBitSet b, SmartBitSet oldElt, int j) {
+    remove(j);
+    add(b, j);
+  }
+
+  @Override
+  public void or(SmartBitSet b, int j) {
+    remove(j);
+    add(b, j);
+  }
+
+  @Override
+  public void removeLast(SmartBitSet oldElt) {
+    remove(--size);
+  }
+
+  private void add(SmartBitSet b, int j) {
+    Node node = root;
+    for (int k = b.nextSetBit(0); k >= 0; k = b.nextSetBit(k + 1)) {
+      node = node.getOrAddChild(k);
+    }
+    node.addIndex(j);
+    terminals[j] = node;
+  }
+
+  /**
+   * Remove the jth element, and the nodes only it used.
+   */
+  private void remove(int j) {
+    Node node = terminals[j];
+    if (node == null) {
+      return;
+    }
+    node.removeIndex(j);
+    terminals[j] = null;
+    while (node != root && node.numIndices == 0 && node.numChildren == 0) {
+      node.parent.removeChild(node.key);
+      node = node.parent;
+    }
+  }
+
+  @Override
+  public SmartBitSet findFirstSubset(List<SmartBitSet> acElts, SmartBitSet deadElts, SmartBitSet b) {
+    return findFirstSubset(acElts, deadElts, b, null);
+  }
+
+  /**
+   * Find an element of acElts (ignoring deadElts) that's a subset of b, or return null.
+   * This is the first one in trie order, not necessarily the one at the smallest index. temp isn't needed.
+   */
+  @Override
+  public SmartBitSet findFirstSubset(
+      List<SmartBitSet> acElts, SmartBitSet deadElts, SmartBitSet b, SmartBitSet temp) {
+    // Walk the paths of bits in b; the first node with a live index is a subset
+    final int bBound = b.wordsInUse * SmartBitSet.BITS_PER_WORD; // no bits of b from here on
+    Node node = root;
+    while (true) {
+      final int j = node.liveIndex(deadElts);
+      if (j >= 0) {
+        return acElts.get(j);
+      }
+      int pos = nextSubsetChild(node, 0, b, bBound);
+      while (pos < 0) {
+        if (node == root) {
+          return null;
+        }
+        final Node parent = node.parent;
+        pos = nextSubsetChild(parent, parent.position(node.key) + 1, b, bBound);
+        node = parent;
+      }
+      node = node.children[pos];
+    }
+  }
+
+  // Position of the first child of node from pos on whose bit is in b, or -1
+  private static int nextSubsetChild(Node node, int pos, SmartBitSet b, int bBound) {
+    for (; pos < node.numChildren; pos++) {
+      final int key = node.keys[pos];
+      if (key >= bBound) {
+        return -1;
+      }
+      if (b.get(key)) {
+        return pos;
+      }
+    }
+    return -1;
+  }
+
+  @Override
+  public SmartBitSet findSupersetIndices(
+      List<SmartBitSet> acElts, SmartBitSet deadElts, SmartBitSet b, boolean filterOnly) {
+    return findSupersetIndices(acElts, deadElts, b, filterOnly, tempIndices);
+  }
+
+  /**
+   * Find the indices of acElts (ignoring deadElts) that are supersets of b, in temp. The result is exact.
+   */
+  @Override
+  public SmartBitSet findSupersetIndices(
+      List<SmartBitSet> acElts, SmartBitSet deadElts, SmartBitSet b, boolean filterOnly, SmartBitSet temp) {
+    // A node is on a superset path if its path has every bit of b up to its key.
+    // Below the node that has the last bit of b, every element is a superset.
+    temp.clear();
+    Node node = root;
+    while (true) {
+      if (b.nextSetBit(node.key + 1) < 0) {
+        for (int i = 0; i < node.numIndices; i++) {
+          if (!deadElts.get(node.indices[i])) {
+            temp.set(node.indices[i]);
+          }
+        }
+      }
+      int pos = nextSupersetChild(node, 0, b);
+      while (pos < 0) {
+        if (node == root) {
+          return temp;
+        }
+        final Node parent = node.parent;
+        pos = nextSupersetChild(parent, parent.position(node.key) + 1, b);
+        node = parent;
+      }
+      node = node.children[pos];
+    }
+  }
+
+  // pos if the child of node there doesn't skip the next bit of b, else -1 (children are ascending)
+  private static int nextSupersetChild(Node node, int pos, SmartBitSet b) {
+    if (pos >= node.numChildren) {
+      return -1;
+    }
+    final int needed = b.nextSetBit(node.key + 1);
+    return needed < 0 || node.keys[pos] <= needed ? pos : -1;
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Copy, rebuilt from the elements' paths.
+   */
+  @Override
+  public SubsetIndex copy() {
+    final SetTrie copy = new SetTrie(List.of());
+    copy.terminals = new Node[terminals.length];
+    copy.size = size;
+    final SmartBitSet elt = new SmartBitSet();
+    for (int j = 0; j < size; j++) {
+      if (terminals[j] != null) {
+        elt.clear();
+        for (Node node = terminals[j]; node != root; node = node.parent) {
+          elt.set(node.key);
+        }
+        copy.add(elt, j);
+      }
+    }
+    return copy;
+  }
+
+  @Override
+  public void clear() {
+    root = new Node(-1, null);
+    terminals = NO_NODES;
+    size = 0;
+  }
+}
@@ -7,6 +7,7 @@ import com.github.benmanes.caffeine.cache.Caffeine;
 import java.util.BitSet;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public final class SimAccelerate {
   private static final int INITIAL_PRUNE_CAPACITY = 10_000;
@@ -23,13 +24,20 @@ public final class SimAccelerate {
   final boolean shouldAccelerate;
 
   public SimAccelerate(BitSet[] simSupersetRels, int nNFA) {
+    this(simSupersetRels, nNFA, false);
+  }
+
+  /**
+   * @param concurrent - whether prune and saturate (with caller-supplied scratch) may be called concurrently
+   */
+  public SimAccelerate(BitSet[] simSupersetRels, int nNFA, boolean concurrent) {
     tempSupersetStatesInB = new SmartBitSet(nNFA);
     shouldAccelerate = simSupersetRels.length > 0;
     if (!shouldAccelerate) {
       prunedMap = null;
     } else {
       if (nNFA < 1000) {
-        prunedMap = new HashMap<>(INITIAL_PRUNE_CAPACITY);
+        prunedMap = concurrent ? new ConcurrentHashMap<>(INITIAL_PRUNE_CAPACITY) : new HashMap<>(INITIAL_PRUNE_CAPACITY);
       } else {
         // Upper bound on cache size, should keep us from overflowing memory for large nNFA.
         final Cache<SmartBitSet, SmartBitSet> prunedCache = Caffeine.newBuilder()
@@ -62,6 +70,13 @@ public final class SimAccelerate {
    * Used in get and put.
    */
   public SmartBitSet pruneEltWithSims(SmartBitSet b) {
+    return pruneEltWithSims(b, tempSupersetStatesInB);
+  }
+
+  /**
+   * As above, with caller-supplied scratch (of size nNFA), so that several threads can prune at once.
+   */
+  public SmartBitSet pruneEltWithSims(SmartBitSet b, SmartBitSet tempSupersetStatesInB) {
     // Calculate all potentially prunable elements of b
     // Check if b contains any elements that are marked as potential redundant subsets (subsetStates)
     // and also if it contains any supersets (supersetStates) that imply redundancy.
@@ -73,20 +88,24 @@ public final class SimAccelerate {
     SmartBitSet pruned = prunedMap.get(b);
     if (pruned == null) {
       // calculate pruned value
-      calculateTempDirtySupersetStatesInB(b);
+      calculateTempDirtySupersetStatesInB(b, tempSupersetStatesInB);
       // prune redundant subsets: for each superset, prune all subsets associated with it
-      pruned = (SmartBitSet) b.clone();
+      pruned = b.trimmedCopy();
       for (int i = tempSupersetStatesInB.nextSetBit(0); i >= 0; i = tempSupersetStatesInB.nextSetBit(i + 1)) {
         pruned.dirtyAndNot(redundantStates[i]);
       }
       pruned.markAsDirty();
-      prunedMap.put((SmartBitSet) b.clone(), pruned); // to prevent potential post-mutation issues
+      // cache these before sharing pruned, so readers on other threads don't race to compute them
+      pruned.cardinality();
+      pruned.hashCode();
+      pruned.signature();
+      prunedMap.put(b.trimmedCopy(), pruned); // to prevent potential post-mutation issues
     }
     return pruned;
   }
 
   // Calculate all supersets in b
-  private void calculateTempDirtySupersetStatesInB(SmartBitSet b) {
+  private void calculateTempDirtySupersetStatesInB(SmartBitSet b, SmartBitSet tempSupersetStatesInB) {
     tempSupersetStatesInB.clear();
     tempSupersetStatesInB.dirtyOr(b);
     tempSupersetStatesInB.dirtyAnd(supersetStates);
@@ -100,13 +119,20 @@ public final class SimAccelerate {
    * TODO: potentially could be used in unify, although the advantage there is less clear.
    */
   public SmartBitSet saturateEltWithSims(SmartBitSet b) {
+    return saturateEltWithSims(b, tempSupersetStatesInB);
+  }
+
+  /**
+   * As above, with caller-supplied scratch (of size nNFA), so that several threads can saturate at once.
+   */
+  public SmartBitSet saturateEltWithSims(SmartBitSet b, SmartBitSet tempSupersetStatesInB) {
     if (!b.intersects(supersetStates)) {
       return b; // there's nothing to saturate
     }
-    calculateTempDirtySupersetStatesInB(b);
+    calculateTempDirtySupersetStatesInB(b, tempSupersetStatesInB);
 
     // Keep only the bits that are potential redundant subsets.
-    final SmartBitSet saturated = (SmartBitSet) b.clone();
+    final SmartBitSet saturated = b.trimmedCopy();
     // Iterate over each state in b that is marked as a superset
     for (int i = tempSupersetStatesInB.nextSetBit(0); i >= 0; i = tempSupersetStatesInB.nextSetBit(i + 1)) {
       saturated.dirtyOr(redundantStates[i]); // Add redundant states
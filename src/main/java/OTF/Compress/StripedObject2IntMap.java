@@ -0,0 +1,155 @@
+package OTF.Compress;
+
+import java.io.Serial;
+import java.util.concurrent.locks.StampedLock;
+
+import it.unimi.dsi.fastutil.objects.AbstractObject2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ObjectOpenHashSet;
+import it.unimi.dsi.fastutil.objects.ObjectSet;
+
+/**
+ * Thread-safe Object2IntMap, striped over several Object2IntOpenHashMaps by key hash, each behind its own lock.
+ * Lookups only take a read lock, so they proceed in parallel; writes only block their stripe.
+ * Values stay unboxed ints, as in Object2IntOpenHashMap; ConcurrentHashMap would box them.
+ * Only the operations used by the antichain forest are striped; entry-set iteration is a snapshot.
+ */
+final class StripedObject2IntMap<K> extends AbstractObject2IntMap<K> {
+    private static final int STRIPES = 64; // power of 2
+    @Serial
+    private static final long serialVersionUID = 12347L;
+
+    private final Object2IntOpenHashMap<K>[] maps;
+    private final StampedLock[] locks = new StampedLock[STRIPES];
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    StripedObject2IntMap() {
+        this.maps = new Object2IntOpenHashMap[STRIPES];
+        for (int i = 0; i < STRIPES; i++) {
+            this.maps[i] = new Object2IntOpenHashMap<>();
+            this.locks[i] = new StampedLock();
+        }
+    }
+
+    private static int stripe(Object key) {
+        final int h = key.hashCode();
+        return (h ^ (h >>> 16) ^ (h >>> 8)) & (STRIPES - 1);
+    }
+
+    @Override
+    public void defaultReturnValue(int rv) {
+        super.defaultReturnValue(rv);
+        for (Object2IntOpenHashMap<K> map : maps) {
+            map.defaultReturnValue(rv);
+        }
+    }
+
+    @Override
+    public int getInt(Object key) {
+        final int s = stripe(key);
+        final long stamp = locks[s].readLock();
+        try {
+            return maps[s].getInt(key);
+        } finally {
+            locks[s].unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        final int s = stripe(key);
+        final long stamp = locks[s].readLock();
+        try {
+            return maps[s].containsKey(key);
+        } finally {
+            locks[s].unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public int put(K key, int value) {
+        final int s = stripe(key);
+        final long stamp = locks[s].writeLock();
+        try {
+            return maps[s].put(key, value);
+        } finally {
+            locks[s].unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public int putIfAbsent(K key, int value) {
+        final int s = stripe(key);
+        final long stamp = locks[s].writeLock();
+        try {
+            return maps[s].putIfAbsent(key, value);
+        } finally {
+            locks[s].unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public int removeInt(Object key) {
+        final int s = stripe(key);
+        final long stamp = locks[s].writeLock();
+        try {
+            return maps[s].removeInt(key);
+        } finally {
+            locks[s].unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public boolean remove(Object key, int value) {
+        final int s = stripe(key);
+        final long stamp = locks[s].writeLock();
+        try {
+            return maps[s].remove(key, value);
+        } finally {
+            locks[s].unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public int size() {
+        int size = 0;
+        for (int s = 0; s < STRIPES; s++) {
+            final long stamp = locks[s].readLock();
+            try {
+                size += maps[s].size();
+            } finally {
+                locks[s].unlockRead(stamp);
+            }
+        }
+        return size;
+    }
+
+    @Override
+    public void clear() {
+        for (int s = 0; s < STRIPES; s++) {
+            final long stamp = locks[s].writeLock();
+            try {
+                maps[s].clear();
+            } finally {
+                locks[s].unlockWrite(stamp);
+            }
+        }
+    }
+
+    @Override
+    public ObjectSet<Object2IntMap.Entry<K>> object2IntEntrySet() {
+        final ObjectSet<Object2IntMap.Entry<K>> entries = new ObjectOpenHashSet<>();
+        for (int s = 0; s < STRIPES; s++) {
+            final long stamp = locks[s].readLock();
+            try {
+                for (Object2IntMap.Entry<K> entry : maps[s].object2IntEntrySet()) {
+                    entries.add(new BasicEntry<>(entry.getKey(), entry.getIntValue()));
+                }
+            } finally {
+                locks[s].unlockRead(stamp);
+            }
+        }
+        return entries;
+    }
+}
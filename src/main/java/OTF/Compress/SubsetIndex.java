@@ -0,0 +1,80 @@
+package OTF.Compress;
+
+import OTF.SmartBitSet;
+
+import java.util.List;
+
+/**
+ * Index over a list of bitsets (ACElts elements, or AC unions) for subset and superset queries.
+ * Elements are identified by their position in the list; callers pass the list and the positions to ignore (deadElts).
+ * Searches don't modify the index, so several threads can search one index at once, each with its own scratch.
+ */
+public interface SubsetIndex {
+  /**
+   * Implementations to choose from.
+   */
+  enum Kind {
+    INVERTED, // InvertedIndex: one bitset of element positions per NFA state
+    SET_TRIE; // SetTrie: a trie of the elements' sorted states
+
+    public SubsetIndex create(int nNFA, List<SmartBitSet> elts) {
+      return this == INVERTED ? new InvertedIndex(nNFA, elts) : new SetTrie(elts);
+    }
+  }
+
+  /**
+   * Insert b as the next element.
+   * @param sizeHint - expected number of elements
+   */
+  void insert(SmartBitSet b, int sizeHint);
+
+  /**
+   * Overwrite the jth element, oldElt, with b.
+   */
+  void overwrite(SmartBitSet b, SmartBitSet oldElt, int j);
+
+  /**
+   * Add the bits of b to the jth element, which must be a subset of b (e.g., a union that grew).
+   */
+  void or(SmartBitSet b, int j);
+
+  /**
+   * Remove the last element, oldElt, e.g., once it's dead.
+   */
+  void removeLast(SmartBitSet oldElt);
+
+  /**
+   * Find an element of acElts (ignoring deadElts) that's a subset of b, or return null.
+   */
+  SmartBitSet findFirstSubset(List<SmartBitSet> acElts, SmartBitSet deadElts, SmartBitSet b);
+
+  /**
+   * As above, with a caller-supplied scratch bitset, so that several threads can search the same index.
+   */
+  SmartBitSet findFirstSubset(List<SmartBitSet> acElts, SmartBitSet deadElts, SmartBitSet b, SmartBitSet temp);
+
+  /**
+   * Find the indices of acElts (ignoring deadElts) that are supersets of b.
+   * @param filterOnly if filterOnly, then the result may include extra indices.
+   */
+  SmartBitSet findSupersetIndices(List<SmartBitSet> acElts, SmartBitSet deadElts, SmartBitSet b, boolean filterOnly);
+
+  /**
+   * As above, returning the indices in the caller-supplied temp (unless there's an early exit),
+   * so that several threads can search the same index.
+   */
+  SmartBitSet findSupersetIndices(
+      List<SmartBitSet> acElts, SmartBitSet deadElts, SmartBitSet b, boolean filterOnly, SmartBitSet temp);
+
+  /**
+   * Number of elements, including dead ones.
+   */
+  int size();
+
+  /**
+   * Copy of this index, to be modified while this one is still being searched.
+   */
+  SubsetIndex copy();
+
+  void clear();
+}
@@ -0,0 +1,72 @@
+package OTF;
+
+import java.io.Serial;
+import java.util.BitSet;
+import java.util.concurrent.RecursiveAction;
+
+import OTF.Registry.Registry;
+import net.automatalib.alphabet.Alphabet;
+import net.automatalib.ts.AcceptorPowersetViewTS;
+
+/**
+ * Expands a batch of popped metastates in parallel: successor computation, acceptance checks,
+ * and (if the registry supports it) registry lookups.
+ * Results are written to per-record slots, so no synchronization is needed beyond the fork-join.
+ * The DFA and the registry are only mutated afterwards, by the coordinating thread.
+ */
+final class ExpandTask<I> extends RecursiveAction {
+  private final int lo, hi;
+  private final BitSet[] inStates;
+  private final AcceptorPowersetViewTS<BitSet, I, ?> nfa;
+  private final Alphabet<I> inputs;
+  private final Registry registry; // null if the registry can't be read concurrently
+  private final BitSet[][] succs;
+  private final boolean[][] succAccs;
+  private final int[][] outSuccs;
+
+  // Records per leaf task; metastate expansion is relatively expensive, so keep leaves small
+  private static final int MIN_SUBPROBLEM_SIZE = 2;
+  @Serial
+  private static final long serialVersionUID = 12346L;
+
+  ExpandTask(int lo, int hi, BitSet[] inStates,
+             AcceptorPowersetViewTS<BitSet, I, ?> nfa, Alphabet<I> inputs, Registry registry,
+             BitSet[][] succs, boolean[][] succAccs, int[][] outSuccs) {
+    this.lo = lo;
+    this.hi = hi;
+    this.inStates = inStates;
+    this.nfa = nfa;
+    this.inputs = inputs;
+    this.registry = registry;
+    this.succs = succs;
+    this.succAccs = succAccs;
+    this.outSuccs = outSuccs;
+  }
+
+  @Override
+  protected void compute() {
+    if (hi - lo <= MIN_SUBPROBLEM_SIZE) {
+      for (int r = lo; r < hi; r++) {
+        expand(r);
+      }
+      return;
+    }
+    final int mid = lo + (hi - lo) / 2;
+    invokeAll(
+        new ExpandTask<>(lo, mid, inStates, nfa, inputs, registry, succs, succAccs, outSuccs),
+        new ExpandTask<>(mid, hi, inStates, nfa, inputs, registry, succs, succAccs, outSuccs));
+  }
+
+  private void expand(int r) {
+    final BitSet inState = inStates[r];
+    final BitSet[] recordSuccs = succs[r];
+    final boolean[] recordAccs = succAccs[r];
+    final int[] recordOutSuccs = outSuccs[r];
+    OTFDeterminization.successors(nfa, inputs, inState, recordSuccs);
+    for (int j = 0; j < recordSuccs.length; j++) {
+      final BitSet succ = recordSuccs[j];
+      recordAccs[j] = nfa.isAccepting(succ);
+      recordOutSuccs[j] = registry == null ? Registry.MISSING_ELEMENT : registry.get(succ);
+    }
+  }
+}
@@ -0,0 +1,593 @@
+package OTF;
+
+import java.lang.management.ManagementFactory;
+import java.util.BitSet;
+
+import OTF.Registry.Registry;
+import com.sun.management.ThreadMXBean;
+import it.unimi.dsi.fastutil.ints.Int2IntOpenCustomHashMap;
+import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntHash;
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+import net.automatalib.alphabet.Alphabet;
+import net.automatalib.automaton.MutableDeterministic.FullIntAbstraction;
+import net.automatalib.automaton.fsa.impl.CompactDFA;
+import net.automatalib.util.partitionrefinement.Block;
+import net.automatalib.util.partitionrefinement.Hopcroft;
+
+/**
+ * On-the-fly minimization (Algorithm 1) that reuses work across threshold crossings of one OTF run.
+ * <p>
+ * A finished state is closed if every state reachable from it is finished.
+ * Its language can no longer change, and it can't be equivalent to a state that still reaches an unfinished state.
+ * Once a full pass has minimized the closed states, later passes only refine the region of finished states
+ * that aren't closed, with closed and unfinished successors as fixed singleton blocks.
+ * Region states that became closed are then matched against the closed states by (acceptance, successors).
+ * Self-loops are matched as such, so the common case of a closed state looping on itself isn't missed.
+ * <p>
+ * The partition can't just be refined further from pass to pass, since exploration coarsens it:
+ * unfinished states (singleton blocks) become finished and may turn out equivalent.
+ * Incremental passes are sound, but may miss merges, e.g., of cycles that closed in different passes.
+ * A full pass recovers these; it runs every FULL_PASS_PERIOD passes, when the region is large,
+ * or when the DFA has grown by MAX_GROWTH_FACTOR since the last full pass (i.e., incremental passes don't keep up).
+ */
+public class IncrementalMinimizer {
+    private static final int FULL_PASS_PERIOD = 8;
+    private static final int MAX_REGION_PERCENT = 75; // of finished states; beyond this a full pass is about as cheap
+    private static final int MAX_GROWTH_FACTOR = 2; // live states relative to the last full pass
+
+    // neither a state nor a reference to a streamed state (StreamingOutput.ref)
+    private static final int SELF_LOOP = Integer.MIN_VALUE;
+    // bound on closed states visited when matching cycles of newly closed states, relative to their number
+    private static final int MAX_CYCLE_CLOSURE_FACTOR = 16;
+
+    private final PTArena arena = new PTArena();
+    private final BitSet closedStates = new BitSet();
+    // closed states by (acceptance, successors). Keys are state + 1, since fastutil reserves key 0.
+    private Int2IntOpenCustomHashMap closedSignatures;
+    private StreamingOutput stream; // closed states are streamed out of the DFA after full passes; may be null
+    private int passesSinceFull = FULL_PASS_PERIOD; // first pass is full
+    private int sizeAfterFull;
+
+    private int passes;
+    private int fullPasses;
+    private boolean lastPassFull;
+    private int lastSplits;
+    private long totalSplits;
+    private long lastPassAllocatedBytes;
+
+    /**
+     * Minimization pass; see OTFDeterminization.otfMinimization for the parameters.
+     * @return if any updates occurred
+     */
+    public <I> boolean minimize(
+        Alphabet<I> inputs, CompactDFA<I> out, BitSet finishedStates, IntArrayList stateBuffer, Registry registry) {
+        final long allocatedBefore = allocatedBytes();
+        final FullIntAbstraction<?, Boolean, Void> abs = out.fullIntAbstraction(inputs);
+        final int regionSize = finishedStates.cardinality() - closedStates.cardinality();
+        lastPassFull = passesSinceFull >= FULL_PASS_PERIOD
+            || 100L * regionSize > (long) MAX_REGION_PERCENT * finishedStates.cardinality()
+            || out.size() - stateBuffer.size() > MAX_GROWTH_FACTOR * sizeAfterFull;
+
+        final boolean updated;
+        if (lastPassFull) {
+            if (stream == null) {
+                updated = fullPass(out, abs, finishedStates, stateBuffer, registry);
+            } else {
+                // streamed states are outside the DFA, so the whole DFA is refined as a region
+                closedStates.clear();
+                if (closedSignatures != null) {
+                    closedSignatures.clear();
+                }
+                updated = incrementalPass(out, abs, finishedStates, stateBuffer, registry);
+                if (stream.evict(out, closedStates, finishedStates, stateBuffer, registry) > 0) {
+                    closedStates.clear();
+                    closedSignatures.clear();
+                }
+            }
+            passesSinceFull = 1;
+            fullPasses++;
+            sizeAfterFull = out.size() - stateBuffer.size();
+        } else {
+            updated = incrementalPass(out, abs, finishedStates, stateBuffer, registry);
+            passesSinceFull++;
+        }
+        passes++;
+        totalSplits += lastSplits;
+
+        if (updated) {
+            registry.compress();
+        }
+        lastPassAllocatedBytes = allocatedBefore < 0 ? -1 : allocatedBytes() - allocatedBefore;
+        return updated;
+    }
+
+    /**
+     * Minimizes all reachable and finished states, and recomputes the closed states.
+     */
+    private <I> boolean fullPass(
+        CompactDFA<I> out, FullIntAbstraction<?, Boolean, Void> abs, BitSet finishedStates,
+        IntArrayList stateBuffer, Registry registry) {
+        final int numStates = out.size();
+        final Hopcroft pt = new Hopcroft();
+        PTInitializers.initDeterministic(pt, out, finishedStates, arena);
+
+        // Incremental passes may leave finished states unreachable (e.g., unmatched duplicates of closed states).
+        // Like otfMinimization, a full pass doesn't minimize them, and they stay in the region of later passes.
+        final BitSet unreachable = new BitSet();
+        for (int q = finishedStates.nextSetBit(0); q >= 0; q = finishedStates.nextSetBit(q + 1)) {
+            if (pt.blockForState[q] == null) {
+                unreachable.set(q);
+            }
+        }
+
+        final BitSet unfinished = new BitSet();
+        for (int q = finishedStates.nextClearBit(0); q < numStates; q = finishedStates.nextClearBit(q + 1)) {
+            if (pt.blockForState[q] != null) {
+                unfinished.set(q);
+            }
+        }
+        // equivalent states are both open or both closed, so this holds after merging too
+        final BitSet open = backwardClosure(pt, unfinished);
+
+        final int initialBlocks = pt.getNumBlocks();
+        pt.computeCoarsestStablePartition();
+        lastSplits = pt.getNumBlocks() - initialBlocks;
+
+        final boolean updated = OTFDeterminization.updateDFA(
+            out, finishedStates, stateBuffer, registry, pt, abs, null, numStates);
+        if (updated && !unreachable.isEmpty()) {
+            redirectToRepresentatives(out, pt, finishedStates, unreachable);
+        }
+
+        closedStates.clear();
+        if (closedSignatures == null) {
+            closedSignatures = newSignatureMap(out);
+        } else {
+            closedSignatures.clear(); // keeps its capacity
+        }
+        for (int q = finishedStates.nextSetBit(0); q >= 0; q = finishedStates.nextSetBit(q + 1)) {
+            if (!open.get(q) && !unreachable.get(q)) {
+                closedStates.set(q);
+                closedSignatures.putIfAbsent(q + 1, q);
+            }
+        }
+        return updated;
+    }
+
+    /**
+     * Redirects transitions of states outside the partition that lead to merged states.
+     * The registry can still return these states, so their transitions have to stay valid.
+     */
+    private static void redirectToRepresentatives(
+        CompactDFA<?> out, Hopcroft pt, BitSet finishedStates, BitSet states) {
+        final int numInputs = out.numInputs();
+        final Int2IntOpenHashMap representatives = new Int2IntOpenHashMap();
+        representatives.defaultReturnValue(-1);
+        for (int q = states.nextSetBit(0); q >= 0; q = states.nextSetBit(q + 1)) {
+            for (int j = 0; j < numInputs; j++) {
+                final int t = out.getSuccessor(q, j);
+                final Block block = pt.blockForState[t];
+                if (block == null || block.high - block.low == 1) {
+                    continue; // outside the partition, or not merged
+                }
+                int rep = representatives.get(t);
+                if (rep < 0) {
+                    // the one state of the block that wasn't merged away
+                    for (int b = block.low; b < block.high; b++) {
+                        if (finishedStates.get(pt.blockData[b])) {
+                            rep = pt.blockData[b];
+                            break;
+                        }
+                    }
+                    representatives.put(t, rep);
+                }
+                if (rep != t) {
+                    out.setTransition(q, j, rep);
+                }
+            }
+        }
+    }
+
+    /**
+     * Minimizes the finished states that aren't closed, then adds the ones that became closed to the closed states.
+     */
+    private <I> boolean incrementalPass(
+        CompactDFA<I> out, FullIntAbstraction<?, Boolean, Void> abs, BitSet finishedStates,
+        IntArrayList stateBuffer, Registry registry) {
+        final int numInputs = out.numInputs();
+
+        // Local ids: region states first, then their successors outside the region (closed or unfinished)
+        final IntArrayList localToGlobal = new IntArrayList();
+        final Int2IntOpenHashMap globalToLocal = new Int2IntOpenHashMap();
+        globalToLocal.defaultReturnValue(-1);
+        for (int q = finishedStates.nextSetBit(0); q >= 0; q = finishedStates.nextSetBit(q + 1)) {
+            if (!closedStates.get(q)) {
+                globalToLocal.put(q, localToGlobal.size());
+                localToGlobal.add(q);
+            }
+        }
+        final int regionSize = localToGlobal.size();
+        if (regionSize == 0) {
+            lastSplits = 0;
+            return false;
+        }
+
+        final IntArrayList succList = new IntArrayList(regionSize * numInputs);
+        for (int s = 0; s < regionSize; s++) {
+            final int q = localToGlobal.getInt(s);
+            for (int j = 0; j < numInputs; j++) {
+                final int t = out.getSuccessor(q, j);
+                int local = globalToLocal.get(t);
+                if (local < 0) {
+                    local = localToGlobal.size();
+                    globalToLocal.put(t, local);
+                    localToGlobal.add(t);
+                }
+                succList.add(local);
+            }
+        }
+        final int numLocal = localToGlobal.size();
+        final int[] toGlobal = localToGlobal.toIntArray();
+        final int[] succ = arena.successors(numLocal * numInputs);
+        succList.getElements(0, succ, 0, succList.size());
+
+        // Region states are split by acceptance; each outside state is its own block, with self-loops
+        final int[] classes = arena.classes(numLocal);
+        final BitSet unfinished = new BitSet();
+        for (int s = 0; s < regionSize; s++) {
+            classes[s] = out.isAccepting(toGlobal[s]) ? 1 : 0;
+        }
+        for (int s = regionSize; s < numLocal; s++) {
+            classes[s] = 2 + s - regionSize;
+            for (int j = 0; j < numInputs; j++) {
+                succ[s * numInputs + j] = s;
+            }
+            if (toGlobal[s] >= 0 && !finishedStates.get(toGlobal[s])) { // not a streamed state
+                unfinished.set(s);
+            }
+        }
+
+        final Hopcroft pt = new Hopcroft();
+        PTInitializers.initComplete(pt, numLocal, numInputs, succ, classes, 2 + numLocal - regionSize, arena);
+        final BitSet open = backwardClosure(pt, unfinished);
+
+        final int initialBlocks = pt.getNumBlocks();
+        pt.computeCoarsestStablePartition();
+        lastSplits = pt.getNumBlocks() - initialBlocks;
+
+        boolean updated = OTFDeterminization.updateDFA(
+            out, finishedStates, stateBuffer, registry, pt, abs, toGlobal, regionSize);
+
+        final IntArrayList newlyClosed = new IntArrayList();
+        for (int s = 0; s < regionSize; s++) {
+            if (!open.get(s) && finishedStates.get(toGlobal[s])) { // closed, and not merged away
+                newlyClosed.add(toGlobal[s]);
+            }
+        }
+        if (!newlyClosed.isEmpty()) {
+            if (closedSignatures == null) {
+                closedSignatures = newSignatureMap(out);
+            }
+            updated |= addClosed(out, abs, newlyClosed, toGlobal, regionSize, finishedStates, stateBuffer, registry);
+        }
+        return updated;
+    }
+
+    /**
+     * Adds newly closed states to the closed states, merging each into an equivalent closed state if there is one.
+     * A state is matched by signature once all of its successors are closed (or itself).
+     * What remains are longer cycles among newly closed states, which are matched by partition refinement.
+     */
+    private <I> boolean addClosed(
+        CompactDFA<I> out, FullIntAbstraction<?, Boolean, Void> abs, IntArrayList newlyClosed,
+        int[] region, int regionSize, BitSet finishedStates, IntArrayList stateBuffer, Registry registry) {
+        final int numInputs = out.numInputs();
+        final IntOpenHashSet pending = new IntOpenHashSet(newlyClosed);
+
+        // Only region states can have transitions into the region
+        final Int2ObjectOpenHashMap<IntArrayList> preds = new Int2ObjectOpenHashMap<>();
+        for (int s = 0; s < regionSize; s++) {
+            final int p = region[s];
+            if (!finishedStates.get(p)) {
+                continue; // merged away
+            }
+            for (int j = 0; j < numInputs; j++) {
+                final int t = out.getSuccessor(p, j);
+                if (pending.contains(t)) {
+                    preds.computeIfAbsent(t, k -> new IntArrayList()).add(p);
+                }
+            }
+        }
+
+        boolean updated = false;
+        boolean progress = true;
+        while (progress) {
+            progress = false;
+            for (int i = 0; i < newlyClosed.size(); i++) {
+                final int q = newlyClosed.getInt(i);
+                if (!successorsClosed(out, q, numInputs)) {
+                    continue;
+                }
+                int equiv = closedSignatures.get(q + 1);
+                if (equiv == Registry.MISSING_ELEMENT && stream != null && q != abs.getIntInitialState()) {
+                    equiv = stream.find(out, q);
+                }
+                if (equiv == Registry.MISSING_ELEMENT) {
+                    closedStates.set(q);
+                    closedSignatures.put(q + 1, q);
+                } else {
+                    mergeClosed(out, abs, q, equiv, preds.get(q), finishedStates, stateBuffer, registry);
+                    updated = true;
+                }
+                newlyClosed.set(i, newlyClosed.getInt(newlyClosed.size() - 1));
+                newlyClosed.popInt();
+                i--;
+                progress = true;
+            }
+        }
+        if (!newlyClosed.isEmpty()) {
+            updated |= addClosedCycles(out, abs, newlyClosed, preds, finishedStates, stateBuffer, registry);
+        }
+        return updated;
+    }
+
+    /**
+     * Partition refinement over the remaining newly closed states and the closed states reachable from them.
+     * Streamed states are read back from the stream file.
+     * Closed states are never merged away here, since their predecessors aren't known;
+     * newly closed states are merged into a closed state of their block, if any.
+     * If too many closed states are reachable, the states are added as-is and left to the next full pass.
+     */
+    private <I> boolean addClosedCycles(
+        CompactDFA<I> out, FullIntAbstraction<?, Boolean, Void> abs, IntArrayList remaining,
+        Int2ObjectOpenHashMap<IntArrayList> preds, BitSet finishedStates, IntArrayList stateBuffer,
+        Registry registry) {
+        final int numInputs = out.numInputs();
+        final int numRemaining = remaining.size();
+        final int maxStates = numRemaining * MAX_CYCLE_CLOSURE_FACTOR;
+
+        final IntArrayList localToGlobal = new IntArrayList(remaining);
+        final Int2IntOpenHashMap globalToLocal = new Int2IntOpenHashMap();
+        globalToLocal.defaultReturnValue(-1);
+        for (int s = 0; s < numRemaining; s++) {
+            globalToLocal.put(remaining.getInt(s), s);
+        }
+        final IntArrayList succList = new IntArrayList();
+        final BitSet acceptingStreamed = new BitSet(); // by local id
+        final int[] streamedSuccs = new int[numInputs];
+        for (int s = 0; s < localToGlobal.size() && localToGlobal.size() <= maxStates; s++) {
+            final int q = localToGlobal.getInt(s);
+            if (q < 0 && stream.readState(q, streamedSuccs)) {
+                acceptingStreamed.set(s);
+            }
+            for (int j = 0; j < numInputs; j++) {
+                final int t = q < 0 ? streamedSuccs[j] : out.getSuccessor(q, j);
+                int local = globalToLocal.get(t);
+                if (local < 0) {
+                    local = localToGlobal.size();
+                    globalToLocal.put(t, local);
+                    localToGlobal.add(t);
+                }
+                succList.add(local);
+            }
+        }
+
+        boolean updated = false;
+        if (localToGlobal.size() <= maxStates) {
+            final int numLocal = localToGlobal.size();
+            final int[] toGlobal = localToGlobal.toIntArray();
+            final int[] succ = arena.successors(numLocal * numInputs);
+            succList.getElements(0, succ, 0, succList.size());
+            final int[] classes = arena.classes(numLocal);
+            for (int s = 0; s < numLocal; s++) {
+                final boolean accepting = toGlobal[s] < 0 ? acceptingStreamed.get(s) : out.isAccepting(toGlobal[s]);
+                classes[s] = accepting ? 1 : 0;
+            }
+            final Hopcroft pt = new Hopcroft();
+            PTInitializers.initComplete(pt, numLocal, numInputs, succ, classes, 2, arena);
+            pt.computeCoarsestStablePartition();
+
+            for (Block block : pt.blockList()) {
+                int closedRepLocal = -1;
+                for (int b = block.low; b < block.high && closedRepLocal < 0; b++) {
+                    if (pt.blockData[b] >= numRemaining) {
+                        closedRepLocal = pt.blockData[b];
+                    }
+                }
+                if (closedRepLocal < 0) {
+                    continue;
+                }
+                final int closedRep = toGlobal[closedRepLocal];
+                for (int b = block.low; b < block.high; b++) {
+                    final int local = pt.blockData[b];
+                    // the initial state stays in the DFA
+                    if (local < numRemaining && (closedRep >= 0 || toGlobal[local] != abs.getIntInitialState())) {
+                        mergeClosed(out, abs, toGlobal[local], closedRep, preds.get(toGlobal[local]),
+                            finishedStates, stateBuffer, registry);
+                        updated = true;
+                    }
+                }
+            }
+        }
+        // Keys depend on successors, so only add the unmerged states once all merges are done
+        for (int q : remaining) {
+            if (finishedStates.get(q)) {
+                closedStates.set(q);
+                closedSignatures.putIfAbsent(q + 1, q);
+            }
+        }
+        return updated;
+    }
+
+    /**
+     * Merges the newly closed state q into the equivalent closed state equiv.
+     */
+    private static <I> void mergeClosed(
+        CompactDFA<I> out, FullIntAbstraction<?, Boolean, Void> abs, int q, int equiv, IntArrayList qPreds,
+        BitSet finishedStates, IntArrayList stateBuffer, Registry registry) {
+        final int numInputs = out.numInputs();
+        if (qPreds != null) {
+            for (int p : qPreds) {
+                for (int j = 0; j < numInputs; j++) {
+                    if (out.getSuccessor(p, j) == q) {
+                        out.setTransition(p, j, equiv);
+                    }
+                }
+            }
+        }
+        for (int j = 0; j < numInputs; j++) {
+            out.setTransition(q, j, q); // dead state
+        }
+        if (abs.getIntInitialState() == q) {
+            abs.setInitialState(equiv);
+        }
+        stateBuffer.push(q);
+        finishedStates.clear(q);
+        final BitSet secondary = new BitSet();
+        secondary.set(q);
+        registry.unify(equiv, secondary);
+    }
+
+    private boolean successorsClosed(CompactDFA<?> out, int q, int numInputs) {
+        for (int j = 0; j < numInputs; j++) {
+            final int t = out.getSuccessor(q, j);
+            if (t != q && t >= 0 && !closedStates.get(t)) { // streamed states are closed
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * States of pt that can reach one of seeds, including seeds.
+     */
+    private static BitSet backwardClosure(Hopcroft pt, BitSet seeds) {
+        final BitSet reached = (BitSet) seeds.clone();
+        final IntArrayList worklist = new IntArrayList();
+        for (int q = seeds.nextSetBit(0); q >= 0; q = seeds.nextSetBit(q + 1)) {
+            worklist.add(q);
+        }
+        while (!worklist.isEmpty()) {
+            final int q = worklist.popInt();
+            int ofs = pt.predOfsDataLow + q;
+            for (int j = 0; j < pt.numInputs; j++) {
+                for (int idx = pt.predOfsData[ofs]; idx < pt.predOfsData[ofs + 1]; idx++) {
+                    final int pred = pt.predData[idx];
+                    if (!reached.get(pred)) {
+                        reached.set(pred);
+                        worklist.add(pred);
+                    }
+                }
+                ofs += pt.numStates;
+            }
+        }
+        return reached;
+    }
+
+    /**
+     * Successor of q on input j, or SELF_LOOP if that is q itself.
+     */
+    private static int loopOrSuccessor(CompactDFA<?> out, int q, int j) {
+        final int succ = out.getSuccessor(q, j);
+        return succ == q ? SELF_LOOP : succ;
+    }
+
+    /**
+     * Map from closed states to themselves, keyed by (acceptance, successors), where self-loops are compared as such.
+     * Closed states aren't changed by incremental passes, so their keys are stable.
+     */
+    private static Int2IntOpenCustomHashMap newSignatureMap(CompactDFA<?> out) {
+        final int numInputs = out.numInputs();
+        final Int2IntOpenCustomHashMap map = new Int2IntOpenCustomHashMap(new IntHash.Strategy() {
+            @Override
+            public int hashCode(int key) {
+                final int q = key - 1;
+                int h = out.isAccepting(q) ? 1 : 0;
+                for (int j = 0; j < numInputs; j++) {
+                    h = 31 * h + loopOrSuccessor(out, q, j);
+                }
+                return h;
+            }
+
+            @Override
+            public boolean equals(int a, int b) {
+                if (a == 0 || b == 0) {
+                    return a == b;
+                }
+                final int p = a - 1;
+                final int q = b - 1;
+                if (out.isAccepting(p) != out.isAccepting(q)) {
+                    return false;
+                }
+                for (int j = 0; j < numInputs; j++) {
+                    if (loopOrSuccessor(out, p, j) != loopOrSuccessor(out, q, j)) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+        });
+        map.defaultReturnValue(Registry.MISSING_ELEMENT);
+        return map;
+    }
+
+    /**
+     * Stream the closed states out of the DFA after each full pass (StreamingOutput.evict).
+     * Full passes then refine all finished states as a region, with streamed states as fixed singleton blocks,
+     * and newly closed states are also matched against the streamed states.
+     */
+    void setStream(StreamingOutput stream) {
+        this.stream = stream;
+    }
+
+    public int getPasses() {
+        return passes;
+    }
+
+    public int getFullPasses() {
+        return fullPasses;
+    }
+
+    public boolean isLastPassFull() {
+        return lastPassFull;
+    }
+
+    /**
+     * Number of blocks re-split by the last pass, i.e., blocks after refinement minus blocks initially.
+     */
+    public int getLastSplits() {
+        return lastSplits;
+    }
+
+    public long getTotalSplits() {
+        return totalSplits;
+    }
+
+    /**
+     * Bytes allocated by the last pass (on the calling thread), or -1 if the JVM can't measure it.
+     */
+    public long getLastPassAllocatedBytes() {
+        return lastPassAllocatedBytes;
+    }
+
+    /**
+     * Bytes allocated for the reusable partition refinement arrays over the whole run.
+     */
+    public long getArenaBytes() {
+        return arena.getBytesAllocated();
+    }
+
+    /**
+     * Bytes allocated so far by the current thread, or -1 if the JVM can't measure it.
+     */
+    private static long allocatedBytes() {
+        if (ManagementFactory.getThreadMXBean() instanceof ThreadMXBean threads
+            && threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled()) {
+            return threads.getCurrentThreadAllocatedBytes();
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,72 @@
+package OTF.Model;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.Consumer;
+
+/**
+ * Frontier ordered by metastate cardinality, as a bucket queue: one LIFO bucket per cardinality,
+ * plus a cursor at the bucket to pop from next. Push and pop are amortized O(1), and cardinalities
+ * are computed once per push rather than per comparison.
+ */
+final class CardinalityFrontier implements Frontier {
+    private final boolean smallestFirst;
+    private final List<ArrayDeque<DeterminizeRecord<BitSet>>> buckets = new ArrayList<>();
+    private int size = 0;
+    private int cursor = 0; // no non-empty bucket lies before the cursor in pop order
+
+    CardinalityFrontier(boolean smallestFirst) {
+        this.smallestFirst = smallestFirst;
+    }
+
+    @Override
+    public void push(DeterminizeRecord<BitSet> record) {
+        final int card = record.inputState().cardinality();
+        while (buckets.size() <= card) {
+            buckets.add(new ArrayDeque<>());
+        }
+        buckets.get(card).push(record);
+        if (size == 0 || (smallestFirst ? card < cursor : card > cursor)) {
+            cursor = card;
+        }
+        size++;
+    }
+
+    @Override
+    public DeterminizeRecord<BitSet> pop() {
+        if (size == 0) {
+            throw new NoSuchElementException();
+        }
+        while (buckets.get(cursor).isEmpty()) {
+            cursor += smallestFirst ? 1 : -1;
+        }
+        size--;
+        return buckets.get(cursor).pop();
+    }
+
+    @Override
+    public void forEach(Consumer<DeterminizeRecord<BitSet>> action) {
+        final int numBuckets = buckets.size();
+        for (int i = 0; i < numBuckets; i++) {
+            buckets.get(smallestFirst ? i : numBuckets - 1 - i).forEach(action);
+        }
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public String getName() {
+        return smallestFirst ? "smallest" : "largest";
+    }
+}
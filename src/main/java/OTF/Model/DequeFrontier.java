@@ -0,0 +1,182 @@
+package OTF.Model;
+
+import java.util.BitSet;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.Consumer;
+
+/**
+ * Frontier backed by a deque: LIFO for depth-first, FIFO for breadth-first exploration.
+ * <p>
+ * Entries are stored as a struct of arrays rather than as records: output addresses and word counts in int rings,
+ * and the metastate words back to back in a long ring. Pushing a BitSet and popping into a BitSet buffer
+ * allocate nothing once the rings have grown to the peak frontier size.
+ */
+final class DequeFrontier implements Frontier {
+    private static final int INITIAL_ENTRIES = 16;
+    private static final int INITIAL_WORDS = 64;
+
+    private final String name;
+    private final boolean lifo;
+
+    // Entry i (0 is the oldest) is at (head + i) & (addresses.length - 1); its words follow those of entry i - 1
+    private int[] addresses = new int[INITIAL_ENTRIES];
+    private int[] lengths = new int[INITIAL_ENTRIES];
+    private int head = 0;
+    private int size = 0;
+    // Words of entry 0 start at wordHead; capacities are powers of 2
+    private long[] words = new long[INITIAL_WORDS];
+    private int wordHead = 0;
+    private int wordCount = 0;
+
+    DequeFrontier(String name, boolean lifo) {
+        this.name = name;
+        this.lifo = lifo;
+    }
+
+    @Override
+    public void push(DeterminizeRecord<BitSet> record) {
+        add(record.inputState(), record.outputAddress());
+    }
+
+    @Override
+    public void push(BitSet parent, int symbol, BitSet succ, int outputAddress) {
+        add(succ, outputAddress);
+    }
+
+    /**
+     * Append a copy of state as the newest entry.
+     */
+    private void add(BitSet state, int outputAddress) {
+        final int numWords = (state.length() + Long.SIZE - 1) / Long.SIZE;
+        if (size == addresses.length) {
+            growEntries();
+        }
+        while (wordCount + numWords > words.length) {
+            growWords();
+        }
+        final int wordMask = words.length - 1;
+        final int start = wordHead + wordCount;
+        for (int w = 0; w < numWords; w++) {
+            words[(start + w) & wordMask] = 0L;
+        }
+        for (int i = state.nextSetBit(0); i >= 0; i = state.nextSetBit(i + 1)) {
+            words[(start + (i >>> 6)) & wordMask] |= 1L << i;
+        }
+        final int entry = (head + size) & (addresses.length - 1);
+        addresses[entry] = outputAddress;
+        lengths[entry] = numWords;
+        size++;
+        wordCount += numWords;
+    }
+
+    @Override
+    public void pushAll(List<DeterminizeRecord<BitSet>> inPopOrder) {
+        if (lifo) {
+            Frontier.super.pushAll(inPopOrder);
+        } else {
+            inPopOrder.forEach(this::push);
+        }
+    }
+
+    @Override
+    public DeterminizeRecord<BitSet> pop() {
+        final BitSet state = new BitSet();
+        final int outputAddress = pop(state);
+        return new DeterminizeRecord<>(state, outputAddress);
+    }
+
+    @Override
+    public int pop(BitSet into) {
+        if (size == 0) {
+            throw new NoSuchElementException();
+        }
+        final int mask = addresses.length - 1;
+        final int entry;
+        final int start;
+        if (lifo) {
+            entry = (head + size - 1) & mask;
+            start = wordHead + wordCount - lengths[entry];
+        } else {
+            entry = head;
+            start = wordHead;
+            head = (head + 1) & mask;
+            wordHead = (wordHead + lengths[entry]) & (words.length - 1);
+        }
+        size--;
+        wordCount -= lengths[entry];
+        read(start, lengths[entry], into);
+        return addresses[entry];
+    }
+
+    /**
+     * Set into to the numWords words starting at start.
+     */
+    private void read(int start, int numWords, BitSet into) {
+        final int wordMask = words.length - 1;
+        into.clear();
+        for (int w = 0; w < numWords; w++) {
+            long word = words[(start + w) & wordMask];
+            while (word != 0) {
+                into.set(w * Long.SIZE + Long.numberOfTrailingZeros(word));
+                word &= word - 1;
+            }
+        }
+    }
+
+    @Override
+    public void forEach(Consumer<DeterminizeRecord<BitSet>> action) {
+        final int mask = addresses.length - 1;
+        int start = lifo ? wordHead + wordCount : wordHead;
+        for (int i = 0; i < size; i++) {
+            final int entry = lifo ? (head + size - 1 - i) & mask : (head + i) & mask;
+            if (lifo) {
+                start -= lengths[entry];
+            }
+            final BitSet state = new BitSet();
+            read(start, lengths[entry], state);
+            if (!lifo) {
+                start += lengths[entry];
+            }
+            action.accept(new DeterminizeRecord<>(state, addresses[entry]));
+        }
+    }
+
+    private void growEntries() {
+        final int[] newAddresses = new int[addresses.length * 2];
+        final int[] newLengths = new int[addresses.length * 2];
+        final int mask = addresses.length - 1;
+        for (int i = 0; i < size; i++) {
+            newAddresses[i] = addresses[(head + i) & mask];
+            newLengths[i] = lengths[(head + i) & mask];
+        }
+        addresses = newAddresses;
+        lengths = newLengths;
+        head = 0;
+    }
+
+    private void growWords() {
+        final long[] newWords = new long[words.length * 2];
+        final int mask = words.length - 1;
+        for (int w = 0; w < wordCount; w++) {
+            newWords[w] = words[(wordHead + w) & mask];
+        }
+        words = newWords;
+        wordHead = 0;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+}
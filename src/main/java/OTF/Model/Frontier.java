@@ -0,0 +1,148 @@
+package OTF.Model;
+
+import java.nio.file.Path;
+import java.util.BitSet;
+import java.util.List;
+import java.util.function.Consumer;
+
+import net.automatalib.alphabet.Alphabet;
+import net.automatalib.ts.AcceptorPowersetViewTS;
+
+/**
+ * Frontier of metastates still to be explored by the OTF loop.
+ * The order in which metastates are popped decides how early equivalent states can be collapsed,
+ * and so the peak intermediate DFA size.
+ */
+public interface Frontier extends AutoCloseable {
+    void push(DeterminizeRecord<BitSet> record);
+
+    /**
+     * Push the successor of parent on the symbol with the given index.
+     * The OTF loop reuses parent and succ as buffers, so the frontier must copy what it keeps.
+     * Consecutive pushes with the same parent instance, and no pop in between, have the same parent metastate.
+     * @param parent - parent metastate
+     * @param symbol - input symbol index
+     * @param succ - successor metastate
+     * @param outputAddress - DFA state of the successor
+     */
+    default void push(BitSet parent, int symbol, BitSet succ, int outputAddress) {
+        push(new DeterminizeRecord<>((BitSet) succ.clone(), outputAddress));
+    }
+
+    /**
+     * Push entries so that they are popped in the given order, e.g., the order forEach visited them in.
+     * Used to restore checkpoints. By default, pushes in reverse, as for last-in, first-out frontiers.
+     */
+    default void pushAll(List<DeterminizeRecord<BitSet>> inPopOrder) {
+        for (int i = inPopOrder.size() - 1; i >= 0; i--) {
+            push(inPopOrder.get(i));
+        }
+    }
+
+    DeterminizeRecord<BitSet> pop();
+
+    /**
+     * Pop the next entry into the given metastate buffer, which is cleared first.
+     * Frontiers that don't store records can do this without allocating.
+     * @return DFA state of the entry
+     */
+    default int pop(BitSet into) {
+        final DeterminizeRecord<BitSet> record = pop();
+        into.clear();
+        into.or(record.inputState());
+        return record.outputAddress();
+    }
+
+    boolean isEmpty();
+
+    /**
+     * Visit all entries, in the order they would be popped, without removing them. Used for checkpoints.
+     */
+    void forEach(Consumer<DeterminizeRecord<BitSet>> action);
+
+    int size();
+
+    String getName();
+
+    /**
+     * Number of entries held on the heap; less than size() if the frontier keeps entries elsewhere.
+     */
+    default int heapSize() {
+        return size();
+    }
+
+    /**
+     * Releases resources held outside the heap, e.g., spill files.
+     */
+    @Override
+    default void close() {}
+
+    /**
+     * Estimated heap bytes held by the frontier, given the estimated bytes of one metastate.
+     */
+    default long heapBytes(long metastateBytes) {
+        return heapSize() * metastateBytes;
+    }
+
+    /**
+     * dfs(): last in, first out. The original OTF order.
+     */
+    static Frontier dfs() {
+        return new DequeFrontier("dfs", true);
+    }
+
+    /**
+     * bfs(): first in, first out.
+     */
+    static Frontier bfs() {
+        return new DequeFrontier("bfs", false);
+    }
+
+    /**
+     * smallestFirst(): metastates with the fewest NFA states first; ties are popped LIFO.
+     */
+    static Frontier smallestFirst() {
+        return new CardinalityFrontier(true);
+    }
+
+    /**
+     * largestFirst(): metastates with the most NFA states first; ties are popped LIFO.
+     */
+    static Frontier largestFirst() {
+        return new CardinalityFrontier(false);
+    }
+
+    /**
+     * recomputing(nfa, inputs, depthFirst): low-memory DFS or BFS order that stores (parent, symbol) per entry
+     * and recomputes the successor metastate when it is popped.
+     * @param nfa - powerset view the OTF loop explores
+     * @param inputs - input symbols, indexed like in the OTF loop
+     * @param depthFirst - LIFO if true, FIFO otherwise
+     */
+    static <I> Frontier recomputing(AcceptorPowersetViewTS<BitSet, I, ?> nfa, Alphabet<I> inputs, boolean depthFirst) {
+        return new RecomputingFrontier<>(nfa, inputs, depthFirst);
+    }
+
+    /**
+     * spilling(maxInHeap, directory): depth-first order that keeps at most maxInHeap entries on the heap,
+     * spilling older ones to a memory-mapped file in directory. Close the frontier to delete the file.
+     * @param maxInHeap - in-heap entries before spilling, at least 2
+     * @param directory - directory for the spill file
+     */
+    static Frontier spilling(int maxInHeap, Path directory) {
+        return new SpillingFrontier(maxInHeap, directory);
+    }
+
+    /**
+     * Frontier by name: dfs, bfs, smallest, or largest.
+     */
+    static Frontier of(String name) {
+        return switch (name.toLowerCase()) {
+            case "dfs" -> dfs();
+            case "bfs" -> bfs();
+            case "smallest" -> smallestFirst();
+            case "largest" -> largestFirst();
+            default -> throw new IllegalArgumentException("Unknown frontier order: " + name);
+        };
+    }
+}
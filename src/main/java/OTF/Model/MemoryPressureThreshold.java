@@ -0,0 +1,126 @@
+package OTF.Model;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.LongSupplier;
+
+import net.automatalib.automaton.concept.FiniteRepresentation;
+
+/**
+ * Threshold driven by memory pressure, i.e., how close the run is to running out of heap.
+ * Pressure is the larger of
+ *   heap occupancy after the last GC, and
+ *   the estimated footprint of the registry plus the exploration frontier,
+ * both relative to the maximum heap.
+ * Below LOW_PRESSURE, the cadence backs off (doubling per sample) up to steps * MAX_BACKOFF;
+ * above HIGH_PRESSURE, it is steps / MAX_BACKOFF; in between it is interpolated geometrically.
+ * Increases in pressure take effect immediately.
+ */
+final class MemoryPressureThreshold implements Threshold {
+    static final double LOW_PRESSURE = 0.5;
+    static final double HIGH_PRESSURE = 0.85;
+    static final int MAX_BACKOFF = 8;
+    private static final int SAMPLE_PERIOD = 64; // calls between samples; sampling queries the heap pools
+
+    private final int steps;
+    private final long maxHeap;
+    private final List<MemoryPoolMXBean> heapPools = new ArrayList<>();
+
+    private LongSupplier frontierBytes = () -> 0;
+    private LongSupplier registryBytes = () -> -1;
+
+    private int crossings = 0;
+    private int step = 0; // steps since last trigger
+    private long calls = 0;
+    private int cadence; // current steps between triggers
+    private double pressure = 0;
+
+    MemoryPressureThreshold(int steps, long maxHeap) {
+        this.steps = steps;
+        this.maxHeap = maxHeap;
+        this.cadence = steps;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                heapPools.add(pool);
+            }
+        }
+    }
+
+    @Override
+    public void attach(LongSupplier frontierBytes, LongSupplier registryBytes) {
+        this.frontierBytes = frontierBytes;
+        this.registryBytes = registryBytes;
+    }
+
+    @Override
+    public boolean test(FiniteRepresentation finiteRepresentation) {
+        if (++calls % SAMPLE_PERIOD == 0) {
+            pressure = samplePressure();
+            final int target = targetCadence(pressure);
+            cadence = target <= cadence ? target : (int) Math.min(target, 2L * cadence);
+        }
+        step++;
+        if (step > cadence) {
+            step = 0;
+            crossings++;
+            return true;
+        }
+        return false;
+    }
+
+    private double samplePressure() {
+        long heapAfterGC = 0;
+        for (MemoryPoolMXBean pool : heapPools) {
+            final MemoryUsage usage = pool.getCollectionUsage();
+            if (usage != null) {
+                heapAfterGC += usage.getUsed();
+            }
+        }
+        long footprint = frontierBytes.getAsLong();
+        final long registry = registryBytes.getAsLong();
+        if (registry > 0) {
+            footprint += registry;
+        }
+        return (double) Math.max(heapAfterGC, footprint) / maxHeap;
+    }
+
+    /**
+     * Cadence for the given pressure: steps * MAX_BACKOFF at LOW_PRESSURE, steps at the midpoint,
+     * steps / MAX_BACKOFF at HIGH_PRESSURE (but at least 1).
+     */
+    int targetCadence(double pressure) {
+        final double position = Math.min(1, Math.max(0, (pressure - LOW_PRESSURE) / (HIGH_PRESSURE - LOW_PRESSURE)));
+        final double factor = Math.pow(MAX_BACKOFF, 1 - 2 * position);
+        return (int) Math.max(1, Math.min(Integer.MAX_VALUE, Math.round(steps * factor)));
+    }
+
+    /**
+     * Pressure at the last sample, relative to the maximum heap.
+     */
+    double getPressure() {
+        return pressure;
+    }
+
+    int getCadence() {
+        return cadence;
+    }
+
+    @Override
+    public String getName() {
+        return "memory";
+    }
+
+    @Override
+    public String getParam() {
+        return String.valueOf(steps);
+    }
+
+    @Override
+    public int getCrossings() {
+        return crossings;
+    }
+}
@@ -0,0 +1,196 @@
+package OTF.Model;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+import net.automatalib.alphabet.Alphabet;
+import net.automatalib.automaton.fsa.impl.CompactNFA;
+import net.automatalib.ts.AcceptorPowersetViewTS;
+
+/**
+ * Precomputed powerset view of a CompactNFA, used in the OTF hot loop.
+ * The generic CompactNFA powerset view walks each set bit and unions the Set&lt;Integer&gt; transitions.
+ * Here, transitions are flattened once:
+ *   dense: one successor BitSet per (symbol, state), so a successor is a word-wide OR per set bit;
+ *   sparse (CSR): one int range per (symbol, state), used when dense rows would take too much memory.
+ * Rows are stored state-major, so successors for all symbols can be computed in one pass over a metastate.
+ * Acceptance is a single intersects() against the accepting-states mask.
+ * This is a snapshot: later changes to the NFA are not reflected.
+ * Thread-safe, since all fields are read-only after construction.
+ */
+public final class PowersetKernel<I> implements AcceptorPowersetViewTS<BitSet, I, Integer> {
+    // Upper bound on the dense representation (bytes); above this we fall back to CSR
+    private static final long MAX_DENSE_BYTES = 1L << 27;
+
+    private final Alphabet<I> alphabet;
+    private final int numStates;
+    private final int numInputs;
+    private final BitSet initialState;
+    private final BitSet acceptingMask;
+
+    // dense representation: denseSuccs[state * numInputs + symbol], null if there are no transitions
+    private final BitSet[] denseSuccs;
+
+    // sparse representation: targets of (symbol, state) are csrTargets[csrOffsets[idx]..csrOffsets[idx + 1]]
+    private final int[] csrOffsets;
+    private final int[] csrTargets;
+
+    public PowersetKernel(CompactNFA<I> nfa) {
+        this(nfa, MAX_DENSE_BYTES);
+    }
+
+    PowersetKernel(CompactNFA<I> nfa, long maxDenseBytes) {
+        this.alphabet = nfa.getInputAlphabet();
+        this.numStates = nfa.size();
+        this.numInputs = alphabet.size();
+
+        this.initialState = new BitSet(numStates);
+        for (int q : nfa.getInitialStates()) {
+            this.initialState.set(q);
+        }
+        this.acceptingMask = new BitSet(numStates);
+        for (int q = 0; q < numStates; q++) {
+            if (nfa.isAccepting(q)) {
+                this.acceptingMask.set(q);
+            }
+        }
+
+        final int rows = numInputs * numStates;
+        final long wordsPerRow = (numStates + 63) / 64;
+        if ((long) rows * wordsPerRow * Long.BYTES <= maxDenseBytes) {
+            this.denseSuccs = new BitSet[rows];
+            this.csrOffsets = null;
+            this.csrTargets = null;
+            for (int q = 0; q < numStates; q++) {
+                for (int j = 0; j < numInputs; j++) {
+                    final Set<Integer> targets = nfa.getTransitions(q, j);
+                    if (!targets.isEmpty()) {
+                        final BitSet row = new BitSet(numStates);
+                        for (int t : targets) {
+                            row.set(t);
+                        }
+                        this.denseSuccs[q * numInputs + j] = row;
+                    }
+                }
+            }
+        } else {
+            this.denseSuccs = null;
+            this.csrOffsets = new int[rows + 1];
+            for (int q = 0; q < numStates; q++) {
+                for (int j = 0; j < numInputs; j++) {
+                    final int idx = q * numInputs + j;
+                    this.csrOffsets[idx + 1] = this.csrOffsets[idx] + nfa.getTransitions(q, j).size();
+                }
+            }
+            this.csrTargets = new int[this.csrOffsets[rows]];
+            int pos = 0;
+            for (int q = 0; q < numStates; q++) {
+                for (int j = 0; j < numInputs; j++) {
+                    for (int t : nfa.getTransitions(q, j)) {
+                        this.csrTargets[pos++] = t;
+                    }
+                }
+            }
+        }
+    }
+
+    public boolean isDense() {
+        return this.denseSuccs != null;
+    }
+
+    public int numStates() {
+        return this.numStates;
+    }
+
+    /**
+     * Successor metastate of state on the symbol with the given index.
+     */
+    public BitSet successor(BitSet state, int symbolIdx) {
+        final BitSet result = new BitSet(numStates);
+        if (denseSuccs != null) {
+            for (int q = state.nextSetBit(0); q >= 0; q = state.nextSetBit(q + 1)) {
+                final BitSet row = denseSuccs[q * numInputs + symbolIdx];
+                if (row != null) {
+                    result.or(row);
+                }
+            }
+        } else {
+            for (int q = state.nextSetBit(0); q >= 0; q = state.nextSetBit(q + 1)) {
+                final int idx = q * numInputs + symbolIdx;
+                for (int t = csrOffsets[idx]; t < csrOffsets[idx + 1]; t++) {
+                    result.set(csrTargets[t]);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Successor metastates of state for all symbols, from a single pass over the bits of state.
+     * succs[j] receives the successor on the symbol with index j; its previous contents are cleared,
+     * so the same buffers can be reused for every metastate.
+     */
+    public void successors(BitSet state, BitSet[] succs) {
+        for (int j = 0; j < numInputs; j++) {
+            succs[j].clear();
+        }
+        if (denseSuccs != null) {
+            for (int q = state.nextSetBit(0); q >= 0; q = state.nextSetBit(q + 1)) {
+                int idx = q * numInputs;
+                for (int j = 0; j < numInputs; j++, idx++) {
+                    final BitSet row = denseSuccs[idx];
+                    if (row != null) {
+                        succs[j].or(row);
+                    }
+                }
+            }
+        } else {
+            for (int q = state.nextSetBit(0); q >= 0; q = state.nextSetBit(q + 1)) {
+                int idx = q * numInputs;
+                for (int j = 0; j < numInputs; j++, idx++) {
+                    final BitSet succ = succs[j];
+                    for (int t = csrOffsets[idx]; t < csrOffsets[idx + 1]; t++) {
+                        succ.set(csrTargets[t]);
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public BitSet getSuccessor(BitSet state, I input) {
+        return successor(state, alphabet.getSymbolIndex(input));
+    }
+
+    @Override
+    public BitSet getTransition(BitSet state, I input) {
+        return successor(state, alphabet.getSymbolIndex(input));
+    }
+
+    @Override
+    public boolean isAccepting(BitSet state) {
+        return state.intersects(acceptingMask);
+    }
+
+    @Override
+    public BitSet getInitialState() {
+        return (BitSet) initialState.clone();
+    }
+
+    @Override
+    public Collection<Integer> getOriginalStates(BitSet state) {
+        final List<Integer> result = new ArrayList<>(state.cardinality());
+        for (int q = state.nextSetBit(0); q >= 0; q = state.nextSetBit(q + 1)) {
+            result.add(q);
+        }
+        return result;
+    }
+
+    @Override
+    public Collection<Integer> getOriginalTransitions(BitSet transition) {
+        return getOriginalStates(transition);
+    }
+}
@@ -0,0 +1,134 @@
+package OTF.Model;
+
+import java.util.ArrayDeque;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.List;
+import java.util.function.Consumer;
+
+import net.automatalib.alphabet.Alphabet;
+import net.automatalib.ts.AcceptorPowersetViewTS;
+
+/**
+ * Low-memory frontier: instead of the successor metastate, each entry keeps its parent metastate and the input
+ * symbol, and the successor is recomputed when the entry is popped.
+ * The parent BitSet is copied once and shared by all its pending children, so a metastate with k new successors
+ * costs one BitSet rather than k. Parents are only pinned while one of their children is pending; in depth-first
+ * order these are the metastates along the current exploration path, in breadth-first order those of a whole level.
+ * The pinned parents are counted, so heapBytes() includes them.
+ */
+final class RecomputingFrontier<I> implements Frontier {
+    private record Pending(Parent parent, int symbol, int outputAddress) {}
+
+    private static final class Parent {
+        private final BitSet metastate;
+        private int pending = 0; // children on the frontier
+
+        private Parent(BitSet metastate) {
+            this.metastate = metastate;
+        }
+    }
+
+    private static final long PENDING_BYTES = 32; // Pending record plus deque slot; parents are counted apart
+
+    private final AcceptorPowersetViewTS<BitSet, I, ?> nfa;
+    private final Alphabet<I> inputs;
+    private final boolean lifo;
+    private final Deque<Object> deque = new ArrayDeque<>(); // Pending, or DeterminizeRecord for roots
+    private BitSet lastParent; // parent instance of the last push since the last pop, and its copy
+    private Parent lastParentCopy;
+    private int pinnedParents = 0; // parents with pending children
+
+    RecomputingFrontier(AcceptorPowersetViewTS<BitSet, I, ?> nfa, Alphabet<I> inputs, boolean lifo) {
+        this.nfa = nfa;
+        this.inputs = inputs;
+        this.lifo = lifo;
+    }
+
+    @Override
+    public void push(DeterminizeRecord<BitSet> record) {
+        add(record);
+    }
+
+    @Override
+    public void push(BitSet parent, int symbol, BitSet succ, int outputAddress) {
+        if (parent != lastParent) {
+            lastParent = parent;
+            lastParentCopy = new Parent((BitSet) parent.clone());
+            pinnedParents++;
+        }
+        lastParentCopy.pending++;
+        add(new Pending(lastParentCopy, symbol, outputAddress));
+    }
+
+    private void add(Object entry) {
+        if (lifo) {
+            deque.push(entry);
+        } else {
+            deque.addLast(entry);
+        }
+    }
+
+    @Override
+    public void pushAll(List<DeterminizeRecord<BitSet>> inPopOrder) {
+        if (lifo) {
+            Frontier.super.pushAll(inPopOrder);
+        } else {
+            inPopOrder.forEach(this::push);
+        }
+    }
+
+    @Override
+    public DeterminizeRecord<BitSet> pop() {
+        lastParent = null; // the caller may reuse the parent instance for the next metastate
+        lastParentCopy = null;
+        final Object entry = deque.pop();
+        if (entry instanceof Pending pending && --pending.parent().pending == 0) {
+            pinnedParents--;
+        }
+        return materialize(entry);
+    }
+
+    @Override
+    public void forEach(Consumer<DeterminizeRecord<BitSet>> action) {
+        for (Object entry : deque) {
+            action.accept(materialize(entry));
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private DeterminizeRecord<BitSet> materialize(Object entry) {
+        if (entry instanceof Pending pending) {
+            final BitSet succ = nfa.getSuccessor(pending.parent().metastate, inputs.getSymbol(pending.symbol()));
+            return new DeterminizeRecord<>(succ, pending.outputAddress());
+        }
+        return (DeterminizeRecord<BitSet>) entry;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return deque.isEmpty();
+    }
+
+    @Override
+    public int size() {
+        return deque.size();
+    }
+
+    @Override
+    public long heapBytes(long metastateBytes) {
+        return deque.size() * PENDING_BYTES + pinnedParents * metastateBytes;
+    }
+
+    /**
+     * Parents with pending children, i.e., pinned by the frontier.
+     */
+    int getPinnedParents() {
+        return pinnedParents;
+    }
+
+    @Override
+    public String getName() {
+        return lifo ? "dfs-recompute" : "bfs-recompute";
+    }
+}
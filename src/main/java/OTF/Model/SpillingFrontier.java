@@ -0,0 +1,301 @@
+package OTF.Model;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Depth-first frontier that keeps at most maxInHeap records on the heap.
+ * When that is exceeded, the oldest half of the in-heap records (the ones popped last) is appended to a
+ * memory-mapped spill file; when the in-heap portion drains, the most recently spilled records are paged back in.
+ * The spill file is thus a stack as well, and is only ever accessed at its end.
+ * <p>
+ * Records are stored as the metastate words, followed by a trailer (word count, output address), so they can be
+ * read back from the end. The file is mapped in segments of at least segmentBytes; drained segments are dropped
+ * and their file range is reused by the next spill. The file is deleted on close.
+ * <p>
+ * Java can't unmap a MappedByteBuffer explicitly: a mapping (its address space, and on some platforms the file
+ * handle) is only released when the buffer is garbage collected. So only the top MAPPED_SEGMENTS segments keep
+ * their mappings, plus the last drained one, kept as a spare for the next spill at the same place; the mappings of
+ * other segments are dropped, and segments are re-mapped when paging in reaches them. Dropped mappings, and the
+ * ones still held at close, are released by GC.
+ */
+final class SpillingFrontier implements Frontier {
+    static final long SEGMENT_BYTES = 64L << 20;
+    private static final int TRAILER_BYTES = 2 * Integer.BYTES;
+
+    static final int MAPPED_SEGMENTS = 2; // top segments that keep their mappings
+
+    /**
+     * File range [start, start + capacity), of which position bytes are used. buffer is null while unmapped.
+     */
+    private static final class Segment {
+        final long start;
+        final long capacity;
+        int position = 0;
+        MappedByteBuffer buffer;
+
+        Segment(long start, long capacity) {
+            this.start = start;
+            this.capacity = capacity;
+        }
+    }
+
+    private final int maxInHeap;
+    private final long segmentBytes;
+    private final ArrayDeque<DeterminizeRecord<BitSet>> heap = new ArrayDeque<>(); // head is the top of the stack
+    private final List<Segment> segments = new ArrayList<>(); // last is the top of the spill stack
+    private Segment spare = null; // last drained segment, still mapped
+    private final Path file;
+    private final FileChannel channel;
+
+    private int spilled = 0; // records currently on disk
+    private long spilledTotal = 0; // records written to disk over the run
+    private long peakFileBytes = 0;
+
+    SpillingFrontier(int maxInHeap, Path directory) {
+        this(maxInHeap, directory, SEGMENT_BYTES);
+    }
+
+    SpillingFrontier(int maxInHeap, Path directory, long segmentBytes) {
+        if (maxInHeap < 2) {
+            throw new IllegalArgumentException("In-heap frontier size must be at least 2: " + maxInHeap);
+        }
+        this.maxInHeap = maxInHeap;
+        this.segmentBytes = segmentBytes;
+        try {
+            this.file = Files.createTempFile(directory, "otf-frontier", ".spill");
+            this.channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                StandardOpenOption.DELETE_ON_CLOSE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not create frontier spill file in " + directory, e);
+        }
+    }
+
+    @Override
+    public void push(DeterminizeRecord<BitSet> record) {
+        heap.push(record);
+        if (heap.size() > maxInHeap) {
+            spill(maxInHeap / 2);
+        }
+    }
+
+    @Override
+    public DeterminizeRecord<BitSet> pop() {
+        if (heap.isEmpty() && spilled > 0) {
+            pageIn(maxInHeap / 2);
+        }
+        return heap.pop();
+    }
+
+    /**
+     * Move the count oldest in-heap records to the end of the spill file, oldest first.
+     */
+    private void spill(int count) {
+        for (int i = 0; i < count; i++) {
+            final DeterminizeRecord<BitSet> record = heap.removeLast();
+            final long[] words = record.inputState().toLongArray();
+            final int bytes = words.length * Long.BYTES + TRAILER_BYTES;
+            final Segment segment = segmentFor(bytes);
+            final MappedByteBuffer buffer = segment.buffer;
+            int pos = segment.position;
+            for (long word : words) {
+                buffer.putLong(pos, word);
+                pos += Long.BYTES;
+            }
+            buffer.putInt(pos, words.length);
+            buffer.putInt(pos + Integer.BYTES, record.outputAddress());
+            segment.position = pos + TRAILER_BYTES;
+        }
+        spilled += count;
+        spilledTotal += count;
+    }
+
+    /**
+     * Move up to count of the most recently spilled records back to the heap, keeping stack order.
+     */
+    private void pageIn(int count) {
+        while (count > 0 && spilled > 0) {
+            final Segment top = segments.get(segments.size() - 1);
+            if (top.position == 0) {
+                segments.remove(segments.size() - 1);
+                spare = top; // the previous spare's mapping is dropped
+                continue;
+            }
+            final DeterminizeRecord<BitSet> record = readBefore(mapped(top), top.position);
+            top.position -= recordBytes(record);
+            heap.addLast(record);
+            spilled--;
+            count--;
+        }
+    }
+
+    @Override
+    public void forEach(Consumer<DeterminizeRecord<BitSet>> action) {
+        heap.forEach(action);
+        for (int s = segments.size() - 1; s >= 0; s--) {
+            final Segment segment = segments.get(s);
+            final ByteBuffer buffer = segment.buffer != null ? segment.buffer : read(segment);
+            for (int pos = segment.position; pos > 0; ) {
+                final DeterminizeRecord<BitSet> record = readBefore(buffer, pos);
+                pos -= recordBytes(record);
+                action.accept(record);
+            }
+        }
+    }
+
+    /**
+     * Read the record that ends at pos.
+     */
+    private static DeterminizeRecord<BitSet> readBefore(ByteBuffer buffer, int pos) {
+        final int numWords = buffer.getInt(pos - TRAILER_BYTES);
+        final int address = buffer.getInt(pos - Integer.BYTES);
+        final int start = pos - TRAILER_BYTES - numWords * Long.BYTES;
+        final long[] words = new long[numWords];
+        for (int w = 0; w < numWords; w++) {
+            words[w] = buffer.getLong(start + w * Long.BYTES);
+        }
+        return new DeterminizeRecord<>(BitSet.valueOf(words), address);
+    }
+
+    /**
+     * Spilled size of a record; BitSet.valueOf and toLongArray agree on the (trimmed) word count.
+     */
+    private static int recordBytes(DeterminizeRecord<BitSet> record) {
+        return TRAILER_BYTES + ((record.inputState().length() + Long.SIZE - 1) / Long.SIZE) * Long.BYTES;
+    }
+
+    /**
+     * Mapped segment with room for bytes more: the top, or a new one at its end (the spare, if it's there).
+     * Only the top MAPPED_SEGMENTS segments stay mapped.
+     */
+    private Segment segmentFor(int bytes) {
+        Segment top = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+        if (top != null && top.capacity - top.position >= bytes) {
+            mapped(top);
+            return top;
+        }
+        final long start = top == null ? 0 : top.start + top.capacity;
+        if (spare != null && spare.start == start && spare.capacity >= bytes) {
+            top = spare;
+        } else {
+            top = new Segment(start, Math.max(segmentBytes, bytes));
+            mapped(top);
+            peakFileBytes = Math.max(peakFileBytes, start + top.capacity);
+        }
+        spare = null;
+        segments.add(top);
+        if (segments.size() > MAPPED_SEGMENTS) {
+            segments.get(segments.size() - 1 - MAPPED_SEGMENTS).buffer = null; // unmapped by GC
+        }
+        return top;
+    }
+
+    /**
+     * The segment's buffer, mapping it again if its mapping was dropped.
+     */
+    private MappedByteBuffer mapped(Segment segment) {
+        if (segment.buffer == null) {
+            try {
+                segment.buffer = channel.map(FileChannel.MapMode.READ_WRITE, segment.start, segment.capacity);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not map frontier spill file " + file, e);
+            }
+        }
+        return segment.buffer;
+    }
+
+    /**
+     * The used part of an unmapped segment, read into the heap rather than mapped, so that visiting the
+     * frontier (e.g., for a checkpoint) leaves no mappings behind.
+     */
+    private ByteBuffer read(Segment segment) {
+        final ByteBuffer buffer = ByteBuffer.allocate(segment.position);
+        try {
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, segment.start + buffer.position()) < 0) {
+                    throw new IOException("Unexpected end of file");
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read frontier spill file " + file, e);
+        }
+        return buffer;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return heap.isEmpty() && spilled == 0;
+    }
+
+    @Override
+    public int size() {
+        return heap.size() + spilled;
+    }
+
+    @Override
+    public int heapSize() {
+        return heap.size();
+    }
+
+    /**
+     * Records written to the spill file over the run.
+     */
+    long getSpilledTotal() {
+        return spilledTotal;
+    }
+
+    /**
+     * Records currently in the spill file.
+     */
+    int getSpilled() {
+        return spilled;
+    }
+
+    /**
+     * Segments whose mappings are held, i.e., not left to GC; at most MAPPED_SEGMENTS + 1.
+     */
+    int getMappedSegments() {
+        int mapped = spare == null ? 0 : 1;
+        for (Segment segment : segments) {
+            if (segment.buffer != null) {
+                mapped++;
+            }
+        }
+        return mapped;
+    }
+
+    /**
+     * Largest extent of the spill file so far.
+     */
+    long getPeakFileBytes() {
+        return peakFileBytes;
+    }
+
+    @Override
+    public String getName() {
+        return "dfs-spill";
+    }
+
+    @Override
+    public void close() {
+        // the mappings are released by GC, and only then is the deleted file's space freed
+        segments.clear();
+        spare = null;
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not close frontier spill file " + file, e);
+        }
+    }
+}
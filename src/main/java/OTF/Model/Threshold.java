@@ -1,5 +1,6 @@
 package OTF.Model;
 
+import java.util.function.LongSupplier;
 import java.util.function.Predicate;
 
 import net.automatalib.automaton.concept.FiniteRepresentation;
@@ -18,6 +19,21 @@ public interface Threshold extends Predicate<FiniteRepresentation> {
 
     default void update(int outSize) {}
 
+    /**
+     * Called by the OTF loop after each minimization pass, for thresholds that learn from pass outcomes.
+     * @param sizeBefore - live DFA states before the pass
+     * @param sizeAfter - live DFA states after the pass
+     * @param nanos - time spent in partition refinement and registry compression
+     */
+    default void recordPass(int sizeBefore, int sizeAfter, long nanos) {}
+
+    /**
+     * Called by the OTF loop before exploration starts, for thresholds that watch the run's memory use.
+     * @param frontierBytes - estimated heap footprint of the exploration frontier in bytes
+     * @param registryBytes - estimated registry footprint in bytes, negative if unknown
+     */
+    default void attach(LongSupplier frontierBytes, LongSupplier registryBytes) {}
+
     /**
      * adaptiveSteps(steps)
      * cadence adapts with workload; grows with larger updates, shrinks with smaller ones,
@@ -147,6 +163,24 @@ public interface Threshold extends Predicate<FiniteRepresentation> {
         };
     }
 
+    /**
+     * memoryPressure(steps): cadence driven by memory pressure (heap after GC, registry and stack footprint).
+     * Minimizes more often as pressure rises, and backs off when there is headroom.
+     * @param steps - cadence at moderate pressure
+     */
+    static Threshold memoryPressure(int steps) {
+        return new MemoryPressureThreshold(steps, Runtime.getRuntime().maxMemory());
+    }
+
+    /**
+     * yieldPredictive(steps): cadence tuned online to maximize states removed per second of minimization.
+     * The returned threshold keeps its decision history.
+     * @param steps - initial cadence
+     */
+    static YieldThreshold yieldPredictive(int steps) {
+        return new YieldThreshold(steps);
+    }
+
     static Threshold noop() {
         return new Threshold() {
             @Override
@@ -0,0 +1,118 @@
+package OTF.Model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import net.automatalib.automaton.concept.FiniteRepresentation;
+
+/**
+ * Threshold that tunes its cadence online to maximize minimization yield: states removed per second spent
+ * minimizing (partition refinement plus registry compression).
+ * After each pass the cadence moves by STEP_FACTOR in the current direction; if the yield dropped
+ * compared to the previous pass, the direction is reversed (hill climbing).
+ * Each decision is kept for post-run analysis, see {@link #getHistory()}.
+ */
+public final class YieldThreshold implements Threshold {
+    static final double STEP_FACTOR = 1.5;
+    static final int MAX_RANGE = 64; // cadence stays within [steps / MAX_RANGE, steps * MAX_RANGE]
+
+    /**
+     * One minimization pass and the cadence chosen after it.
+     * @param crossing - 1-based crossing number
+     * @param interval - steps explored before this pass
+     * @param sizeBefore - live DFA states before the pass
+     * @param sizeAfter - live DFA states after the pass
+     * @param nanos - time spent in the pass
+     * @param nextInterval - steps to explore before the next pass
+     */
+    public record Decision(int crossing, int interval, int sizeBefore, int sizeAfter, long nanos, int nextInterval) {
+        /**
+         * Fraction of states removed by the pass.
+         */
+        public double reductionRatio() {
+            return sizeBefore == 0 ? 0 : (double) (sizeBefore - sizeAfter) / sizeBefore;
+        }
+
+        /**
+         * States removed per second of minimization.
+         */
+        public double yield() {
+            return (sizeBefore - sizeAfter) * 1e9 / Math.max(1, nanos);
+        }
+    }
+
+    private final int steps;
+    private final int minInterval;
+    private final int maxInterval;
+    private final List<Decision> history = new ArrayList<>();
+
+    private int crossings = 0;
+    private int step = 0; // steps since last trigger
+    private int interval; // current steps between triggers
+    private int direction = 1; // +1 grows the interval, -1 shrinks it
+    private double lastYield = -1; // negative until the first pass
+
+    YieldThreshold(int steps) {
+        this.steps = steps;
+        this.minInterval = Math.max(1, steps / MAX_RANGE);
+        this.maxInterval = (int) Math.min(Integer.MAX_VALUE, (long) steps * MAX_RANGE);
+        this.interval = steps;
+    }
+
+    @Override
+    public boolean test(FiniteRepresentation finiteRepresentation) {
+        step++;
+        if (step > interval) {
+            step = 0;
+            crossings++;
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public void recordPass(int sizeBefore, int sizeAfter, long nanos) {
+        final int used = interval;
+        final double yield = (sizeBefore - sizeAfter) * 1e9 / Math.max(1, nanos);
+        if (lastYield >= 0 && yield < lastYield) {
+            direction = -direction;
+        }
+        lastYield = yield;
+        final double next = direction > 0 ? used * STEP_FACTOR : used / STEP_FACTOR;
+        interval = (int) Math.max(minInterval, Math.min(maxInterval, Math.round(next)));
+        if (interval == used) { // pinned at a bound; head back into range next time
+            direction = -direction;
+        }
+        history.add(new Decision(crossings, used, sizeBefore, sizeAfter, nanos, interval));
+    }
+
+    /**
+     * Passes recorded so far, in order.
+     */
+    public List<Decision> getHistory() {
+        return Collections.unmodifiableList(history);
+    }
+
+    /**
+     * Current steps between triggers.
+     */
+    public int getInterval() {
+        return interval;
+    }
+
+    @Override
+    public String getName() {
+        return "yield";
+    }
+
+    @Override
+    public String getParam() {
+        return String.valueOf(steps);
+    }
+
+    @Override
+    public int getCrossings() {
+        return crossings;
+    }
+}
@@ -1,6 +1,9 @@
 package OTF;
 
+import OTF.Model.PowersetKernel;
+import OTF.Model.Frontier;
 import OTF.Model.Threshold;
+import OTF.Model.YieldThreshold;
 import OTF.Registry.AntichainForestRegistry;
 import OTF.Registry.Registry;
 import OTF.Simulation.ParallelSimulation;
@@ -17,12 +20,24 @@ import net.automatalib.util.automaton.minimizer.HopcroftMinimizer;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.BitSet;
 import java.util.List;
 
 public class OTFCommandLine {
+  private static int workers = 1; // worker threads for OTF exploration
+  private static int parallelFind = 0; // minimum candidate ACs for a parallel AC search in lookups; 0 never
+  private static String thresholdName = "adaptive"; // threshold strategy for CCL/CCLS
+  private static String orderName = "dfs"; // exploration order for CCL/CCLS
+  private static int spillAfter = 0; // in-heap frontier entries before spilling to disk; 0 never spills
+  private static String checkpointFile = null; // CCL/CCLS checkpoint file; null for no checkpoints
+  private static int checkpointSeconds = 600; // minimum time between checkpoints
+  private static boolean resume = false; // resume CCL/CCLS from checkpointFile if it exists
+  private static String streamFile = null; // CCL/CCLS stream file for finished states; null for no streaming
+  private static final List<String> ORDERS = List.of("dfs", "bfs", "smallest", "largest", "dfs-recompute", "bfs-recompute");
+
   public static void main(String[] args) {
     String filename = null;
     List<String> positional = new ArrayList<>(2);
@@ -38,6 +53,65 @@ public class OTFCommandLine {
           printUsageAndExit(); // exits
         }
         filename = args[++i]; // consume the value
+      } else if ("--workers".equalsIgnoreCase(arg)) {
+        if (i + 1 >= args.length || args[i + 1].startsWith("-")) {
+          System.err.println("Missing value for --workers");
+          printUsageAndExit(); // exits
+        }
+        workers = parsePositiveInt(args[++i], "--workers");
+      } else if ("--parallel-find".equalsIgnoreCase(arg)) {
+        if (i + 1 >= args.length || args[i + 1].startsWith("-")) {
+          System.err.println("Missing value for --parallel-find");
+          printUsageAndExit(); // exits
+        }
+        parallelFind = parsePositiveInt(args[++i], "--parallel-find");
+      } else if ("--threshold".equalsIgnoreCase(arg)) {
+        if (i + 1 >= args.length || args[i + 1].startsWith("-")) {
+          System.err.println("Missing value for --threshold");
+          printUsageAndExit(); // exits
+        }
+        thresholdName = args[++i].toLowerCase();
+        if (!thresholdName.equals("adaptive") && !thresholdName.equals("memory")
+            && !thresholdName.equals("yield")) {
+          System.err.println("Invalid value for --threshold: " + thresholdName);
+          printUsageAndExit(); // exits
+        }
+      } else if ("--order".equalsIgnoreCase(arg)) {
+        if (i + 1 >= args.length || args[i + 1].startsWith("-")) {
+          System.err.println("Missing value for --order");
+          printUsageAndExit(); // exits
+        }
+        orderName = args[++i].toLowerCase();
+        if (!ORDERS.contains(orderName)) {
+          System.err.println("Invalid value for --order: " + orderName);
+          printUsageAndExit(); // exits
+        }
+      } else if ("--spill".equalsIgnoreCase(arg)) {
+        if (i + 1 >= args.length || args[i + 1].startsWith("-")) {
+          System.err.println("Missing value for --spill");
+          printUsageAndExit(); // exits
+        }
+        spillAfter = parsePositiveInt(args[++i], "--spill");
+      } else if ("--checkpoint".equalsIgnoreCase(arg)) {
+        if (i + 1 >= args.length || args[i + 1].startsWith("-")) {
+          System.err.println("Missing value for --checkpoint");
+          printUsageAndExit(); // exits
+        }
+        checkpointFile = args[++i];
+      } else if ("--checkpoint-every".equalsIgnoreCase(arg)) {
+        if (i + 1 >= args.length || args[i + 1].startsWith("-")) {
+          System.err.println("Missing value for --checkpoint-every");
+          printUsageAndExit(); // exits
+        }
+        checkpointSeconds = parsePositiveInt(args[++i], "--checkpoint-every");
+      } else if ("--resume".equalsIgnoreCase(arg)) {
+        resume = true;
+      } else if ("--stream".equalsIgnoreCase(arg)) {
+        if (i + 1 >= args.length || args[i + 1].startsWith("-")) {
+          System.err.println("Missing value for --stream");
+          printUsageAndExit(); // exits
+        }
+        streamFile = args[++i];
       } else if (arg.startsWith("-")) {
         // Unknown flag
         printUsageAndExit();
@@ -50,14 +124,43 @@ public class OTFCommandLine {
     if (!validInvocation) {
       printUsageAndExit();
     }
+    if (resume && checkpointFile == null) {
+      System.err.println("--resume requires --checkpoint");
+      printUsageAndExit(); // exits
+    }
+    if (spillAfter > 0 && !orderName.equals("dfs")) {
+      System.err.println("--spill requires --order dfs");
+      printUsageAndExit(); // exits
+    }
 
     String algorithm = positional.get(0);
     String filePath  = positional.get(1);
+    final String lowerAlgorithm = algorithm.toLowerCase();
+    final boolean ccl = lowerAlgorithm.equals("ccl") || lowerAlgorithm.equals("ccls");
+    if (checkpointFile != null && !ccl) {
+      System.err.println("--checkpoint and --resume require CCL or CCLS");
+      printUsageAndExit(); // exits
+    }
+    if (streamFile != null) {
+      if (filename == null || !ccl) {
+        System.err.println("--stream requires --writeBA and CCL or CCLS");
+        printUsageAndExit(); // exits
+      }
+      if (checkpointFile != null) {
+        System.err.println("--stream can't be combined with --checkpoint");
+        printUsageAndExit(); // exits
+      }
+    }
 
     final CompactNFA<Integer> origNFA = BAFormat.getBAFile(filePath);
     System.out.println("Original NFA size: " + origNFA.size());
     System.out.println("Alphabet size:" + origNFA.getInputAlphabet().size());
 
+    if (streamFile != null) {
+      streamCCL(algorithm, lowerAlgorithm.equals("ccls"), origNFA, filename);
+      return;
+    }
+
     long before = System.currentTimeMillis();
     CompactDFA<Integer> returnedDFA = allAlgorithms(algorithm, origNFA);
     long after = System.currentTimeMillis();
@@ -69,11 +172,41 @@ public class OTFCommandLine {
     }
   }
 
+  private static int parsePositiveInt(String value, String flag) {
+    try {
+      int parsed = Integer.parseInt(value);
+      if (parsed > 0) {
+        return parsed;
+      }
+    } catch (NumberFormatException ignored) {
+      // fall through to usage
+    }
+    System.err.println("Invalid value for " + flag + ": " + value);
+    printUsageAndExit(); // exits
+    return -1;
+  }
+
   private static void printUsageAndExit() {
     System.out.println(
-        "OTF [--debug] [--writeBA <BA output file>] <algorithm> <BA input file>");
+        "OTF [--debug] [--writeBA <BA output file>] [--workers <n>] [--parallel-find <n>] [--threshold <adaptive|memory|yield>]"
+        + " [--order <order>] [--spill <n>] [--checkpoint <file> [--checkpoint-every <s>] [--resume]] [--stream <file>] <algorithm> <BA input file>");
     System.out.println("[--debug] : Additional debug/progress output");
     System.out.println("[--writeBA <BA output file> : Write DFA to specified output file");
+    System.out.println("[--workers <n>] : Worker threads for CCL/CCLS exploration (default 1)");
+    System.out.println("[--parallel-find <n>] : Search the candidate ACs of a CCL/CCLS lookup on several threads"
+        + " when there are at least n (default: never)");
+    System.out.println("[--threshold <adaptive|memory|yield>] : When CCL/CCLS minimize; memory follows heap pressure,"
+        + " yield tunes for states removed per second (default adaptive)");
+    System.out.println("[--order <order>] : CCL/CCLS exploration order, one of " + String.join("|", ORDERS)
+        + "; smallest/largest pop metastates by cardinality, *-recompute keep (parent, symbol) per entry"
+        + " to save memory (default dfs)");
+    System.out.println("[--spill <n>] : Keep at most n CCL/CCLS frontier entries on the heap, spilling older ones"
+        + " to a memory-mapped file in java.io.tmpdir (dfs order only)");
+    System.out.println("[--checkpoint <file>] : Write CCL/CCLS checkpoints to file after minimization passes");
+    System.out.println("[--checkpoint-every <s>] : Minimum seconds between checkpoints (default 600)");
+    System.out.println("[--resume] : Resume CCL/CCLS from the checkpoint file if it exists");
+    System.out.println("[--stream <file>] : Stream closed CCL/CCLS states to file during the run, evicting them from"
+        + " memory, then minimize from it into the --writeBA file (not with --checkpoint)");
     System.out.println();
     System.out.println("<algorithm> : one of the choices below:");
     System.out.println("  CCL: OTF's Convexity Closure Lattice algorithm.");
@@ -117,6 +250,36 @@ public class OTFCommandLine {
     };
   }
 
+  /**
+   * Frontier chosen by --order.
+   */
+  private static Frontier newFrontier(PowersetKernel<Integer> kernel, Alphabet<Integer> alphabet) {
+    if (spillAfter > 0) {
+      return Frontier.spilling(Math.max(2, spillAfter), Paths.get(System.getProperty("java.io.tmpdir")));
+    }
+    return switch (orderName) {
+      case "dfs-recompute" -> Frontier.recomputing(kernel, alphabet, true);
+      case "bfs-recompute" -> Frontier.recomputing(kernel, alphabet, false);
+      default -> Frontier.of(orderName);
+    };
+  }
+
+  /**
+   * Threshold chosen by --threshold.
+   */
+  private static Threshold newThreshold() {
+    return switch (thresholdName) {
+      case "memory" -> Threshold.memoryPressure(Threshold.DEFAULT_THRESHOLD_SIZE);
+      case "yield" -> Threshold.yieldPredictive(Threshold.DEFAULT_THRESHOLD_SIZE);
+      default -> Threshold.adaptiveSteps(Threshold.DEFAULT_THRESHOLD_SIZE);
+    };
+  }
+
+  /**
+   * Output of an OTF-CCL(S) run, with the input symbols of the reduced NFA.
+   */
+  private record OTFResult(DFA<?, Integer> dfa, Alphabet<Integer> alphabet) {}
+
     /**
      * OTF-CCL or OTF-CCLS, with trim and bisim.
      * @param nfa - original NFA
@@ -124,24 +287,74 @@ public class OTFCommandLine {
      * @return minimized DFA
      */
   public static CompactDFA<Integer> CCL(CompactNFA<Integer> nfa, boolean simulate) {
-    final Threshold threshold = Threshold.adaptiveSteps(Threshold.DEFAULT_THRESHOLD_SIZE);
+    final OTFResult result = runCCL(nfa, simulate, null);
+    return HopcroftMinimizer.minimizeDFA(result.dfa(), result.alphabet());
+  }
+
+  /**
+   * OTF-CCL or OTF-CCLS, streaming finished states to --stream, then minimizing from there into baFile.
+   * The DFA of the run is dropped before the final pass.
+   * @param simulate - whether to simulate, i.e., OTF-CCLS
+   */
+  private static void streamCCL(String algorithm, boolean simulate, CompactNFA<Integer> nfa, String baFile) {
+    System.out.println();
+    System.out.println("Invoking algorithm:" + algorithm + " (streaming to " + streamFile + ")");
+    long before = System.currentTimeMillis();
+    final int size;
+    try (StreamingOutput stream = new StreamingOutput(Paths.get(streamFile))) {
+      final Alphabet<Integer> alphabet = runCCL(nfa, simulate, stream).alphabet();
+      System.out.println("Streamed states: " + stream.getRecords() + " (" + stream.getStreamedDuringRun()
+          + " during the run)");
+      System.out.println("Writing to file: " + baFile);
+      size = stream.writeMinimalBA(alphabet, Paths.get(baFile));
+    }
+    long after = System.currentTimeMillis();
+    System.out.println(algorithm + " minimized DFA size: " + size);
+    System.out.println(algorithm + " duration: " + ((after - before) / 1000f) + "s");
+  }
+
+  private static OTFResult runCCL(CompactNFA<Integer> nfa, boolean simulate, StreamingOutput stream) {
+    final Threshold threshold = newThreshold();
 
     nfa = trimAndBisim(nfa);
     final Alphabet<Integer> alphabet = nfa.getInputAlphabet();
 
     ArrayList<BitSet> simRels = new ArrayList<>();
     nfa = generateSimRels(simulate, nfa, simRels);
+    final BitSet[] simRelsArr = simRels.toArray(new BitSet[0]);
 
-    Registry registry = new AntichainForestRegistry<>(nfa, simRels.toArray(new BitSet[0]));
+    // with several workers, registry lookups run on the worker threads
+    AntichainForestRegistry<Integer> registry = new AntichainForestRegistry<>(nfa, simRelsArr, workers > 1);
     simRels.clear(); // GC
-
-    final DFA<?, Integer> otfDFA = OTFDeterminization.doOTF(nfa.powersetView(), alphabet, threshold, registry);
-    final CompactDFA<Integer> minimizedDFA = HopcroftMinimizer.minimizeDFA(otfDFA, alphabet);
+    registry.acf.setParallelFindThreshold(parallelFind);
+
+    final PowersetKernel<Integer> kernel = new PowersetKernel<>(nfa);
+    final DFA<?, Integer> otfDFA;
+    final Checkpoint checkpoint = checkpointFile == null ? null
+        : new Checkpoint(Paths.get(checkpointFile), checkpointSeconds * 1000L, resume,
+            Checkpoint.fingerprint(nfa, simRelsArr, simulate ? "CCLS" : "CCL"));
+    if (checkpoint != null && checkpoint.canResume()) {
+      System.out.println("Resuming from checkpoint " + checkpointFile);
+    }
+    try (Frontier frontier = newFrontier(kernel, alphabet)) {
+      otfDFA = OTFDeterminization.doOTF(kernel, alphabet, threshold, registry, workers, frontier, checkpoint,
+          stream);
+    }
 
     System.out.println("CCL max intermediate count: " + registry.getMaxIntermediateCount());
+    if (parallelFind > 0) {
+      System.out.println("CCL parallel AC searches: " + registry.acf.parallelFinds);
+    }
     System.out.println("CCL threshold crossings: " + threshold.getCrossings());
+    if (OTFDeterminization.DEBUG && threshold instanceof YieldThreshold yieldThreshold) {
+      for (YieldThreshold.Decision d : yieldThreshold.getHistory()) {
+        System.out.println("DEBUG: Yield pass " + d.crossing() + ": interval " + d.interval()
+            + ", " + d.sizeBefore() + " -> " + d.sizeAfter() + " states in " + (d.nanos() / 1000000) + "ms"
+            + ", yield " + Math.round(d.yield()) + " states/s, next interval " + d.nextInterval());
+      }
+    }
 
-    return minimizedDFA;
+    return new OTFResult(otfDFA, alphabet);
   }
 
   /**
@@ -220,7 +433,7 @@ public class OTFCommandLine {
       nfa = generateSimRels(true, nfa, simRels);
       Registry registry = new AntichainForestRegistry<>(nfa, simRels.toArray(new BitSet[0]));
       simRels.clear(); // GC
-      final DFA<?, Integer> otfDFA = OTFDeterminization.doOTF(nfa.powersetView(), alphabet, Threshold.noop(), registry);
+      final DFA<?, Integer> otfDFA = OTFDeterminization.doOTF(new PowersetKernel<>(nfa), alphabet, Threshold.noop(), registry);
       System.out.println(powersetOutput + otfDFA.size());
       dfa = HopcroftMinimizer.minimizeDFA(otfDFA, alphabet);
     } else {
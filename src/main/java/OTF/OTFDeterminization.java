@@ -1,9 +1,11 @@
 package OTF;
 
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
 
 import OTF.Model.*;
 import OTF.Registry.Registry;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
 import net.automatalib.alphabet.Alphabet;
 import net.automatalib.automaton.MutableDeterministic.FullIntAbstraction;
 import net.automatalib.automaton.fsa.DFA;
@@ -15,6 +17,9 @@ import net.automatalib.util.partitionrefinement.Hopcroft;
 public class OTFDeterminization {
     public static boolean DEBUG = false;
     private static final long STATES_EXPLORED_PERIOD = 10000L;
+    private static final int BATCH_PER_WORKER = 16; // metastates popped per worker per parallel round
+    private static final long METASTATE_OVERHEAD_BYTES = 72; // DeterminizeRecord, BitSet, and array headers
+
     /**
      * Main OTF loop (Algorithm 1).
      * @param nfa - Original NFA
@@ -26,65 +31,340 @@ public class OTFDeterminization {
      */
     public static <I> DFA<Integer, I> doOTF(
         AcceptorPowersetViewTS<BitSet, I, ?> nfa, Alphabet<I> inputs, Threshold threshold, Registry registry) {
+        return doOTF(nfa, inputs, threshold, registry, 1);
+    }
 
-        Deque<DeterminizeRecord<BitSet>> stack = new ArrayDeque<>();
+    /**
+     * Main OTF loop (Algorithm 1), optionally expanding metastates on several worker threads.
+     * @param nfa - Original NFA
+     * @param inputs - Input symbols
+     * @param threshold - Threshold strategy for interrupts
+     * @param registry - Registry, e.g., OTF-CCL
+     * @param workers - Number of worker threads. 1 is the sequential algorithm.
+     * @return - (Partially) minimized DFA; output of Algorithm 1.
+     * @param <I> - Input symbol type, e.g., Integer
+     */
+    public static <I> DFA<Integer, I> doOTF(
+        AcceptorPowersetViewTS<BitSet, I, ?> nfa, Alphabet<I> inputs, Threshold threshold, Registry registry,
+        int workers) {
+        return doOTF(nfa, inputs, threshold, registry, workers, Frontier.dfs());
+    }
 
-        // Add union of initial states to DFA and to stack
-        BitSet init = nfa.getInitialState();
-        boolean initAcc = nfa.isAccepting(init);
-        CompactDFA<I> out = new CompactDFA<>(inputs);
-        int initOut = out.addInitialState(initAcc);
+    /**
+     * Main OTF loop (Algorithm 1), with a given exploration order.
+     * @param nfa - Original NFA
+     * @param inputs - Input symbols
+     * @param threshold - Threshold strategy for interrupts
+     * @param registry - Registry, e.g., OTF-CCL
+     * @param workers - Number of worker threads. 1 is the sequential algorithm.
+     * @param frontier - Empty frontier; decides the order metastates are explored in. DFS is the original order.
+     * @return - (Partially) minimized DFA; output of Algorithm 1.
+     * @param <I> - Input symbol type, e.g., Integer
+     */
+    public static <I> DFA<Integer, I> doOTF(
+        AcceptorPowersetViewTS<BitSet, I, ?> nfa, Alphabet<I> inputs, Threshold threshold, Registry registry,
+        int workers, Frontier frontier) {
+        return doOTF(nfa, inputs, threshold, registry, workers, frontier, null);
+    }
+
+    /**
+     * Main OTF loop (Algorithm 1), with checkpoints.
+     * If the checkpoint file exists and resuming is enabled, the run continues from it instead of the initial state;
+     * the registry and frontier must then be new. Checkpoints of another run (see Checkpoint.fingerprint) are rejected.
+     * @param nfa - Original NFA
+     * @param inputs - Input symbols
+     * @param threshold - Threshold strategy for interrupts
+     * @param registry - Registry, e.g., OTF-CCL
+     * @param workers - Number of worker threads. 1 is the sequential algorithm.
+     * @param frontier - Empty frontier; decides the order metastates are explored in. DFS is the original order.
+     * @param checkpoint - Where and how often to write checkpoints after minimization passes; null for none.
+     *                     The registry must support checkpoints (Registry.supportsCheckpoint()).
+     * @return - (Partially) minimized DFA; output of Algorithm 1.
+     * @param <I> - Input symbol type, e.g., Integer
+     */
+    public static <I> DFA<Integer, I> doOTF(
+        AcceptorPowersetViewTS<BitSet, I, ?> nfa, Alphabet<I> inputs, Threshold threshold, Registry registry,
+        int workers, Frontier frontier, Checkpoint checkpoint) {
+        return doOTF(nfa, inputs, threshold, registry, workers, frontier, checkpoint, null);
+    }
 
-        registry.put(init, initOut);
+    /**
+     * Main OTF loop (Algorithm 1), streaming finished states to a file as the run proceeds.
+     * After each full minimization pass, the closed states are streamed and evicted from the DFA, so the DFA
+     * mostly holds states whose languages can still change; the rest are streamed at the end.
+     * Use StreamingOutput.writeMinimalBA for the minimal DFA.
+     * The registry must support renaming states (Registry.supportsRename()).
+     * Checkpoints aren't supported while streaming, since the stream file isn't part of the checkpoint.
+     * @param nfa - Original NFA
+     * @param inputs - Input symbols
+     * @param threshold - Threshold strategy for interrupts
+     * @param registry - Registry, e.g., OTF-CCL
+     * @param workers - Number of worker threads. 1 is the sequential algorithm.
+     * @param frontier - Empty frontier; decides the order metastates are explored in. DFS is the original order.
+     * @param checkpoint - Where and how often to write checkpoints after minimization passes; null for none.
+     * @param stream - Where to stream finished states; null for none.
+     * @return - (Partially) minimized DFA; output of Algorithm 1. null if streaming.
+     * @param <I> - Input symbol type, e.g., Integer
+     */
+    public static <I> DFA<Integer, I> doOTF(
+        AcceptorPowersetViewTS<BitSet, I, ?> nfa, Alphabet<I> inputs, Threshold threshold, Registry registry,
+        int workers, Frontier frontier, Checkpoint checkpoint, StreamingOutput stream) {
+        if (workers < 1) {
+            throw new IllegalArgumentException("Worker count must be positive: " + workers);
+        }
+        if (!frontier.isEmpty()) {
+            throw new IllegalArgumentException("Frontier must be empty");
+        }
+        if (checkpoint != null && !registry.supportsCheckpoint()) {
+            throw new IllegalArgumentException(registry + " registry doesn't support checkpoints");
+        }
+        if (stream != null && checkpoint != null) {
+            throw new IllegalArgumentException("Checkpoints aren't supported while streaming");
+        }
+        if (stream != null && !registry.supportsRename()) {
+            throw new IllegalArgumentException(registry + " registry doesn't support streaming");
+        }
 
-        stack.push(new DeterminizeRecord<>(init, initOut));
+        BitSet init = nfa.getInitialState();
         BitSet finishedStates = new BitSet();
-        Deque<Integer> stateBuffer = new ArrayDeque<>();
+        IntArrayList stateBuffer = new IntArrayList(); // free state IDs, as a stack
+        CompactDFA<I> out;
+        if (checkpoint != null && checkpoint.canResume()) {
+            out = checkpoint.restore(inputs, finishedStates, stateBuffer, frontier, registry);
+        } else {
+            // Add union of initial states to DFA and to frontier
+            boolean initAcc = nfa.isAccepting(init);
+            out = new CompactDFA<>(inputs);
+            int initOut = out.addInitialState(initAcc);
+
+            registry.put(init, initOut);
+
+            frontier.push(new DeterminizeRecord<>(init, initOut));
+        }
+        final long metastateBytes = metastateBytes(init);
+        threshold.attach(() -> frontier.heapBytes(metastateBytes), registry::estimatedBytes);
+
+        if (workers > 1) {
+            doParallelOTF(nfa, inputs, threshold, registry, workers, frontier, out, finishedStates, stateBuffer,
+                checkpoint, stream);
+        } else {
+            doSequentialOTF(nfa, inputs, threshold, registry, frontier, out, finishedStates, stateBuffer,
+                checkpoint, stream);
+        }
+        if (stream != null) {
+            stream.finish(out, finishedStates);
+            return null; // transitions to streamed states are references into the stream file
+        }
+        return out;
+    }
+
+    /**
+     * Sequential main loop, from the given frontier and partial DFA.
+     */
+    private static <I> void doSequentialOTF(
+        AcceptorPowersetViewTS<BitSet, I, ?> nfa, Alphabet<I> inputs, Threshold threshold, Registry registry,
+        Frontier frontier, CompactDFA<I> out, BitSet finishedStates, IntArrayList stateBuffer,
+        Checkpoint checkpoint, StreamingOutput stream) {
+        final int numInputs = inputs.size();
+        final BitSet[] succs = newSuccessorBuffers(numInputs);
+        final BitSet inState = new BitSet(); // reused, like succs; the frontier and registry copy what they keep
+        IncrementalMinimizer minimizer = new IncrementalMinimizer();
+        minimizer.setStream(stream);
 
         long statesExplored = 0;
-        while (!stack.isEmpty()) {
-            DeterminizeRecord<BitSet> curr = stack.pop();
-            BitSet inState = curr.inputState();
-            int outState = curr.outputAddress();
+        while (!frontier.isEmpty()) {
+            int outState = frontier.pop(inState);
             boolean complete = true;
-            for (I i : inputs) {
-                BitSet succ = nfa.getSuccessor(inState, i);
-                int outSucc = registry.get(succ);
-                if (outSucc == Registry.MISSING_ELEMENT) {
+            successors(nfa, inputs, inState, succs);
+            for (int j = 0; j < numInputs; j++) {
+                BitSet succ = succs[j];
+                final int newState = nextStateID(out, stateBuffer);
+                int outSucc = registry.getOrPut(succ, newState);
+                if (outSucc == newState) {
                     complete = false;
-                    final boolean succAcc = nfa.isAccepting(succ);
-                    // add new state to DFA and to stack
-                    if (stateBuffer.isEmpty()) {
-                        outSucc = out.addState(succAcc);
-                    } else {
-                        outSucc = stateBuffer.pop();
-                        out.setAccepting(outSucc, succAcc);
-                    }
-                    registry.put(succ, outSucc);
-                    stack.push(new DeterminizeRecord<>(succ, outSucc));
+                    // add new state to DFA and to frontier
+                    addState(out, stateBuffer, nfa.isAccepting(succ));
+                    frontier.push(inState, j, succ, outSucc);
                 }
-                out.setTransition(outState, inputs.getSymbolIndex(i), outSucc);
+                out.setTransition(outState, j, outSucc);
             }
             statesExplored++;
 
             finishedStates.set(outState);
 
             if (complete && threshold.test(out)) {
-                final int oldStatesSoFar = DEBUG ? (out.size() - stateBuffer.size()) : 0;
-                otfMinimization(inputs, out, finishedStates, stateBuffer, registry);
-                final int statesSoFar = out.size() - stateBuffer.size();
-                threshold.update(statesSoFar);
-                if (DEBUG) {
-                    System.out.println("DEBUG: Periodic minimization: " + oldStatesSoFar + " -> " + statesSoFar + " states added");
+                periodicMinimization(inputs, out, finishedStates, stateBuffer, registry, threshold, minimizer);
+                if (checkpoint != null) {
+                    checkpoint.afterMinimization(out, finishedStates, stateBuffer, frontier, registry);
                 }
             }
             if (DEBUG && statesExplored % STATES_EXPLORED_PERIOD == 0) {
                 System.out.println("DEBUG: Explored " + statesExplored + " states - "
-                + stack.size() + " states left in queue - " + (out.size() - stateBuffer.size()) + " states added");
+                + frontier.size() + " states left in queue - " + (out.size() - stateBuffer.size()) + " states added");
             }
         }
+    }
+
+    /**
+     * Parallel variant of the main OTF loop.
+     * Each round pops a batch of metastates, which are expanded by the workers (successors, acceptance, and
+     * registry lookups if the registry supports concurrent reads). The coordinating thread then adds the
+     * new states to the DFA and registry in batch order.
+     * A periodic minimization triggered during a round runs after the round, when all workers are idle
+     * (stop-the-world), so registry lookups done by the workers never see merged states.
+     * The result is language-equivalent to the sequential loop, though exploration order differs.
+     */
+    private static <I> void doParallelOTF(
+        AcceptorPowersetViewTS<BitSet, I, ?> nfa, Alphabet<I> inputs, Threshold threshold, Registry registry,
+        int workers, Frontier frontier, CompactDFA<I> out, BitSet finishedStates, IntArrayList stateBuffer,
+        Checkpoint checkpoint, StreamingOutput stream) {
+        final int numInputs = inputs.size();
+        final int batchCapacity = workers * BATCH_PER_WORKER;
+        final BitSet[] inStates = new BitSet[batchCapacity]; // popped metastates, reused across rounds
+        final int[] outStates = new int[batchCapacity];
+        final BitSet[][] succs = new BitSet[batchCapacity][];
+        for (int r = 0; r < batchCapacity; r++) {
+            inStates[r] = new BitSet();
+            succs[r] = newSuccessorBuffers(numInputs);
+        }
+        final boolean[][] succAccs = new boolean[batchCapacity][numInputs];
+        final int[][] outSuccs = new int[batchCapacity][numInputs];
+        final Registry concurrentRegistry = registry.supportsConcurrentGet() ? registry : null;
+        IncrementalMinimizer minimizer = new IncrementalMinimizer();
+        minimizer.setStream(stream);
 
-        return out;
+        final ForkJoinPool pool = new ForkJoinPool(workers);
+        try {
+            long statesExplored = 0;
+            while (!frontier.isEmpty()) {
+                int batchSize = 0;
+                while (batchSize < batchCapacity && !frontier.isEmpty()) {
+                    outStates[batchSize] = frontier.pop(inStates[batchSize]);
+                    batchSize++;
+                }
+                pool.invoke(new ExpandTask<>(
+                    0, batchSize, inStates, nfa, inputs, concurrentRegistry, succs, succAccs, outSuccs));
+
+                boolean minimize = false;
+                for (int r = 0; r < batchSize; r++) {
+                    final int outState = outStates[r];
+                    final BitSet[] recordSuccs = succs[r];
+                    boolean complete = true;
+                    for (int j = 0; j < numInputs; j++) {
+                        BitSet succ = recordSuccs[j];
+                        int outSucc = outSuccs[r][j];
+                        if (outSucc == Registry.MISSING_ELEMENT) {
+                            // may have been added earlier in this round
+                            final int newState = nextStateID(out, stateBuffer);
+                            outSucc = registry.getOrPut(succ, newState);
+                            if (outSucc == newState) {
+                                complete = false;
+                                addState(out, stateBuffer, succAccs[r][j]);
+                                frontier.push(inStates[r], j, succ, outSucc);
+                            }
+                        }
+                        out.setTransition(outState, j, outSucc);
+                    }
+                    statesExplored++;
+
+                    finishedStates.set(outState);
+
+                    if (!minimize && complete && threshold.test(out)) {
+                        minimize = true; // deferred to the end of the round
+                    }
+                    if (DEBUG && statesExplored % STATES_EXPLORED_PERIOD == 0) {
+                        System.out.println("DEBUG: Explored " + statesExplored + " states - "
+                        + frontier.size() + " states left in queue - " + (out.size() - stateBuffer.size()) + " states added");
+                    }
+                }
+                if (minimize) {
+                    periodicMinimization(inputs, out, finishedStates, stateBuffer, registry, threshold, minimizer);
+                    if (checkpoint != null) {
+                        checkpoint.afterMinimization(out, finishedStates, stateBuffer, frontier, registry);
+                    }
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * ID the next state added by addState will get: a recycled ID if there is one, otherwise a new one.
+     */
+    private static int nextStateID(CompactDFA<?> out, IntArrayList stateBuffer) {
+        return stateBuffer.isEmpty() ? out.size() : stateBuffer.topInt();
+    }
+
+    /**
+     * Add a state to the DFA, reusing a recycled ID if there is one.
+     * @return the ID, as announced by nextStateID
+     */
+    private static int addState(CompactDFA<?> out, IntArrayList stateBuffer, boolean accepting) {
+        if (stateBuffer.isEmpty()) {
+            return out.addIntState(accepting);
+        }
+        final int state = stateBuffer.popInt();
+        out.setAccepting(state, accepting);
+        return state;
+    }
+
+    /**
+     * Estimated heap bytes per metastate on the frontier: record, BitSet, and words sized like the initial metastate.
+     */
+    static long metastateBytes(BitSet init) {
+        return METASTATE_OVERHEAD_BYTES + init.size() / Byte.SIZE;
+    }
+
+    /**
+     * Reusable successor buffers, one per input symbol.
+     */
+    static BitSet[] newSuccessorBuffers(int numInputs) {
+        final BitSet[] succs = new BitSet[numInputs];
+        for (int j = 0; j < numInputs; j++) {
+            succs[j] = new BitSet();
+        }
+        return succs;
+    }
+
+    /**
+     * Compute the successors of inState for all input symbols into succs.
+     * The PowersetKernel does this in a single pass over inState, reusing the buffers;
+     * other powerset views compute one symbol at a time.
+     * Either way, succs[j] is scratch space and must be copied before being retained.
+     */
+    static <I> void successors(
+        AcceptorPowersetViewTS<BitSet, I, ?> nfa, Alphabet<I> inputs, BitSet inState, BitSet[] succs) {
+        if (nfa instanceof PowersetKernel<?> kernel) {
+            kernel.successors(inState, succs);
+            return;
+        }
+        int j = 0;
+        for (I i : inputs) {
+            succs[j++] = nfa.getSuccessor(inState, i);
+        }
+    }
+
+    /**
+     * Minimization pass triggered by a threshold crossing; updates the threshold with the new size.
+     * Passes are incremental where possible, see IncrementalMinimizer.
+     */
+    private static <I> void periodicMinimization(
+        Alphabet<I> inputs, CompactDFA<I> out, BitSet finishedStates, IntArrayList stateBuffer,
+        Registry registry, Threshold threshold, IncrementalMinimizer minimizer) {
+        final int oldStatesSoFar = out.size() - stateBuffer.size();
+        final long start = System.nanoTime();
+        minimizer.minimize(inputs, out, finishedStates, stateBuffer, registry);
+        final long nanos = System.nanoTime() - start;
+        final int statesSoFar = out.size() - stateBuffer.size();
+        threshold.recordPass(oldStatesSoFar, statesSoFar, nanos);
+        threshold.update(statesSoFar);
+        if (DEBUG) {
+            System.out.println("DEBUG: Periodic minimization: " + oldStatesSoFar + " -> " + statesSoFar + " states added"
+            + " (" + (minimizer.isLastPassFull() ? "full" : "incremental") + " pass, "
+            + minimizer.getLastSplits() + " blocks re-split, "
+            + minimizer.getLastPassAllocatedBytes() + " bytes allocated)");
+        }
     }
 
 
@@ -98,7 +378,7 @@ public class OTFDeterminization {
      * @param <I> - Input symbol type, e.g., Integer
      */
     public static <I> void otfMinimization(
-        Alphabet<I> inputs, CompactDFA<I> out, BitSet finishedStates, Deque<Integer> stateBuffer, Registry registry) {
+        Alphabet<I> inputs, CompactDFA<I> out, BitSet finishedStates, IntArrayList stateBuffer, Registry registry) {
         final Hopcroft pt = new Hopcroft();
         final FullIntAbstraction<?, Boolean, Void> abs = out.fullIntAbstraction(inputs);
 
@@ -106,7 +386,7 @@ public class OTFDeterminization {
 
         pt.computeCoarsestStablePartition();
 
-        if (updateDFA(out, finishedStates, stateBuffer, registry, pt, abs)) {
+        if (updateDFA(out, finishedStates, stateBuffer, registry, pt, abs, null, abs.size())) {
             registry.compress();
         }
     }
@@ -119,12 +399,15 @@ public class OTFDeterminization {
      * @param registry - OTF registry
      * @param pt - data from Paige-Tarjan algorithm
      * @param abs - integer abstraction of the output DFA
+     * @param localToGlobal - maps pt state ids to DFA state ids; null if they're the same
+     * @param numCandidates - pt states at or above this id are never merged (e.g., artificial sink)
      * @return if any updates occurred
      * @param <I> - Input symbol type, e.g., Integer
      */
-    private static <I> boolean updateDFA(
-        CompactDFA<I> out, BitSet finishedStates, Deque<Integer> stateBuffer,
-        Registry registry, Hopcroft pt, FullIntAbstraction<?, Boolean, Void> abs) {
+    static <I> boolean updateDFA(
+        CompactDFA<I> out, BitSet finishedStates, IntArrayList stateBuffer,
+        Registry registry, Hopcroft pt, FullIntAbstraction<?, Boolean, Void> abs,
+        int[] localToGlobal, int numCandidates) {
         // cache merged states so that we don't update incoming transitions of already merged states
         BitSet mergedStates = new BitSet();
         BitSet secondaries = new BitSet();
@@ -135,23 +418,27 @@ public class OTFDeterminization {
 
         // Each block is an equivalence class of states
         for (Block block : pt.blockList()) {
-            int blockLowRep = pt.blockData[block.low]; // representative state, also the low block value
+            int blockLowLocal = pt.blockData[block.low];
 
-            if (blockLowRep >= abs.size()) {
+            if (blockLowLocal >= numCandidates) {
                 continue; // ignore artificial sink block
             }
+            // representative state, also the low block value
+            int blockLowRep = localToGlobal == null ? blockLowLocal : localToGlobal[blockLowLocal];
 
             // Merge other states of block into representative state
             for (int b = block.low + 1; b < block.high; b++) {
-                int equivState = pt.blockData[b];
-                mergedStates.set(equivState);
+                int equivLocal = pt.blockData[b];
+                int equivState = localToGlobal == null ? equivLocal : localToGlobal[equivLocal];
+                mergedStates.set(equivLocal);
                 secondaries.set(equivState);
-                int equivOffset = pt.predOfsDataLow + equivState;
+                int equivOffset = pt.predOfsDataLow + equivLocal;
                 for (int j = 0; j < symbolNum; j++) {
                     for (int idx = pt.predOfsData[equivOffset]; idx < pt.predOfsData[equivOffset + 1]; idx++) {
                         // redirect old incoming transitions to new representative
-                        int predState = pt.predData[idx]; // predecessor is an incoming state
-                        if (!mergedStates.get(predState)) { // only need to redirect predecessor if not merged yet
+                        int predLocal = pt.predData[idx]; // predecessor is an incoming state
+                        if (!mergedStates.get(predLocal)) { // only need to redirect predecessor if not merged yet
+                            int predState = localToGlobal == null ? predLocal : localToGlobal[predLocal];
                             out.setTransition(predState, j, blockLowRep);
                         }
                     }
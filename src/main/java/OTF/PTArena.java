@@ -0,0 +1,120 @@
+package OTF;
+
+import java.util.Arrays;
+
+import net.automatalib.util.partitionrefinement.Block;
+
+/**
+ * Scratch arrays for partition refinement, reused across the minimization passes of one OTF run.
+ * Each array grows geometrically when a pass needs more room, and is otherwise handed out again,
+ * cleared where PTInitializers relies on zero/null initial values.
+ * Arrays may be longer than requested; Hopcroft only reads the ranges it was initialized with.
+ * An array handed out is only valid until the next request for the same array.
+ */
+public final class PTArena {
+    private int[] data = new int[0];
+    private int[] predData = new int[0];
+    private int[] statesBuff = new int[0];
+    private int[] classes = new int[0];
+    private int[] successors = new int[0];
+    private Block[] blockForState = new Block[0];
+    private Block[] blockClassification = new Block[0];
+
+    private long bytesAllocated; // total over the run
+
+    /**
+     * Block data, position data and predecessor offsets; zeroed.
+     */
+    public int[] data(int length) {
+        if (data.length < length) {
+            data = new int[grow(data.length, length, Integer.BYTES)];
+        } else {
+            Arrays.fill(data, 0, length, 0);
+        }
+        return data;
+    }
+
+    /**
+     * Predecessor data; not cleared.
+     */
+    public int[] predData(int length) {
+        if (predData.length < length) {
+            predData = new int[grow(predData.length, length, Integer.BYTES)];
+        }
+        return predData;
+    }
+
+    /**
+     * State worklist; not cleared.
+     */
+    public int[] statesBuffer(int length) {
+        if (statesBuff.length < length) {
+            statesBuff = new int[grow(statesBuff.length, length, Integer.BYTES)];
+        }
+        return statesBuff;
+    }
+
+    /**
+     * Initial classification per state; zeroed.
+     */
+    public int[] classes(int length) {
+        if (classes.length < length) {
+            classes = new int[grow(classes.length, length, Integer.BYTES)];
+        } else {
+            Arrays.fill(classes, 0, length, 0);
+        }
+        return classes;
+    }
+
+    /**
+     * Transition table; not cleared.
+     */
+    public int[] successors(int length) {
+        if (successors.length < length) {
+            successors = new int[grow(successors.length, length, Integer.BYTES)];
+        }
+        return successors;
+    }
+
+    /**
+     * Block per state; cleared.
+     */
+    public Block[] blockForState(int length) {
+        if (blockForState.length < length) {
+            blockForState = new Block[grow(blockForState.length, length, Integer.BYTES)];
+        } else {
+            Arrays.fill(blockForState, 0, length, null);
+        }
+        return blockForState;
+    }
+
+    /**
+     * Block per classification; cleared.
+     */
+    public Block[] blockClassification(int length) {
+        if (blockClassification.length < length) {
+            blockClassification = new Block[grow(blockClassification.length, length, Integer.BYTES)];
+        } else {
+            Arrays.fill(blockClassification, 0, length, null);
+        }
+        return blockClassification;
+    }
+
+    /**
+     * Total bytes allocated by this arena so far (array payloads; references counted as 4 bytes).
+     */
+    public long getBytesAllocated() {
+        return bytesAllocated;
+    }
+
+    /**
+     * New length for an array of oldLength that needs at least length elements: 1.5x growth, but no slack
+     * on the first allocation, so one-off uses don't over-allocate.
+     */
+    private int grow(int oldLength, int length, int elementBytes) {
+        final long grown = oldLength == 0 ? length : Math.max(length, oldLength + ((long) oldLength >> 1));
+        final int newLength = (int) Math.min(grown, Integer.MAX_VALUE - 8);
+        bytesAllocated += (long) newLength * elementBytes;
+        return newLength;
+    }
+}
@@ -55,6 +55,23 @@ public class PTInitializers {
     public static <I> void initDeterministic(Hopcroft pt,
                                              CompactDFA<I> dfa,
                                              BitSet finishedStates) {
+        initDeterministic(pt, dfa, finishedStates, new PTArena());
+    }
+
+    /**
+     * Like {@link #initDeterministic(Hopcroft, CompactDFA, BitSet)}, but carves its arrays from the given arena.
+     *
+     * @param pt
+     *         the partition refinement data structure
+     * @param dfa
+     *         the input automaton
+     * @param arena
+     *         scratch arrays to carve the data structure from, reused across passes
+     */
+    public static <I> void initDeterministic(Hopcroft pt,
+                                             CompactDFA<I> dfa,
+                                             BitSet finishedStates,
+                                             PTArena arena) {
         final int numStates = dfa.size();
         int numInputs = dfa.numInputs();
 
@@ -69,13 +86,13 @@ public class PTInitializers {
         // This can lead to overflow for large automata and alphabets
         // We split out a second array of size n*a for the predData
         // This makes for a maximum size 2*(n + n*a) - n*a = 2*n + n*a
-        int[] data = new int[predDataLow];
-        int[] predData = new int[numTransitionsFull];
-        Block[] blockForState = new Block[numStatesWithSink];
+        int[] data = arena.data(predDataLow);
+        int[] predData = arena.predData(numTransitionsFull);
+        Block[] blockForState = arena.blockForState(numStatesWithSink);
 
-        Block[] blockClassification = new Block[DFA_COMPONENT_CLASS + numStates];
+        Block[] blockClassification = arena.blockClassification(DFA_COMPONENT_CLASS + numStates);
 
-        int[] classifyArr = determineClassifyArr(dfa, finishedStates, numStates);
+        int[] classifyArr = determineClassifyArr(dfa, finishedStates, numStates, arena);
 
         int initId = dfa.getIntInitialState();
         int initClass = classifyArr[initId];
@@ -83,7 +100,7 @@ public class PTInitializers {
         pt.createBlock();
         blockForState[initId] = getOrCreateBlock(blockClassification, initClass, pt);
 
-        int[] statesBuff = new int[numStatesWithSink];
+        int[] statesBuff = arena.statesBuffer(numStatesWithSink);
         statesBuff[0] = initId;
 
 
@@ -113,8 +130,74 @@ public class PTInitializers {
         pt.removeEmptyBlocks();
     }
 
-    private static <I> int[] determineClassifyArr(CompactDFA<I> dfa, BitSet f, int numStates) {
-        int[] classifyArr = new int[numStates];
+    /**
+     * Initializes the partition refinement data structure from a complete transition table over local state ids
+     * 0..numStates-1, e.g., a region of a larger automaton.
+     * The initial partition is given by classes: states with equal classes start in the same block.
+     *
+     * @param pt
+     *         the partition refinement data structure
+     * @param numStates
+     *         number of (local) states
+     * @param numInputs
+     *         number of input symbols
+     * @param succ
+     *         transition table; succ[s * numInputs + j] is the successor of s on input j
+     * @param classes
+     *         initial classification of each state, in 0..numClasses-1
+     * @param numClasses
+     *         number of classes
+     * @param arena
+     *         scratch arrays to carve the data structure from, reused across passes
+     */
+    public static void initComplete(Hopcroft pt, int numStates, int numInputs,
+                                    int[] succ, int[] classes, int numClasses, PTArena arena) {
+        int posDataLow = numStates;
+        int predOfsDataLow = posDataLow + numStates;
+        int numTransitions = numStates * numInputs;
+        int predDataLow = predOfsDataLow + numTransitions + 1;
+
+        int[] data = arena.data(predDataLow);
+        int[] predData = arena.predData(numTransitions);
+        Block[] blockForState = arena.blockForState(numStates);
+        Block[] blockClassification = arena.blockClassification(numClasses);
+
+        for (int s = 0; s < numStates; s++) {
+            blockForState[s] = getOrCreateBlock(blockClassification, classes[s], pt);
+            int predCountBase = predOfsDataLow;
+            for (int j = 0; j < numInputs; j++) {
+                data[predCountBase + succ[s * numInputs + j]]++; // predOfsData
+                predCountBase += numStates;
+            }
+        }
+
+        pt.canonizeBlocks();
+        prefixSum(data, predOfsDataLow, predDataLow);
+
+        for (int s = 0; s < numStates; s++) {
+            final Block b = blockForState[s];
+            final int pos = --b.low;
+            data[pos] = s;
+            data[posDataLow + s] = pos;
+            int predOfsBase = predOfsDataLow;
+            for (int j = 0; j < numInputs; j++) {
+                predData[--data[predOfsBase + succ[s * numInputs + j]]] = s;
+                predOfsBase += numStates;
+            }
+        }
+
+        pt.setBlockData(data);
+        pt.setPosData(data, posDataLow);
+        pt.setPredOfsData(data, predOfsDataLow);
+        pt.setPredData(predData);
+        pt.setBlockForState(blockForState);
+        pt.setSize(numStates, numInputs);
+
+        pt.removeEmptyBlocks();
+    }
+
+    private static <I> int[] determineClassifyArr(CompactDFA<I> dfa, BitSet f, int numStates, PTArena arena) {
+        int[] classifyArr = arena.classes(numStates);
         for (int q = f.nextClearBit(0); q >= 0 && q < numStates; q = f.nextClearBit(q + 1)) {
             classifyArr[q] = DFA_COMPONENT_CLASS + q; // unfinished states
         }
@@ -1,7 +1,12 @@
 package OTF.Registry;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.BitSet;
 
+import OTF.Checkpoint;
+
 import it.unimi.dsi.fastutil.ints.IntArrayList;
 import it.unimi.dsi.fastutil.ints.IntList;
 import it.unimi.dsi.fastutil.objects.Object2IntMap;
@@ -12,6 +17,9 @@ public class AddressRegistry implements Registry {
     private final Object2IntMap<BitSet> key2Address;
     private final IntList representatives;
     private final ArrayStorage<IntList> rep2Address;
+    private long keyBytes; // payload of the stored keys, for estimatedBytes()
+    private BitSet spareKey = new BitSet(); // key buffer for getOrPut, not in the map
+    private static final long ENTRY_OVERHEAD_BYTES = 128; // BitSet and array headers, map entry, address list
 
     public AddressRegistry() {
         this.key2Address = new Object2IntOpenHashMap<>();
@@ -29,7 +37,30 @@ public class AddressRegistry implements Registry {
     @Override
     public void put(BitSet equivClassElt, int stateID) {
         int address = this.representatives.size();
-        this.key2Address.put(equivClassElt, address);
+        this.key2Address.put((BitSet) equivClassElt.clone(), address); // callers may reuse equivClassElt
+        addAddress(address, stateID, equivClassElt);
+    }
+
+    /**
+     * Single hash probe: the element is copied into a spare key, which putIfAbsent then either inserts or ignores.
+     * The spare key is reused until it's inserted, so hits don't allocate.
+     */
+    @Override
+    public int getOrPut(BitSet equivClassElt, int newStateID) {
+        spareKey.clear();
+        spareKey.or(equivClassElt);
+        int address = this.representatives.size();
+        int existing = this.key2Address.putIfAbsent(spareKey, address);
+        if (existing >= 0) {
+            return this.representatives.getInt(existing);
+        }
+        addAddress(address, newStateID, spareKey);
+        spareKey = new BitSet();
+        return newStateID;
+    }
+
+    private void addAddress(int address, int stateID, BitSet key) {
+        this.keyBytes += key.size() / Byte.SIZE;
         this.representatives.add(stateID);
 
         final IntList value = new IntArrayList();
@@ -42,10 +73,76 @@ public class AddressRegistry implements Registry {
     public void unify(int primary, int secondary) {
         for (int address : this.rep2Address.get(secondary)) {
             this.representatives.set(address, primary);
-            this.rep2Address.get(primary).add(address);
+            if (primary >= 0) { // a renamed state isn't unified further, so its addresses aren't needed
+                this.rep2Address.get(primary).add(address);
+            }
+        }
+    }
+
+    @Override
+    public boolean supportsRename() {
+        return true;
+    }
+
+    @Override
+    public void rename(int stateID, int ref) {
+        for (int address : this.rep2Address.get(stateID)) {
+            this.representatives.set(address, ref);
+        }
+        this.rep2Address.set(stateID, null);
+    }
+
+    @Override
+    public boolean supportsConcurrentGet() {
+        return true; // get() only reads the map and representatives
+    }
+
+    @Override
+    public boolean supportsCheckpoint() {
+        return true;
+    }
+
+    @Override
+    public void writeCheckpoint(DataOutput out) throws IOException {
+        out.writeInt(this.representatives.size());
+        for (int address = 0; address < this.representatives.size(); address++) {
+            out.writeInt(this.representatives.getInt(address));
+        }
+        out.writeInt(this.key2Address.size());
+        for (Object2IntMap.Entry<BitSet> entry : this.key2Address.object2IntEntrySet()) {
+            out.writeInt(entry.getIntValue());
+            Checkpoint.writeBitSet(out, entry.getKey());
         }
     }
 
+    @Override
+    public void readCheckpoint(DataInput in) throws IOException {
+        final int numAddresses = in.readInt();
+        for (int address = 0; address < numAddresses; address++) {
+            final int stateID = in.readInt();
+            this.representatives.add(stateID);
+            this.rep2Address.ensureCapacity(stateID + 1);
+            IntList addresses = this.rep2Address.get(stateID);
+            if (addresses == null) {
+                addresses = new IntArrayList();
+                this.rep2Address.set(stateID, addresses);
+            }
+            addresses.add(address);
+        }
+        final int numKeys = in.readInt();
+        for (int i = 0; i < numKeys; i++) {
+            final int address = in.readInt();
+            final BitSet key = Checkpoint.readBitSet(in);
+            this.key2Address.put(key, address);
+            this.keyBytes += key.size() / Byte.SIZE;
+        }
+    }
+
+    @Override
+    public long estimatedBytes() {
+        return keyBytes + ENTRY_OVERHEAD_BYTES * this.representatives.size();
+    }
+
     @Override
     public String toString() {
         return "OTF1";
@@ -4,6 +4,9 @@ import OTF.Compress.AntichainForest;
 import net.automatalib.automaton.fsa.NFA;
 import net.automatalib.automaton.fsa.impl.CompactNFA;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.BitSet;
 
 public class AntichainForestRegistry<I> implements Registry {
@@ -14,7 +17,15 @@ public class AntichainForestRegistry<I> implements Registry {
     Note: we do not use the actual NFA, only its size (to bound BitSets and inverted indices)
      */
     public AntichainForestRegistry(NFA<?, Integer> nfa, BitSet[] simRelsArr) {
-        this.acf = new AntichainForest(nfa, simRelsArr);
+        this(nfa, simRelsArr, false);
+    }
+
+    /**
+     * @param concurrent - whether get, put, getOrPut, and compress may be called from several threads at once
+     *                   (see AntichainForest); this costs some single-threaded speed
+     */
+    public AntichainForestRegistry(NFA<?, Integer> nfa, BitSet[] simRelsArr, boolean concurrent) {
+        this.acf = new AntichainForest(nfa, simRelsArr, concurrent);
         this.simulation = simRelsArr.length > 0;
     }
     public AntichainForestRegistry(CompactNFA<Integer> nfa) {
@@ -35,6 +46,16 @@ public class AntichainForestRegistry<I> implements Registry {
         this.acf.put(equivClassElt, stateID);
     }
 
+    @Override
+    public int getOrPut(BitSet equivClassElt, int newStateID) {
+        return this.acf.getOrPut(equivClassElt, newStateID);
+    }
+
+    @Override
+    public boolean supportsConcurrentGet() {
+        return this.acf.isConcurrent();
+    }
+
     @Override
     public void unify(int primary, int secondary) {
         throw new RuntimeException("Shouldn't be executed, use other unify()");
@@ -45,6 +66,37 @@ public class AntichainForestRegistry<I> implements Registry {
         this.acf.unify(primary, secondaries);
     }
 
+    @Override
+    public boolean supportsRename() {
+        return true;
+    }
+
+    @Override
+    public void rename(int stateID, int ref) {
+        this.acf.rename(stateID, ref);
+    }
+
+    @Override
+    public boolean supportsCheckpoint() {
+        return true;
+    }
+
+    @Override
+    public void writeCheckpoint(DataOutput out) throws IOException {
+        this.acf.writeCheckpoint(out);
+    }
+
+    @Override
+    public void readCheckpoint(DataInput in) throws IOException {
+        this.acf.readCheckpoint(in);
+        this.acf.compress();
+    }
+
+    @Override
+    public long estimatedBytes() {
+        return this.acf.estimatedBytes();
+    }
+
     @Override
     public int getMaxIntermediateCount() {
         return this.acf.maxIntermediateCount;
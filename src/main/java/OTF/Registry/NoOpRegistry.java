@@ -1,5 +1,7 @@
 package OTF.Registry;
 
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.util.BitSet;
 
 public class NoOpRegistry implements Registry {
@@ -16,6 +18,26 @@ public class NoOpRegistry implements Registry {
     public void unify(int primary, int secondary) {
     }
 
+    @Override
+    public boolean supportsConcurrentGet() {
+        return true;
+    }
+
+    @Override
+    public boolean supportsCheckpoint() {
+        return true;
+    }
+
+    @Override
+    public void writeCheckpoint(DataOutput out) {
+        // nothing to write
+    }
+
+    @Override
+    public void readCheckpoint(DataInput in) {
+        // nothing to read
+    }
+
     @Override
     public String toString() {
         return "NoOp";
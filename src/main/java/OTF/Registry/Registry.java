@@ -1,5 +1,8 @@
 package OTF.Registry;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.BitSet;
 
 public interface Registry {
@@ -7,6 +10,7 @@ public interface Registry {
 
     /**
      * Get representative state ID from the equivalence class.
+     * Implementations must not retain equivClassElt (copy it if caching); callers may reuse it as a buffer.
      * @param equivClassElt element of equivalence class
      * @return representative state ID or MISSING_ELEMENT if equivalence class not found.
      */
@@ -14,11 +18,30 @@ public interface Registry {
 
     /**
      * Add new equivalence class, with (fixed) representative state ID.
+     * Implementations must copy equivClassElt if they retain it; callers may reuse it as a buffer.
      * @param equivClassElt equivalence class element
      * @param stateID state ID
      */
     void put(BitSet equivClassElt, int stateID);
 
+    /**
+     * Get the representative state ID of the equivalence class of equivClassElt, or if there is none,
+     * add a new equivalence class with representative newStateID; i.e., get followed by put on a miss.
+     * Implementations can do the work common to both, e.g., converting and hashing equivClassElt, once.
+     * Implementations must copy equivClassElt if they retain it; callers may reuse it as a buffer.
+     * @param equivClassElt equivalence class element
+     * @param newStateID state ID for a new equivalence class; must not be a state ID in the registry
+     * @return existing representative state ID, or newStateID if a new equivalence class was added
+     */
+    default int getOrPut(BitSet equivClassElt, int newStateID) {
+        final int stateID = get(equivClassElt);
+        if (stateID != MISSING_ELEMENT) {
+            return stateID;
+        }
+        put(equivClassElt, newStateID);
+        return newStateID;
+    }
+
     /**
      * Merge element of equivalence class into the equivalence class representative.
      * @param primary representative
@@ -43,6 +66,53 @@ public interface Registry {
      */
     default void compress() {};
 
+    /**
+     * Whether get() may be called from several threads at once, provided no other method is called concurrently.
+     * Used by the parallel OTF loop to do registry lookups on the worker threads.
+     */
+    default boolean supportsConcurrentGet() { return false; }
+
+    /**
+     * Rough estimate of the heap used by the registry, in bytes; negative if unknown.
+     * Used by memory-driven thresholds, so it should be cheap relative to a few hundred OTF steps.
+     */
+    default long estimatedBytes() { return -1; }
+
+    /**
+     * Whether writeCheckpoint() and readCheckpoint() are implemented. doOTF rejects checkpoints up front otherwise.
+     */
+    default boolean supportsCheckpoint() { return false; }
+
+    /**
+     * Write the registry contents to a checkpoint, in a form {@link #readCheckpoint(DataInput)} can restore.
+     * Called right after a minimization pass; only if supportsCheckpoint().
+     */
+    default void writeCheckpoint(DataOutput out) throws IOException {
+        throw new UnsupportedOperationException(this + " registry doesn't support checkpoints");
+    }
+
+    /**
+     * Restore contents written by {@link #writeCheckpoint(DataOutput)} into this (empty) registry.
+     */
+    default void readCheckpoint(DataInput in) throws IOException {
+        throw new UnsupportedOperationException(this + " registry doesn't support checkpoints");
+    }
+
+    /**
+     * Whether rename() is implemented. doOTF rejects streaming up front otherwise.
+     */
+    default boolean supportsRename() { return false; }
+
+    /**
+     * Make the equivalence class of stateID that of ref instead, so that stateID can be re-used for a new state.
+     * ref refers to a state streamed out of the DFA (see StreamingOutput); it's below MISSING_ELEMENT.
+     * It may later be the primary of unify(), but is never a secondary or renamed again.
+     * Called between minimization passes while streaming; only if supportsRename().
+     */
+    default void rename(int stateID, int ref) {
+        throw new UnsupportedOperationException(this + " registry doesn't support renaming states");
+    }
+
     // Only used for debugging and analysis, not part of the essential interface
     default int getMaxIntermediateCount() { return -1; }
 }
@@ -1,12 +1,13 @@
 package OTF;
 
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Comparator;
 
 /**
  * SmartBitSet is adapted from BitSet, with additional:
  *   access to words and wordsInUse (used in faster subset calculation)
- *   cached cardinality and hashCode
+ *   cached cardinality, hashCode, and signature (a 64-bit fingerprint for fast subset rejection)
  *   loop unrolling in or(), and(), andNot(), equals(), intersects(), isSubset()
  * Potentially we could also:
  *   remove checkInvariants() and checkRange() validations
@@ -29,6 +30,8 @@ public final class SmartBitSet implements Cloneable {
   private int cardinality = -1;
   private boolean dirtyHash= true;
   private int hash = -1;
+  private boolean dirtySignature = true;
+  private long signature = 0L;
 
   private static final int LOOP_UNROLL = 4;
 
@@ -73,6 +76,7 @@ public final class SmartBitSet implements Cloneable {
   public void markAsDirty() {
     dirtyCardinality = true;
     dirtyHash = true;
+    dirtySignature = true;
   }
 
   /**
@@ -135,6 +139,40 @@ public final class SmartBitSet implements Cloneable {
     return new SmartBitSet(Arrays.copyOf(longs, n));
   }
 
+  /**
+   * Sets this bit set to the bits of set, reusing the internal array when it's large enough.
+   * Unlike valueOf(set.toLongArray()), this doesn't allocate, so a SmartBitSet can serve as a lookup buffer.
+   */
+  public void copyFrom(BitSet set) {
+    final int newWordsInUse = wordIndex(set.length() - 1) + 1;
+    if (words.length < newWordsInUse) {
+      words = new long[Math.max(2 * words.length, newWordsInUse)];
+      sizeIsSticky = false;
+    } else {
+      Arrays.fill(words, 0, wordsInUse, 0L);
+    }
+    for (int i = set.nextSetBit(0); i >= 0; i = set.nextSetBit(i + 1)) {
+      words[i >> ADDRESS_BITS_PER_WORD] |= 1L << i;
+    }
+    wordsInUse = newWordsInUse;
+    markAsDirty();
+  }
+
+  /**
+   * Returns a new bit set with the bits of this one, in an array of exactly wordsInUse words.
+   * Unlike clone(), this leaves the internal array of this bit set alone.
+   */
+  public SmartBitSet trimmedCopy() {
+    final SmartBitSet result = new SmartBitSet(Arrays.copyOf(words, wordsInUse));
+    result.dirtyCardinality = this.dirtyCardinality;
+    result.cardinality = this.cardinality;
+    result.dirtyHash = this.dirtyHash;
+    result.hash = this.hash;
+    result.dirtySignature = this.dirtySignature;
+    result.signature = this.signature;
+    return result;
+  }
+
   /**
    * Ensures that the SmartBitSet can accommodate a given wordIndex,
    * temporarily violating the invariants.  The caller must
@@ -481,6 +519,22 @@ public final class SmartBitSet implements Cloneable {
     recalculateWordsInUse();
   }
 
+  /**
+   * As dirtyAnd(SmartBitSet), with the bit set in words[from, from + len) of a packed array (e.g., InvertedIndex).
+   * The loop is kept simple so that the JIT can vectorize it.
+   */
+  public void dirtyAnd(long[] words, int from, int len) {
+    final int commonWords = Math.min(this.wordsInUse, len);
+    for (int i = 0; i < commonWords; i++) {
+      this.words[i] &= words[from + i];
+    }
+    if (this.wordsInUse > commonWords) {
+      Arrays.fill(this.words, commonWords, this.wordsInUse, 0L);
+    }
+    this.wordsInUse = commonWords;
+    recalculateWordsInUse();
+  }
+
   /**
    * Performs a logical <b>OR</b> of this bit set with the bit set
    * argument. This bit set is modified so that a bit in it has the
@@ -528,6 +582,23 @@ public final class SmartBitSet implements Cloneable {
     this.wordsInUse = newWordsInUse;
   }
 
+  /**
+   * As dirtyOr(SmartBitSet), with the bit set in words[from, from + len) of a packed array (e.g., InvertedIndex).
+   * Trailing zero words are allowed.
+   */
+  public void dirtyOr(long[] words, int from, int len) {
+    if (this.words.length < len) {
+      this.words = Arrays.copyOf(this.words, len);
+    }
+    for (int i = 0; i < len; i++) {
+      this.words[i] |= words[from + i];
+    }
+    if (len > this.wordsInUse) {
+      this.wordsInUse = len;
+      recalculateWordsInUse();
+    }
+  }
+
 
   /**
    * Clears the bits in this {@code SmartBitSet} whose corresponding
@@ -636,6 +707,34 @@ public final class SmartBitSet implements Cloneable {
   }
 
 
+  /**
+   * OR of all words, i.e., the bits folded into 64.
+   * If this is a subset of sup, then signature() has no bits outside sup.signature().
+   */
+  public long signature() {
+    if (!dirtySignature) {
+      return signature;
+    }
+    long sig = 0L;
+    for (int i = 0; i < wordsInUse; i++)
+      sig |= words[i];
+    signature = sig;
+    dirtySignature = false;
+    return sig;
+  }
+
+  /**
+   * isSubset, rejecting most non-subsets with one AND of the cached signatures before scanning the words.
+   * Meant for sets that are tested repeatedly (stored elements, AC unions, lookups), so their signatures are cached;
+   * like the cached cardinality, the signature is only valid if dirty operations were followed by markAsDirty().
+   */
+  public boolean isSubsetBySignature(SmartBitSet sup) {
+    if ((signature() & ~sup.signature()) != 0L) {
+      return false;
+    }
+    return isSubset(sup);
+  }
+
   public int hashCode() {
     if (!dirtyHash) {
       return hash;
@@ -716,6 +815,8 @@ public final class SmartBitSet implements Cloneable {
       result.cardinality = this.cardinality;
       result.dirtyHash = this.dirtyHash;
       result.hash = this.hash;
+      result.dirtySignature = this.dirtySignature;
+      result.signature = this.signature;
       return result;
     } catch (CloneNotSupportedException e) {
       throw new InternalError();
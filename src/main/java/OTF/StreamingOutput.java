@@ -0,0 +1,469 @@
+package OTF;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.BitSet;
+
+import OTF.Registry.Registry;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import net.automatalib.alphabet.Alphabet;
+import net.automatalib.automaton.fsa.impl.CompactDFA;
+import net.automatalib.util.partitionrefinement.Block;
+import net.automatalib.util.partitionrefinement.Hopcroft;
+
+/**
+ * Streams the states of the OTF output DFA to a file while the run proceeds, and evicts them from the DFA.
+ * After each full minimization pass, the closed states are appended. Their languages can't change anymore.
+ * Each streamed state gets a stream ID, its position in the file, and is evicted:
+ * transitions and registry entries that led to it now hold a reference to its stream ID (see {@link #ref(int)}),
+ * and its DFA state ID is recycled. So the DFA only holds the states closed since the last full pass,
+ * besides those whose languages can still change. At the end of the run, the remaining states are appended.
+ * <p>
+ * For each streamed state, only a 64-bit signature of (acceptance, successors) stays in memory.
+ * Newly closed states are matched against it (see {@link #find(CompactDFA, int)}), with the candidate
+ * read back from the file. The minimizer matches cycles of them by a bounded local refinement, which reads the
+ * streamed states it reaches back as well ({@link #readState(int, int[])}). Matches can still be missed,
+ * so streamed states may be equivalent; the final pass merges them.
+ * <p>
+ * The final pass (see {@link #writeMinimalBA(Alphabet, Path)}) maps the file, renumbers the states reachable from
+ * the initial state, minimizes them, and writes the result in the BA format, without building another DFA.
+ * It runs after the run, so the registry and frontier of the run can be dropped by then.
+ * <p>
+ * Format (big-endian): one fixed-size record per stream ID, of acceptance (a byte) and one successor stream ID
+ * per input symbol; then the stream ID of the initial state.
+ */
+public final class StreamingOutput implements AutoCloseable {
+    private static final int BUFFER_BYTES = 1 << 20;
+    private static final long MAX_MAPPED_BYTES = 1L << 30; // per mapping of the final pass
+    // stream IDs above this would give references that collide with other markers, e.g., Integer.MIN_VALUE
+    private static final int MAX_RECORDS = Integer.MAX_VALUE - 2;
+    private static final int SELF_LOOP = -1; // in signatures; not a stream ID
+
+    private final Path path;
+    // first stream ID by signature of (acceptance, successors), where self-loops are hashed as such
+    private final Long2IntOpenHashMap signatures = new Long2IntOpenHashMap();
+    private DataOutputStream out;
+    private FileChannel reader; // reads candidates of find() back; opened on first use
+    private ByteBuffer record;
+    private boolean finished = false;
+
+    private int numInputs = -1; // set by the first write
+    private int recordBytes;
+    private int records = 0;
+    private int streamedDuringRun = 0;
+
+    /**
+     * @param path - file to stream states to; overwritten
+     */
+    public StreamingOutput(Path path) {
+        this.path = path;
+        this.signatures.defaultReturnValue(Registry.MISSING_ELEMENT);
+        try {
+            this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path), BUFFER_BYTES));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not create stream file " + path, e);
+        }
+    }
+
+    /**
+     * Reference to the streamed state with the given stream ID, used in place of a DFA state ID.
+     * References are below Registry.MISSING_ELEMENT, so they're neither states nor missing elements.
+     */
+    static int ref(int streamId) {
+        return -2 - streamId;
+    }
+
+    /**
+     * Whether state is a reference to a streamed state rather than a DFA state ID.
+     */
+    static boolean isRef(int state) {
+        return state < Registry.MISSING_ELEMENT;
+    }
+
+    /**
+     * Stream ID of a reference to a streamed state.
+     */
+    static int streamId(int ref) {
+        return -2 - ref;
+    }
+
+    /**
+     * Called by the minimizer after each full pass: streams the closed states and evicts them from the DFA.
+     * Closed states only lead to closed states, and no closed state leads to the initial state unless it's closed.
+     * If the initial state is closed, nothing is streamed; finish streams everything then.
+     * @return number of states streamed
+     */
+    <I> int evict(
+        CompactDFA<I> dfa, BitSet closedStates, BitSet finishedStates, IntArrayList stateBuffer, Registry registry) {
+        if (closedStates.isEmpty() || closedStates.get(dfa.getIntInitialState())) {
+            return 0;
+        }
+        final int numStates = dfa.size();
+        final int[] streamIds = assignStreamIds(closedStates, numStates);
+        for (int q = closedStates.nextSetBit(0); q >= 0; q = closedStates.nextSetBit(q + 1)) {
+            signatures.putIfAbsent(writeState(dfa, q, streamIds), streamIds[q]);
+        }
+        try {
+            out.flush(); // find() reads the records back
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write stream file " + path, e);
+        }
+
+        // The remaining states may lead to streamed states
+        final int k = dfa.numInputs();
+        for (int p = 0; p < numStates; p++) {
+            if (streamIds[p] >= 0) {
+                continue;
+            }
+            for (int j = 0; j < k; j++) {
+                final int t = dfa.getSuccessor(p, j);
+                if (t >= 0 && streamIds[t] >= 0) {
+                    dfa.setTransition(p, j, ref(streamIds[t]));
+                }
+            }
+        }
+        int count = 0;
+        for (int q = closedStates.nextSetBit(0); q >= 0; q = closedStates.nextSetBit(q + 1)) {
+            registry.rename(q, ref(streamIds[q]));
+            for (int j = 0; j < k; j++) {
+                dfa.setTransition(q, j, q); // dead state
+            }
+            finishedStates.clear(q);
+            stateBuffer.push(q); // mark for re-use
+            count++;
+        }
+        streamedDuringRun += count;
+        if (OTFDeterminization.DEBUG) {
+            System.out.println("DEBUG: Streamed " + streamedDuringRun + " states");
+        }
+        return count;
+    }
+
+    /**
+     * Called by the OTF loop at the end of the run; streams the remaining states and the initial state.
+     */
+    <I> void finish(CompactDFA<I> dfa, BitSet finishedStates) {
+        final int[] streamIds = assignStreamIds(finishedStates, dfa.size());
+        for (int q = finishedStates.nextSetBit(0); q >= 0; q = finishedStates.nextSetBit(q + 1)) {
+            writeState(dfa, q, streamIds);
+        }
+        try {
+            out.writeInt(streamIds[dfa.getIntInitialState()]);
+            out.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write stream file " + path, e);
+        }
+        out = null;
+        finished = true;
+        closeReader();
+        signatures.clear();
+        signatures.trim(); // no more finds
+    }
+
+    /**
+     * Stream IDs for states, in ascending order of their DFA state IDs; -1 for other DFA states.
+     */
+    private int[] assignStreamIds(BitSet states, int numStates) {
+        final int count = states.cardinality();
+        if (records > MAX_RECORDS - count) {
+            throw new IllegalStateException("Too many states to stream: " + ((long) records + count));
+        }
+        final int[] streamIds = new int[numStates];
+        Arrays.fill(streamIds, -1);
+        for (int q = states.nextSetBit(0); q >= 0; q = states.nextSetBit(q + 1)) {
+            streamIds[q] = records++;
+        }
+        return streamIds;
+    }
+
+    /**
+     * Append the record of q. Its successors must be streamed already, or get stream IDs from streamIds.
+     * @return signature of the record
+     */
+    private <I> long writeState(CompactDFA<I> dfa, int q, int[] streamIds) {
+        if (numInputs < 0) {
+            numInputs = dfa.numInputs();
+            recordBytes = 1 + numInputs * Integer.BYTES;
+        }
+        final boolean accepting = dfa.isAccepting(q);
+        long signature = accepting ? 1 : 0;
+        try {
+            out.writeBoolean(accepting);
+            for (int j = 0; j < numInputs; j++) {
+                final int t = dfa.getSuccessor(q, j);
+                final int succ = isRef(t) ? streamId(t) : t >= 0 ? streamIds[t] : -1;
+                if (succ < 0) {
+                    throw new IllegalStateException("Successor " + t + " of state " + q + " isn't streamed");
+                }
+                out.writeInt(succ);
+                signature = mix(signature, t == q ? SELF_LOOP : succ);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write stream file " + path, e);
+        }
+        return signature;
+    }
+
+    private static long mix(long signature, int value) {
+        final long h = (signature ^ value) * 0x9E3779B97F4A7C15L;
+        return h ^ (h >>> 29);
+    }
+
+    /**
+     * A streamed state equivalent to the DFA state q, matched by (acceptance, successors).
+     * Only states whose successors are all streamed (or q itself) can match.
+     * @return a reference to the streamed state, or Registry.MISSING_ELEMENT if there's none
+     */
+    <I> int find(CompactDFA<I> dfa, int q) {
+        if (signatures.isEmpty()) {
+            return Registry.MISSING_ELEMENT;
+        }
+        final boolean accepting = dfa.isAccepting(q);
+        long signature = accepting ? 1 : 0;
+        for (int j = 0; j < numInputs; j++) {
+            final int t = dfa.getSuccessor(q, j);
+            if (t != q && !isRef(t)) {
+                return Registry.MISSING_ELEMENT;
+            }
+            signature = mix(signature, t == q ? SELF_LOOP : streamId(t));
+        }
+        final int candidate = signatures.get(signature);
+        if (candidate == Registry.MISSING_ELEMENT) {
+            return Registry.MISSING_ELEMENT;
+        }
+
+        // Signatures may collide, so compare with the record
+        final ByteBuffer candidateRecord = readRecord(candidate);
+        if ((candidateRecord.get(0) != 0) != accepting) {
+            return Registry.MISSING_ELEMENT;
+        }
+        for (int j = 0; j < numInputs; j++) {
+            final int t = dfa.getSuccessor(q, j);
+            final int expected = t == q ? candidate : streamId(t);
+            if (candidateRecord.getInt(1 + j * Integer.BYTES) != expected) {
+                return Registry.MISSING_ELEMENT;
+            }
+        }
+        return ref(candidate);
+    }
+
+    /**
+     * Read a streamed state back from the file.
+     * @param ref - reference to the streamed state
+     * @param successors - receives references to its successors, one per input symbol
+     * @return whether it's accepting
+     */
+    boolean readState(int ref, int[] successors) {
+        final ByteBuffer stateRecord = readRecord(streamId(ref));
+        for (int j = 0; j < numInputs; j++) {
+            successors[j] = ref(stateRecord.getInt(1 + j * Integer.BYTES));
+        }
+        return stateRecord.get(0) != 0;
+    }
+
+    private ByteBuffer readRecord(int streamId) {
+        try {
+            if (reader == null) {
+                reader = FileChannel.open(path, StandardOpenOption.READ);
+                record = ByteBuffer.allocate(recordBytes);
+            }
+            record.clear();
+            final long position = (long) streamId * recordBytes;
+            while (record.hasRemaining()) {
+                if (reader.read(record, position + record.position()) < 0) {
+                    throw new IOException("Stream file ends before record " + streamId);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read stream file " + path, e);
+        }
+        return record;
+    }
+
+    /**
+     * Final pass: minimize the streamed DFA and write it to baFile in the BA format.
+     * States are numbered in breadth-first order from the initial state.
+     * Transitions are read from the mapped stream file; the heap holds the partition refinement of the reachable
+     * streamed states, which is what minimizing them takes.
+     * @param inputs - input symbols of the run
+     * @param baFile - output file
+     * @return number of states of the minimal DFA
+     */
+    public int writeMinimalBA(Alphabet<?> inputs, Path baFile) {
+        if (!finished) {
+            throw new IllegalStateException("Run hasn't finished");
+        }
+        final int k = inputs.size();
+        if (k != numInputs) {
+            throw new IllegalArgumentException("Streamed " + numInputs + " input symbols, got " + k);
+        }
+        final int n;
+        final int[] localSucc;
+        final int[] classes;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            final MappedRecords mapped = new MappedRecords(channel, records, recordBytes);
+            final ByteBuffer trailer = ByteBuffer.allocate(Integer.BYTES);
+            if (channel.read(trailer, (long) records * recordBytes) != Integer.BYTES) {
+                throw new IOException("Stream file has no initial state");
+            }
+            final int init = trailer.getInt(0);
+
+            // Renumber reachable states in BFS order
+            final int[] local = new int[records];
+            Arrays.fill(local, -1);
+            final IntArrayList order = new IntArrayList();
+            local[init] = 0;
+            order.add(init);
+            for (int s = 0; s < order.size(); s++) {
+                final int q = order.getInt(s);
+                for (int j = 0; j < k; j++) {
+                    final int t = mapped.successor(q, j);
+                    if (local[t] < 0) {
+                        local[t] = order.size();
+                        order.add(t);
+                    }
+                }
+            }
+            n = order.size();
+            localSucc = new int[n * k];
+            classes = new int[n];
+            for (int s = 0; s < n; s++) {
+                final int q = order.getInt(s);
+                for (int j = 0; j < k; j++) {
+                    localSucc[s * k + j] = local[mapped.successor(q, j)];
+                }
+                classes[s] = mapped.accepting(q) ? 1 : 0;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read stream file " + path, e);
+        }
+
+        final Hopcroft pt = new Hopcroft();
+        PTInitializers.initComplete(pt, n, k, localSucc, classes, 2, new PTArena());
+        pt.computeCoarsestStablePartition();
+
+        // Output states are blocks, in BFS order from the initial block
+        final int[] blockOf = new int[n];
+        final int[] blockRep = new int[pt.getNumBlocks()];
+        int numBlocks = 0;
+        for (Block block : pt.blockList()) {
+            for (int b = block.low; b < block.high; b++) {
+                blockOf[pt.blockData[b]] = numBlocks;
+            }
+            blockRep[numBlocks++] = pt.blockData[block.low];
+        }
+        final int[] output = new int[numBlocks];
+        Arrays.fill(output, -1);
+        final int[] outputOrder = new int[numBlocks];
+        int numOutput = 0;
+        output[blockOf[0]] = numOutput;
+        outputOrder[numOutput++] = blockOf[0];
+        for (int o = 0; o < numOutput; o++) {
+            final int rep = blockRep[outputOrder[o]];
+            for (int j = 0; j < k; j++) {
+                final int b = blockOf[localSucc[rep * k + j]];
+                if (output[b] < 0) {
+                    output[b] = numOutput;
+                    outputOrder[numOutput++] = b;
+                }
+            }
+        }
+
+        try (Writer w = Files.newBufferedWriter(baFile)) {
+            w.write("0\n");
+            for (int o = 0; o < numOutput; o++) {
+                final int rep = blockRep[outputOrder[o]];
+                for (int j = 0; j < k; j++) {
+                    w.write(inputs.getSymbol(j) + "," + o + "->" + output[blockOf[localSucc[rep * k + j]]] + "\n");
+                }
+            }
+            for (int o = 0; o < numOutput; o++) {
+                if (classes[blockRep[outputOrder[o]]] == 1) {
+                    w.write(o + "\n");
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write " + baFile, e);
+        }
+        return numOutput;
+    }
+
+    /**
+     * The records of the stream file, mapped in chunks of whole records.
+     * Like the segments of SpillingFrontier, the mappings are released by GC.
+     */
+    private static final class MappedRecords {
+        private final MappedByteBuffer[] chunks;
+        private final int recordsPerChunk;
+        private final int recordBytes;
+
+        MappedRecords(FileChannel channel, int records, int recordBytes) throws IOException {
+            this.recordBytes = recordBytes;
+            this.recordsPerChunk = (int) Math.max(1, MAX_MAPPED_BYTES / recordBytes);
+            this.chunks = new MappedByteBuffer[(records + recordsPerChunk - 1) / recordsPerChunk];
+            for (int c = 0; c < chunks.length; c++) {
+                final long first = (long) c * recordsPerChunk;
+                final long size = Math.min(recordsPerChunk, records - first) * recordBytes;
+                chunks[c] = channel.map(FileChannel.MapMode.READ_ONLY, first * recordBytes, size);
+            }
+        }
+
+        boolean accepting(int streamId) {
+            return chunks[streamId / recordsPerChunk].get((streamId % recordsPerChunk) * recordBytes) != 0;
+        }
+
+        int successor(int streamId, int j) {
+            return chunks[streamId / recordsPerChunk].getInt(
+                (streamId % recordsPerChunk) * recordBytes + 1 + j * Integer.BYTES);
+        }
+    }
+
+    /**
+     * States streamed by full passes during the run, i.e., before the end.
+     */
+    public int getStreamedDuringRun() {
+        return streamedDuringRun;
+    }
+
+    /**
+     * Records in the stream file.
+     */
+    public long getRecords() {
+        return records;
+    }
+
+    private void closeReader() {
+        if (reader != null) {
+            try {
+                reader.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not close stream file " + path, e);
+            }
+            reader = null;
+        }
+    }
+
+    @Override
+    public void close() {
+        closeReader();
+        if (out != null) {
+            try {
+                out.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not close stream file " + path, e);
+            }
+            out = null;
+        }
+    }
+}
@@ -1,11 +1,18 @@
 package OTF;
 
+import java.lang.management.ManagementFactory;
 import java.util.ArrayList;
 import java.util.BitSet;
 import java.util.List;
 
+import OTF.Compress.SignatureStats;
+import OTF.Compress.SubsetIndex;
+import OTF.Model.Frontier;
+import OTF.Model.PowersetKernel;
 import OTF.Model.Threshold;
+import OTF.Registry.AddressRegistry;
 import OTF.Registry.AntichainForestRegistry;
+import OTF.Registry.Registry;
 import OTF.Simulation.ParallelSimulation;
 import net.automatalib.alphabet.Alphabet;
 import net.automatalib.automaton.fsa.DFA;
@@ -18,6 +25,8 @@ import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Tag;
 import org.junit.jupiter.api.Test;
 
+import com.sun.management.ThreadMXBean;
+
 @Tag("IntegTest")
 public class BenchmarkTest {
     private static final List<CompactNFA<Integer>> AUTOMATA;
@@ -78,6 +87,24 @@ public class BenchmarkTest {
         }
     }
 
+    @Test
+    void testOTF_CCL_Parallel() {
+        for (CompactNFA<Integer> automaton : AUTOMATA) {
+            final Alphabet<Integer> alphabet = automaton.getInputAlphabet();
+            final CompactDFA<Integer> dfa = NFAs.determinize(automaton, alphabet);
+            final DFA<?, Integer> det = OTFDeterminization.doOTF(
+                new PowersetKernel<>(automaton),
+                alphabet,
+                MAX_THRESHOLD,
+                new AntichainForestRegistry<>(automaton),
+                4);
+            final CompactDFA<Integer> result = HopcroftMinimizer.minimizeDFA(det, alphabet);
+
+            Assertions.assertEquals(dfa.size(), result.size());
+            Assertions.assertTrue(Automata.testEquivalence(dfa, result, alphabet));
+        }
+    }
+
     @Test
     void testOTF_CCLS() {
         for (CompactNFA<Integer> automaton : AUTOMATA) {
@@ -140,4 +167,116 @@ public class BenchmarkTest {
             Assertions.assertTrue(Automata.testEquivalence(dfa, result, alphabet));
         }
     }
+
+    /**
+     * Bytes allocated by the OTF loop per explored state, without minimization passes (so every state is explored
+     * once and kept). Covers the frontier, free list, output DFA, and registry.
+     */
+    @Test
+    void testAllocationPerState() {
+        final ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        Assertions.assertTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+        final List<CompactNFA<Integer>> automata = AUTOMATA.subList(0, 200);
+
+        for (String frontierName : new String[]{"dfs", "bfs"}) {
+            for (boolean acf : new boolean[]{false, true}) {
+                long bytes = 0;
+                long states = 0;
+                for (int round = 0; round < 2; round++) { // the first round warms up
+                    bytes = 0;
+                    states = 0;
+                    for (CompactNFA<Integer> automaton : automata) {
+                        final PowersetKernel<Integer> kernel = new PowersetKernel<>(automaton);
+                        final Registry registry = acf ? new AntichainForestRegistry<>(automaton) : new AddressRegistry();
+                        final Frontier frontier = Frontier.of(frontierName);
+                        final long before = threads.getCurrentThreadAllocatedBytes();
+                        final DFA<?, Integer> det = OTFDeterminization.doOTF(
+                            kernel, automaton.getInputAlphabet(), Threshold.noop(), registry, 1, frontier);
+                        bytes += threads.getCurrentThreadAllocatedBytes() - before;
+                        states += det.size();
+                    }
+                }
+                System.out.println("Allocation (" + frontierName + ", " + (acf ? "ACF" : "address") + " registry): "
+                    + (bytes / states) + " bytes/state over " + states + " states");
+                Assertions.assertTrue(states > 0);
+            }
+        }
+    }
+
+    /**
+     * How many of the subset tests on the antichain forest's search path the signature prefilter answers alone.
+     * The metastates looked up during each run are replayed against the final search index.
+     * Uses larger NFAs than the other benchmarks, so that metastates span several words.
+     */
+    @Test
+    void testSignatureRejectionRate() {
+        for (int size : new int[]{30, 80}) {
+            final SignatureStats stats = new SignatureStats();
+            for (int randomSeed = 0; randomSeed < 50; randomSeed++) {
+                final CompactNFA<Integer> automaton =
+                    TabakovVardiRandomNFA.getRandomTrimAutomaton(randomSeed, size, CompactNFA::new);
+                final List<BitSet> lookups = new ArrayList<>();
+                final AntichainForestRegistry<Integer> registry = new AntichainForestRegistry<>(automaton) {
+                    @Override
+                    public int get(BitSet equivClassElt) {
+                        lookups.add((BitSet) equivClassElt.clone());
+                        return super.get(equivClassElt);
+                    }
+
+                    @Override
+                    public int getOrPut(BitSet equivClassElt, int newStateID) {
+                        lookups.add((BitSet) equivClassElt.clone());
+                        return super.getOrPut(equivClassElt, newStateID);
+                    }
+                };
+                OTFDeterminization.doOTF(automaton.powersetView(), automaton.getInputAlphabet(), MAX_THRESHOLD,
+                    registry);
+                stats.replay(registry.acf, lookups);
+            }
+            final long nonSubsets = stats.tests - stats.subsets;
+            System.out.println("Signature prefilter (" + size + " NFA states): " + stats.rejections
+                + " of " + nonSubsets + " non-subsets rejected ("
+                + (nonSubsets == 0 ? 0 : 100 * stats.rejections / nonSubsets) + "%), "
+                + stats.tests + " tests");
+            Assertions.assertTrue(stats.tests > 0);
+            Assertions.assertTrue(stats.rejections <= nonSubsets);
+        }
+    }
+
+    /**
+     * CCL with each subset index for AC elements and AC unions, on the metastates the OTF loop actually produces.
+     */
+    @Test
+    void testSubsetIndexes() {
+        for (int size : new int[]{30, 80}) {
+            final StringBuilder report = new StringBuilder("Subset index (" + size + " NFA states):");
+            int[] expectedSizes = null;
+            for (SubsetIndex.Kind kind : SubsetIndex.Kind.values()) {
+                long nanos = 0;
+                final int[] sizes = new int[50];
+                for (int round = 0; round < 2; round++) { // the first round warms up
+                    final long start = System.nanoTime();
+                    for (int randomSeed = 0; randomSeed < sizes.length; randomSeed++) {
+                        final CompactNFA<Integer> automaton =
+                            TabakovVardiRandomNFA.getRandomTrimAutomaton(randomSeed, size, CompactNFA::new);
+                        final Alphabet<Integer> alphabet = automaton.getInputAlphabet();
+                        final AntichainForestRegistry<Integer> registry = new AntichainForestRegistry<>(automaton);
+                        registry.acf.setSubsetIndex(kind);
+                        final DFA<?, Integer> det =
+                            OTFDeterminization.doOTF(automaton.powersetView(), alphabet, MAX_THRESHOLD, registry);
+                        sizes[randomSeed] = HopcroftMinimizer.minimizeDFA(det, alphabet).size();
+                    }
+                    nanos = System.nanoTime() - start;
+                }
+                report.append(' ').append(kind).append(' ').append(nanos / 1_000_000).append(" ms");
+                if (expectedSizes == null) {
+                    expectedSizes = sizes;
+                } else {
+                    Assertions.assertArrayEquals(expectedSizes, sizes);
+                }
+            }
+            System.out.println(report);
+        }
+    }
 }
@@ -5,7 +5,9 @@ import OTF.SmartBitSet;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Random;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
@@ -75,6 +77,47 @@ public class ACEltsTest {
     Assertions.assertTrue(acElts.properSubsetExists(BitSetUtils.convertListToSmartBitSet(List.of(1,2,3,4))));
   }
 
+  @Test
+  void testCardinalityBuckets() {
+    final Random random = new Random(7);
+    for (int round = 0; round < 50; round++) {
+      final int nNFA = 12;
+      ACElts acElts = new ACElts(randomSet(random, nNFA));
+      final List<SmartBitSet> unified = new ArrayList<>();
+      for (int i = 0; i < 30 && acElts.subsetIndex == null; i++) {
+        final SmartBitSet b = randomSet(random, nNFA);
+        unified.add(b);
+        acElts.unifyEltIntoAC(b, nNFA, 1);
+
+        // ascending cardinality, and an antichain
+        for (int j = 1; j < acElts.elts.size(); j++) {
+          Assertions.assertTrue(acElts.elts.get(j - 1).cardinality() <= acElts.elts.get(j).cardinality());
+        }
+        for (SmartBitSet x : acElts.elts) {
+          for (SmartBitSet y : acElts.elts) {
+            Assertions.assertTrue(x == y || !x.isSubset(y));
+          }
+        }
+        // each unified set contains an element
+        for (SmartBitSet u : unified) {
+          Assertions.assertTrue(acElts.elts.stream().anyMatch(x -> x.isSubset(u)));
+        }
+        final int minCard = acElts.elts.get(0).cardinality();
+        Assertions.assertTrue(acElts.minCardinality(minCard));
+        Assertions.assertFalse(acElts.minCardinality(minCard - 1));
+      }
+    }
+  }
+
+  private static SmartBitSet randomSet(Random random, int nNFA) {
+    final SmartBitSet b = new SmartBitSet();
+    final int size = 1 + random.nextInt(5);
+    for (int i = 0; i < size; i++) {
+      b.set(random.nextInt(nNFA));
+    }
+    return b;
+  }
+
   @Test
   void testActivateInvertedIndex() {
     // All BitSets with up to six bits
@@ -117,6 +160,58 @@ public class ACEltsTest {
     acElts.clear();
   }
 
+  @Test
+  void testPrepareIndexedForConcurrentSearch() {
+    // Indexed, with dead elements, and unsorted
+    ACElts acElts = new ACElts(BitSetUtils.convertListToSmartBitSet(List.of(0, 20)));
+    int nNFA = 100;
+    for (int i = 1; i < 64; i++) {
+      acElts.unifyEltIntoAC(BitSetUtils.convertListToSmartBitSet(List.of(i % 2, 20 + i, 90 - i % 7)), nNFA, 64);
+    }
+    acElts.unifyEltIntoAC(BitSetUtils.convertListToSmartBitSet(List.of(1)), nNFA, 1);
+    acElts.unifyEltIntoAC(BitSetUtils.convertListToSmartBitSet(List.of(2, 3, 4, 5, 6)), nNFA, 1);
+    final List<SmartBitSet> liveElts = acElts.getLiveElts();
+
+    acElts.prepareForConcurrentSearch();
+    for (SmartBitSet elt : liveElts) {
+      SmartBitSet b = (SmartBitSet) elt.clone();
+      b.set(99);
+      Assertions.assertTrue(acElts.properSubsetExists(b, new SmartBitSet()));
+    }
+  }
+
+  @Test
+  void testCompactDeadElts() {
+    for (SubsetIndex.Kind kind : SubsetIndex.Kind.values()) {
+      // 128 incomparable elements: {i % 2, 10 + i}
+      int nNFA = 200;
+      ACElts acElts = new ACElts(BitSetUtils.convertListToSmartBitSet(List.of(0, 10)), kind);
+      for (int i = 1; i < 128; i++) {
+        acElts.unifyEltIntoAC(BitSetUtils.convertListToSmartBitSet(List.of(i % 2, 10 + i)), nNFA, 128);
+      }
+      // {1} kills the 64 odd ones (one of them is replaced), and compaction starts
+      acElts.unifyEltIntoAC(BitSetUtils.convertListToSmartBitSet(List.of(1)), nNFA, 1);
+      Assertions.assertEquals(65, acElts.getEltsSize());
+      Assertions.assertTrue(acElts.elts.size() < 128);
+
+      // each further unify compacts a few more; afterwards, there are no dead elements left
+      for (int i = 0; i < 20; i++) {
+        acElts.unifyEltIntoAC(BitSetUtils.convertListToSmartBitSet(List.of(2, 150 + i)), nNFA, 1);
+      }
+      Assertions.assertEquals(85, acElts.getEltsSize());
+      Assertions.assertEquals(85, acElts.elts.size());
+
+      // and the index still finds every element
+      for (SmartBitSet elt : acElts.getLiveElts()) {
+        SmartBitSet b = (SmartBitSet) elt.clone();
+        b.set(199);
+        Assertions.assertTrue(acElts.properSubsetExists(b));
+      }
+      Assertions.assertFalse(acElts.properSubsetExists(BitSetUtils.convertListToSmartBitSet(List.of(0, 11))));
+      Assertions.assertTrue(acElts.properSubsetExists(BitSetUtils.convertListToSmartBitSet(List.of(0, 12, 13))));
+    }
+  }
+
   @Test
   void testRebuildInvertedIndex() {
     // the bound for deadElts to rebuild is quite large
@@ -5,6 +5,7 @@ import OTF.SmartBitSet;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
 import java.util.List;
 
 class ACPlusTest {
@@ -31,4 +32,74 @@ class ACPlusTest {
 
     Assertions.assertEquals(b, acPlus.acUnion);*/
   }
+
+  @Test
+  void testConcurrentHits() throws InterruptedException {
+    // hits counted by concurrent finds, also while compress decays them, are not lost
+    ACPlus acPlus = new ACPlus(1, BitSetUtils.convertListToSmartBitSet(List.of(1, 2, 3)));
+    final int threads = 4;
+    final int hitsPerThread = 100000;
+    List<Thread> workers = new ArrayList<>();
+    for (int t = 0; t < threads; t++) {
+      workers.add(new Thread(() -> {
+        for (int i = 0; i < hitsPerThread; i++) {
+          acPlus.hit();
+        }
+      }));
+    }
+    workers.forEach(Thread::start);
+    for (Thread worker : workers) {
+      worker.join();
+    }
+    acPlus.determineSearchableByHits();
+    Assertions.assertEquals(threads * hitsPerThread, acPlus.getRecentHits());
+
+    // decays interleaved with hits: every hit is counted, and halved at most once per decay
+    workers.clear();
+    for (int t = 0; t < threads; t++) {
+      workers.add(new Thread(() -> {
+        for (int i = 0; i < hitsPerThread; i++) {
+          acPlus.hit();
+        }
+      }));
+    }
+    final int before = acPlus.getRecentHits();
+    workers.forEach(Thread::start);
+    acPlus.decayHits();
+    for (Thread worker : workers) {
+      worker.join();
+    }
+    acPlus.determineSearchableByHits();
+    Assertions.assertTrue(acPlus.getRecentHits() >= threads * hitsPerThread / 2 + before / 2);
+    Assertions.assertTrue(acPlus.getRecentHits() <= threads * hitsPerThread + before / 2);
+  }
+
+  @Test
+  void testSearchableByHits() {
+    ACPlus acPlus = new ACPlus(1, BitSetUtils.convertListToSmartBitSet(List.of(1, 2, 3)));
+    acPlus.searchable = true;
+    for (int i = 0; i < ACPlus.MAX_IDLE_COMPRESSES - 1; i++) {
+      acPlus.determineSearchableByHits();
+      acPlus.decayHits();
+    }
+    acPlus.hit(); // a hit resets the idle passes
+    acPlus.determineSearchableByHits();
+    acPlus.decayHits();
+    for (int i = 0; i < ACPlus.MAX_IDLE_COMPRESSES; i++) {
+      Assertions.assertTrue(acPlus.searchable);
+      acPlus.determineSearchableByHits();
+      acPlus.decayHits();
+    }
+    Assertions.assertFalse(acPlus.searchable);
+
+    // demoted: the size heuristics don't promote it again, but missed hits do
+    for (int i = 2; i < 2 + ACPlus.MIN_AC_SEARCHABLE; i++) {
+      acPlus.acElts.unifyEltIntoAC(BitSetUtils.convertListToSmartBitSet(List.of(i * 4, i * 4 + 1)), 64, 8);
+    }
+    acPlus.determineSearchable();
+    Assertions.assertFalse(acPlus.searchable);
+    acPlus.missedHits = ACPlus.MIN_MISSED_HITS_SEARCHABLE;
+    acPlus.determineSearchableByHits();
+    Assertions.assertTrue(acPlus.searchable);
+  }
 }
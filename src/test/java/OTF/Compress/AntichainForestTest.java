@@ -8,9 +8,16 @@ import net.automatalib.automaton.fsa.impl.CompactNFA;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.BitSet;
 import java.util.List;
+import java.util.Random;
 
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
@@ -28,6 +35,35 @@ public class AntichainForestTest {
       Assertions.assertEquals(Registry.MISSING_ELEMENT, acf.get(new BitSet()));
     }
 
+    @Test
+    void testCorruptCheckpoint() throws IOException {
+      CompactNFA<Integer> nfa = new CompactNFA<>(Alphabets.integers(0, 1));
+      for (int i = 0; i < 4; i++) {
+        nfa.addState(false);
+      }
+      // no singles, one AC without elements
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      DataOutputStream out = new DataOutputStream(bytes);
+      out.writeInt(4); // nNFA
+      out.writeInt(0); // intermediate counts
+      out.writeInt(0);
+      out.writeInt(0); // singles
+      out.writeInt(1); // ACs
+      out.writeInt(7); // state ID
+      out.writeBoolean(true);
+      out.writeInt(1); // union
+      out.writeLong(3L);
+      out.writeInt(0); // elements
+      AntichainForest acf = new AntichainForest(nfa, new BitSet[0]);
+      assertThrows(IOException.class,
+          () -> acf.readCheckpoint(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()))));
+
+      // truncated
+      AntichainForest acf2 = new AntichainForest(nfa, new BitSet[0]);
+      assertThrows(IOException.class,
+          () -> acf2.readCheckpoint(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray(), 0, 10))));
+    }
+
     @Test
     void testPruneSaturate() {
       BitSet[] simSupersets = new BitSet[4];
@@ -137,4 +173,144 @@ public class AntichainForestTest {
       Assertions.assertNull(acf.acG.searchableACsList[0]);
       Assertions.assertEquals(0, acf.acG.searchableACsUnions.size());*/
     }
+
+    @Test
+    void testParallelFind() {
+      final int nNFA = 64;
+      CompactNFA<Integer> nfa = new CompactNFA<>(Alphabets.integers(0, 1));
+      for (int i = 0; i < nNFA; i++) {
+        nfa.addState(true);
+      }
+      AntichainForest acf = new AntichainForest(nfa, new BitSet[0]);
+      final Random random = new Random(42);
+      for (int c = 0; c < 100; c++) {
+        final BitSet secondaries = new BitSet();
+        for (int k = 0; k < 8; k++) {
+          final BitSet elt = new BitSet();
+          elt.set(c % nNFA);
+          while (elt.cardinality() < 4) {
+            elt.set(random.nextInt(nNFA));
+          }
+          acf.put(elt, c * 8 + k);
+          if (k > 0) {
+            secondaries.set(c * 8 + k);
+          }
+        }
+        acf.unify(c * 8, secondaries);
+      }
+      acf.compress();
+
+      final List<SmartBitSet> queries = new ArrayList<>();
+      for (int q = 0; q < 2000; q++) {
+        final BitSet query = new BitSet();
+        while (query.cardinality() < 6 + q % 8) {
+          query.set(random.nextInt(nNFA));
+        }
+        queries.add(SmartBitSet.valueOf(query.toLongArray()));
+      }
+      final int[] serial = new int[queries.size()];
+      for (int q = 0; q < queries.size(); q++) {
+        serial[q] = acf.find(queries.get(q));
+      }
+      Assertions.assertTrue(Arrays.stream(serial).anyMatch(s -> s != Registry.MISSING_ELEMENT));
+
+      // the parallel search returns the AC the serial one does
+      acf.setParallelFindThreshold(1);
+      for (int q = 0; q < queries.size(); q++) {
+        Assertions.assertEquals(serial[q], acf.find(queries.get(q)));
+      }
+      Assertions.assertTrue(acf.parallelFinds > 0);
+      assertThrows(IllegalArgumentException.class, () -> acf.setParallelFindThreshold(-1));
+    }
+
+    @Test
+    void testIncrementalCompress() throws IOException {
+      // rounds of new classes and merges; the forest compressed after every round is updated incrementally
+      final int[][] rounds = {{0, 50, 0}, {50, 100, 5}, {100, 100, 35}};
+      final int nNFA = 64;
+      final AntichainForest incremental = incrementalForest(nNFA);
+      for (int r = 0; r < rounds.length; r++) {
+        addRound(incremental, nNFA, rounds[r]);
+        incremental.compress();
+        Assertions.assertEquals(r < 2 ? 1 : 2, incremental.searchIndexRebuilds); // 35 of 100 tombstoned is too many
+        Assertions.assertEquals(countACElts(incremental), incremental.getACEltCount());
+
+        final AntichainForest rebuilt = incrementalForest(nNFA);
+        for (int q = 0; q <= r; q++) {
+          addRound(rebuilt, nNFA, rounds[q]);
+        }
+        rebuilt.compress();
+        Assertions.assertEquals(1, rebuilt.searchIndexRebuilds);
+
+        final Random random = new Random(r);
+        int hits = 0;
+        for (int q = 0; q < 2000; q++) {
+          final BitSet query = new BitSet();
+          while (query.cardinality() < 6 + q % 8) {
+            query.set(random.nextInt(nNFA));
+          }
+          final SmartBitSet elt = SmartBitSet.valueOf(query.toLongArray());
+          final boolean hit = incremental.find(elt) != Registry.MISSING_ELEMENT;
+          Assertions.assertEquals(rebuilt.find(elt) != Registry.MISSING_ELEMENT, hit);
+          hits += hit ? 1 : 0;
+        }
+        Assertions.assertTrue(hits > 0);
+      }
+
+      // the running count survives a checkpoint
+      final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      incremental.writeCheckpoint(new DataOutputStream(bytes));
+      final AntichainForest restored = incrementalForest(nNFA);
+      restored.readCheckpoint(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+      Assertions.assertEquals(incremental.getACEltCount(), restored.getACEltCount());
+      Assertions.assertEquals(incremental.estimatedBytes(), restored.estimatedBytes());
+    }
+
+    private static long countACElts(AntichainForest acf) {
+      long elts = 0;
+      for (ACPlus acPlus : acf.acG.getAllACs()) {
+        elts += acPlus.acElts.getEltsSize();
+      }
+      return elts;
+    }
+
+    private static AntichainForest incrementalForest(int nNFA) {
+      CompactNFA<Integer> nfa = new CompactNFA<>(Alphabets.integers(0, 1));
+      for (int i = 0; i < nNFA; i++) {
+        nfa.addState(true);
+      }
+      return new AntichainForest(nfa, new BitSet[0]);
+    }
+
+    /**
+     * Add classes round[0] to round[1] - 1 of 8 elements each, then merge classes (i, i + 1) for the first round[2]
+     * even i not merged yet.
+     */
+    private static void addRound(AntichainForest acf, int nNFA, int[] round) {
+      for (int c = round[0]; c < round[1]; c++) {
+        final Random random = new Random(c);
+        final BitSet secondaries = new BitSet();
+        for (int k = 0; k < 8; k++) {
+          final BitSet elt = new BitSet();
+          elt.set(c % nNFA);
+          while (elt.cardinality() < 4) {
+            elt.set(random.nextInt(nNFA));
+          }
+          acf.put(elt, c * 8 + k);
+          if (k > 0) {
+            secondaries.set(c * 8 + k);
+          }
+        }
+        acf.unify(c * 8, secondaries);
+      }
+      int merges = 0;
+      for (int c = 0; merges < round[2]; c += 2) {
+        if (acf.acG.stateIdToAC.get(c * 8) != acf.acG.stateIdToAC.get(c * 8 + 8)) {
+          final BitSet secondary = new BitSet();
+          secondary.set(c * 8 + 8);
+          acf.unify(c * 8, secondary);
+          merges++;
+        }
+      }
+    }
 }
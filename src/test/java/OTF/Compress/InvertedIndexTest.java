@@ -7,6 +7,7 @@ import org.junit.jupiter.api.Test;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Random;
 
 import static OTF.BitSetUtils.convertListToSmartBitSet;
 
@@ -17,19 +18,19 @@ public class InvertedIndexTest {
     List<SmartBitSet> inputSet = inputSet();
     InvertedIndex st = new InvertedIndex(10, inputSet);
     Assertions.assertEquals(inputSet.size(), st.maxElts);
-    Assertions.assertEquals(10, st.inverted.length);
+    Assertions.assertEquals(10, st.slots.length);
 
     SmartBitSet b = convertListToSmartBitSet(List.of(2, 3, 5, 6));
-    Assertions.assertEquals(b, st.inverted[3]);
+    Assertions.assertEquals(b, st.column(3));
 
     st.overwrite(b, 3);
-    Assertions.assertEquals(b, st.inverted[3]);
+    Assertions.assertEquals(b, st.column(3));
 
     st.overwrite(new SmartBitSet(), 3);
-    Assertions.assertEquals(convertListToSmartBitSet(List.of(2, 5, 6)), st.inverted[3]);
+    Assertions.assertEquals(convertListToSmartBitSet(List.of(2, 5, 6)), st.column(3));
 
     st.clear();
-    Assertions.assertNull(st.inverted);
+    Assertions.assertNull(st.matrix);
   }
 
   @Test
@@ -165,6 +166,105 @@ public class InvertedIndexTest {
     Assertions.assertTrue(findSupersets(st, inputSet, deadElts, testSet.get(8)).contains(inputSet.get(7)));
   }
 
+  @Test
+  void testPlannedQueries() {
+    // Enough elements for columns to be ordered by population; skewed, so that the order differs from bit order
+    final int nNFA = 40;
+    final Random random = new Random(3);
+    final List<SmartBitSet> elts = new ArrayList<>();
+    for (int i = 0; i < 400; i++) {
+      elts.add(skewedSet(random, nNFA));
+    }
+    InvertedIndex st = new InvertedIndex(nNFA, elts);
+    final SmartBitSet deadElts = new SmartBitSet();
+    for (int k = 0; k < 60; k++) {
+      final int j = random.nextInt(elts.size());
+      final SmartBitSet b = skewedSet(random, nNFA);
+      if (k % 3 == 0) {
+        st.overwrite(b, elts.get(j), j);
+      } else if (k % 3 == 1) {
+        st.overwrite(b, j);
+      } else {
+        b.or(elts.get(j));
+        st.or(b, j);
+      }
+      elts.set(j, b);
+      deadElts.set(random.nextInt(elts.size()));
+    }
+    st = new InvertedIndex(st); // counts survive copying
+    for (int k = 0; k < nNFA; k++) {
+      Assertions.assertEquals(st.column(k) == null ? 0 : st.column(k).cardinality(), st.columnCounts[k]);
+    }
+
+    for (int q = 0; q < 300; q++) {
+      final SmartBitSet b = q % 2 == 0 ? skewedSet(random, nNFA) : randomSet(random, nNFA, 8 + random.nextInt(16));
+      SmartBitSet firstSubset = null;
+      final SmartBitSet supersets = new SmartBitSet();
+      for (int j = 0; j < elts.size(); j++) {
+        if (!deadElts.get(j)) {
+          if (firstSubset == null && elts.get(j).isSubset(b)) {
+            firstSubset = elts.get(j);
+          }
+          if (b.isSubset(elts.get(j))) {
+            supersets.set(j);
+          }
+        }
+      }
+      Assertions.assertSame(firstSubset, st.findFirstSubset(elts, deadElts, b));
+      Assertions.assertEquals(supersets, st.findSupersetIndices(elts, deadElts, b, false));
+    }
+  }
+
+  @Test
+  void testPackedColumns() {
+    // Grow one element at a time from empty, so that slots and the stride are added in several steps
+    final int nNFA = 70;
+    final Random random = new Random(5);
+    final List<SmartBitSet> elts = new ArrayList<>();
+    final InvertedIndex st = new InvertedIndex(nNFA, elts);
+    for (int i = 0; i < 300; i++) {
+      final SmartBitSet b = randomSet(random, i < 100 ? nNFA / 2 : nNFA, 1 + random.nextInt(10));
+      elts.add(b);
+      st.insert(b, elts.size());
+      if (i % 7 == 0) {
+        final int j = random.nextInt(elts.size());
+        final SmartBitSet c = randomSet(random, nNFA, 1 + random.nextInt(10));
+        st.overwrite(c, elts.get(j), j);
+        elts.set(j, c);
+      }
+    }
+    for (InvertedIndex index : List.of(st, new InvertedIndex(st))) {
+      for (int k = 0; k < nNFA; k++) {
+        final SmartBitSet column = new SmartBitSet();
+        for (int j = 0; j < elts.size(); j++) {
+          if (elts.get(j).get(k)) {
+            column.set(j);
+          }
+        }
+        Assertions.assertEquals(column, index.column(k) == null ? new SmartBitSet() : index.column(k));
+      }
+    }
+  }
+
+  // Low states are common, high states rare
+  private static SmartBitSet skewedSet(Random random, int nNFA) {
+    final SmartBitSet b = new SmartBitSet();
+    for (int k = 0; k < nNFA; k++) {
+      if (random.nextInt(nNFA) >= k + 2 * random.nextInt(4)) {
+        b.set(k);
+      }
+    }
+    return b;
+  }
+
+  private static SmartBitSet randomSet(Random random, int nNFA, int size) {
+    final SmartBitSet b = new SmartBitSet();
+    for (int i = 0; i < size; i++) {
+      b.set(random.nextInt(nNFA));
+    }
+    return b;
+  }
+
   @Test
   void testString() {
     List<SmartBitSet> inputSet = inputSet();
@@ -0,0 +1,169 @@
+package OTF.Compress;
+
+import OTF.Registry.Registry;
+import OTF.SmartBitSet;
+import net.automatalib.alphabet.impl.Alphabets;
+import net.automatalib.automaton.fsa.impl.CompactNFA;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import static OTF.BitSetUtils.convertListToSmartBitSet;
+
+public class SetTrieTest {
+  private static final int N = 40;
+
+  @Test
+  void testQueries() {
+    SetTrie st = new SetTrie(List.of(
+        convertListToSmartBitSet(List.of(1, 2)),
+        convertListToSmartBitSet(List.of(2, 5, 7)),
+        convertListToSmartBitSet(List.of(1, 3, 5))));
+    List<SmartBitSet> elts = new ArrayList<>(List.of(
+        convertListToSmartBitSet(List.of(1, 2)),
+        convertListToSmartBitSet(List.of(2, 5, 7)),
+        convertListToSmartBitSet(List.of(1, 3, 5))));
+    SmartBitSet empty = new SmartBitSet();
+    Assertions.assertEquals(3, st.size());
+
+    Assertions.assertEquals(elts.get(0), st.findFirstSubset(elts, empty, convertListToSmartBitSet(List.of(1, 2, 3))));
+    Assertions.assertNull(st.findFirstSubset(elts, empty, convertListToSmartBitSet(List.of(1, 5, 7))));
+    Assertions.assertEquals(convertListToSmartBitSet(List.of(0, 2)),
+        st.findSupersetIndices(elts, empty, convertListToSmartBitSet(List.of(1)), false));
+    Assertions.assertEquals(convertListToSmartBitSet(List.of(0, 1, 2)),
+        st.findSupersetIndices(elts, empty, empty, false));
+    Assertions.assertEquals(convertListToSmartBitSet(List.of(2)),
+        st.findSupersetIndices(elts, convertListToSmartBitSet(List.of(0)), convertListToSmartBitSet(List.of(1)), false));
+
+    st.overwrite(convertListToSmartBitSet(List.of(5)), elts.get(1), 1);
+    elts.set(1, convertListToSmartBitSet(List.of(5)));
+    Assertions.assertEquals(elts.get(1), st.findFirstSubset(elts, empty, convertListToSmartBitSet(List.of(1, 5, 7))));
+    Assertions.assertEquals(convertListToSmartBitSet(List.of(1, 2)),
+        st.findSupersetIndices(elts, empty, convertListToSmartBitSet(List.of(5)), false));
+
+    st.clear();
+    Assertions.assertEquals(0, st.size());
+    Assertions.assertNull(st.findFirstSubset(elts, empty, convertListToSmartBitSet(List.of(1, 2, 3))));
+  }
+
+  @Test
+  void testAgainstScan() {
+    final Random random = new Random(1);
+    final List<SmartBitSet> elts = new ArrayList<>();
+    for (int i = 0; i < 300; i++) {
+      elts.add(randomSet(random, 1 + random.nextInt(6)));
+    }
+    final SetTrie st = new SetTrie(elts);
+    final SmartBitSet deadElts = new SmartBitSet();
+    for (int round = 0; round < 5; round++) {
+      // overwrite, grow, and kill some elements
+      for (int k = 0; k < 30; k++) {
+        final int j = random.nextInt(elts.size());
+        final SmartBitSet b = randomSet(random, 1 + random.nextInt(6));
+        if (k % 2 == 0) {
+          st.overwrite(b, elts.get(j), j);
+        } else {
+          b.or(elts.get(j));
+          st.or(b, j);
+        }
+        elts.set(j, b);
+        deadElts.set(random.nextInt(elts.size()));
+      }
+      final SubsetIndex copy = st.copy();
+      for (int q = 0; q < 300; q++) {
+        final SmartBitSet b = randomSet(random, random.nextInt(round % 2 == 0 ? 4 : 16));
+        for (SubsetIndex index : List.of(st, copy)) {
+          final SmartBitSet found = index.findFirstSubset(elts, deadElts, b, new SmartBitSet());
+          final SmartBitSet supersets = new SmartBitSet();
+          boolean subsetExists = false;
+          for (int j = 0; j < elts.size(); j++) {
+            if (!deadElts.get(j)) {
+              subsetExists |= elts.get(j).isSubset(b);
+              if (b.isSubset(elts.get(j))) {
+                supersets.set(j);
+              }
+            }
+          }
+          Assertions.assertEquals(subsetExists, found != null);
+          if (found != null) {
+            Assertions.assertTrue(found.isSubset(b));
+          }
+          Assertions.assertEquals(supersets, index.findSupersetIndices(elts, deadElts, b, true, new SmartBitSet()));
+        }
+      }
+    }
+  }
+
+  @Test
+  void testACElts() {
+    // the same unifications give the same antichain with either index
+    final Random random = new Random(2);
+    final SmartBitSet first = randomSet(random, 8);
+    final ACElts inverted = new ACElts(first, SubsetIndex.Kind.INVERTED);
+    final ACElts setTrie = new ACElts(first, SubsetIndex.Kind.SET_TRIE);
+    for (int i = 0; i < 2000; i++) {
+      final SmartBitSet b = randomSet(random, 4 + random.nextInt(6));
+      Assertions.assertEquals(inverted.properSubsetExists(b), setTrie.properSubsetExists(b));
+      inverted.unifyEltIntoAC(b, N, 64);
+      setTrie.unifyEltIntoAC(b, N, 64);
+      Assertions.assertEquals(inverted.getEltsSize(), setTrie.getEltsSize());
+    }
+    Assertions.assertInstanceOf(SetTrie.class, setTrie.subsetIndex);
+    Assertions.assertEquals(new HashSet<>(inverted.getLiveElts()), new HashSet<>(setTrie.getLiveElts()));
+  }
+
+  @Test
+  void testForest() {
+    // a forest indexing ACs and their unions with set tries finds the same classes as with inverted indexes
+    final CompactNFA<Integer> nfa = new CompactNFA<>(Alphabets.integers(0, 1));
+    for (int i = 0; i < N; i++) {
+      nfa.addState(true);
+    }
+    final AntichainForest inverted = new AntichainForest(nfa, new BitSet[0]);
+    final AntichainForest setTrie = new AntichainForest(nfa, new BitSet[0]);
+    setTrie.setSubsetIndex(SubsetIndex.Kind.SET_TRIE);
+    final Random random = new Random(3);
+    for (int c = 0; c < 60; c++) {
+      final BitSet secondaries = new BitSet();
+      for (int k = 0; k < 1 + c % 40; k++) { // some ACs large enough for an element index
+        final BitSet elt = new BitSet();
+        elt.set(c % N);
+        while (elt.cardinality() < 4) {
+          elt.set(random.nextInt(N));
+        }
+        inverted.put(elt, c * 64 + k);
+        setTrie.put(elt, c * 64 + k);
+        if (k > 0) {
+          secondaries.set(c * 64 + k);
+        }
+      }
+      inverted.unify(c * 64, secondaries);
+      setTrie.unify(c * 64, secondaries);
+    }
+    inverted.compress();
+    setTrie.compress();
+    Assertions.assertInstanceOf(SetTrie.class, setTrie.acG.searchIndex.subsetIndex());
+
+    int hits = 0;
+    for (int q = 0; q < 2000; q++) {
+      final SmartBitSet query = randomSet(random, 6 + q % 8);
+      final int state = inverted.find(query);
+      Assertions.assertEquals(state, setTrie.find(query));
+      hits += state == Registry.MISSING_ELEMENT ? 0 : 1;
+    }
+    Assertions.assertTrue(hits > 0);
+  }
+
+  private static SmartBitSet randomSet(Random random, int cardinality) {
+    final SmartBitSet b = new SmartBitSet();
+    while (b.cardinality() < cardinality) {
+      b.set(random.nextInt(N));
+    }
+    return b;
+  }
+}
@@ -0,0 +1,55 @@
+package OTF.Compress;
+
+import OTF.SmartBitSet;
+
+import java.util.BitSet;
+import java.util.Collection;
+
+/**
+ * Subset tests of the antichain forest's search path, replayed to measure the signature prefilter of
+ * SmartBitSet.isSubsetBySignature without instrumenting it: signature() and isSubset() are called separately.
+ */
+public final class SignatureStats {
+  public long tests = 0; // subset tests
+  public long rejections = 0; // tests answered by the signatures alone
+  public long subsets = 0; // tests that found a subset
+
+  /**
+   * Test each query as find() does (without simulations): against the AC unions the forest's search index returns
+   * for it, and for unions that contain it, the smaller elements of the AC, until an element is a subset.
+   */
+  public void replay(AntichainForest acf, Collection<BitSet> queries) {
+    final ACGlobals.SearchIndex index = acf.acG.searchIndex;
+    final SmartBitSet temp = new SmartBitSet();
+    for (BitSet q : queries) {
+      final SmartBitSet query = SmartBitSet.valueOf(q.toLongArray());
+      final SmartBitSet candidates = index.subsetIndex().findSupersetIndices(
+          index.unions(), index.deadSlots(), query, true, temp);
+      boolean found = false;
+      for (int i = candidates.nextSetBit(0); i >= 0 && !found; i = candidates.nextSetBit(i + 1)) {
+        if (!test(query, index.unions().get(i))) {
+          continue;
+        }
+        for (SmartBitSet elt : index.acs()[i].acElts.getLiveElts()) {
+          if (elt.cardinality() < query.cardinality() && test(elt, query)) {
+            found = true;
+            break;
+          }
+        }
+      }
+    }
+  }
+
+  private boolean test(SmartBitSet sub, SmartBitSet sup) {
+    tests++;
+    if ((sub.signature() & ~sup.signature()) != 0L) {
+      rejections++;
+      return false;
+    }
+    if (sub.isSubset(sup)) {
+      subsets++;
+      return true;
+    }
+    return false;
+  }
+}
@@ -0,0 +1,80 @@
+package OTF;
+
+import OTF.Registry.NoOpRegistry;
+import OTF.Registry.Registry;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import net.automatalib.alphabet.Alphabet;
+import net.automatalib.alphabet.impl.Alphabets;
+import net.automatalib.automaton.fsa.impl.CompactDFA;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.BitSet;
+
+class IncrementalMinimizerTest {
+  @Test
+  void testIncrementalPass() {
+    final Alphabet<Integer> alphabet = Alphabets.integers(0, 1);
+    final CompactDFA<Integer> dfa = new CompactDFA<>(alphabet);
+    final BitSet finishedStates = new BitSet();
+    final IntArrayList stateBuffer = new IntArrayList();
+    final Registry registry = new NoOpRegistry();
+    final IncrementalMinimizer minimizer = new IncrementalMinimizer();
+
+    // 0 is unfinished; 1 and 2 are closed duplicates (accepting, 0 to itself, 1 to 3 or 4),
+    // and so are 3 and 4 (non-accepting, back to 1 or 2)
+    for (int q = 0; q < 5; q++) {
+      dfa.addState(q == 1 || q == 2);
+    }
+    dfa.setInitial(0, true);
+    dfa.setTransition(0, 0, 1);
+    dfa.setTransition(0, 1, 2);
+    for (int q = 1; q <= 2; q++) {
+      dfa.setTransition(q, 0, q);
+      dfa.setTransition(q, 1, q + 2);
+      dfa.setTransition(q + 2, 0, q);
+      dfa.setTransition(q + 2, 1, q);
+      finishedStates.set(q);
+      finishedStates.set(q + 2);
+    }
+
+    // the first pass is full, and merges the duplicates
+    Assertions.assertTrue(minimizer.minimize(alphabet, dfa, finishedStates, stateBuffer, registry));
+    Assertions.assertTrue(minimizer.isLastPassFull());
+    Assertions.assertEquals(1, minimizer.getFullPasses());
+    final int accepting = dfa.getSuccessor(0, 0);
+    Assertions.assertEquals(accepting, dfa.getSuccessor(0, 1));
+    final int other = dfa.getSuccessor(accepting, 1);
+    Assertions.assertNotEquals(accepting, other);
+    Assertions.assertEquals(2, stateBuffer.size());
+    Assertions.assertEquals(2, finishedStates.cardinality());
+
+    // a and b are open (0 to unfinished 0, 1 to accepting), so only the region is refined;
+    // c is a closed duplicate of other, matched by its successors
+    final int a = stateBuffer.popInt();
+    final int b = stateBuffer.popInt();
+    final int c = dfa.addState(false);
+    dfa.setAccepting(a, false);
+    dfa.setAccepting(b, false);
+    for (int q : new int[]{a, b}) {
+      dfa.setTransition(q, 0, 0);
+      dfa.setTransition(q, 1, accepting);
+    }
+    dfa.setTransition(c, 0, accepting);
+    dfa.setTransition(c, 1, accepting);
+    finishedStates.set(a);
+    finishedStates.set(b);
+    finishedStates.set(c);
+
+    Assertions.assertTrue(minimizer.minimize(alphabet, dfa, finishedStates, stateBuffer, registry));
+    Assertions.assertFalse(minimizer.isLastPassFull());
+    Assertions.assertEquals(2, minimizer.getPasses());
+    Assertions.assertEquals(1, minimizer.getFullPasses());
+    Assertions.assertNotEquals(finishedStates.get(a), finishedStates.get(b)); // a and b are one block
+    Assertions.assertFalse(finishedStates.get(c));
+    Assertions.assertEquals(2, stateBuffer.size());
+    Assertions.assertTrue(stateBuffer.contains(c));
+    Assertions.assertTrue(finishedStates.get(accepting));
+    Assertions.assertTrue(finishedStates.get(other));
+  }
+}
@@ -1,6 +1,17 @@
 package OTF.Model;
 
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+
+import net.automatalib.alphabet.Alphabet;
+import net.automatalib.alphabet.impl.Alphabets;
 import net.automatalib.automaton.concept.FiniteRepresentation;
+import net.automatalib.automaton.fsa.impl.CompactNFA;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
@@ -38,4 +49,249 @@ public class ModelTest {
     Assertions.assertTrue(t.test(fR));
     Assertions.assertEquals(1, t.getCrossings());
   }
+
+  @Test
+  void testMemoryPressureThreshold() {
+    final long maxHeap = 1L << 40; // far above actual heap use, so only the attached footprint matters
+    MemoryPressureThreshold t = new MemoryPressureThreshold(64, maxHeap);
+    Assertions.assertEquals("memory", t.getName());
+    Assertions.assertEquals("64", t.getParam());
+    Assertions.assertEquals(64 * MemoryPressureThreshold.MAX_BACKOFF, t.targetCadence(0));
+    Assertions.assertEquals(64, t.targetCadence((MemoryPressureThreshold.LOW_PRESSURE + MemoryPressureThreshold.HIGH_PRESSURE) / 2));
+    Assertions.assertEquals(64 / MemoryPressureThreshold.MAX_BACKOFF, t.targetCadence(1));
+
+    // Footprint close to the heap: minimize much more often
+    t.attach(() -> 1000 * 16L, () -> maxHeap);
+    for (int i = 0; i < 10000; i++) {
+      t.test(null);
+    }
+    Assertions.assertTrue(t.getPressure() > MemoryPressureThreshold.HIGH_PRESSURE);
+    Assertions.assertEquals(64 / MemoryPressureThreshold.MAX_BACKOFF, t.getCadence());
+    final int pressured = t.getCrossings();
+
+    // No footprint: back off
+    t = new MemoryPressureThreshold(64, maxHeap);
+    t.attach(() -> 0, () -> 0);
+    for (int i = 0; i < 10000; i++) {
+      t.test(null);
+    }
+    Assertions.assertEquals(64 * MemoryPressureThreshold.MAX_BACKOFF, t.getCadence());
+    Assertions.assertTrue(t.getCrossings() * 4 < pressured);
+  }
+
+  @Test
+  void testYieldThreshold() {
+    YieldThreshold t = Threshold.yieldPredictive(100);
+    Assertions.assertEquals("yield", t.getName());
+    Assertions.assertEquals("100", t.getParam());
+    Assertions.assertEquals(100, t.getInterval());
+
+    // Synthetic yield peaking at an interval of about 1000: the cadence should climb there and stay near it
+    for (int pass = 0; pass < 40; pass++) {
+      final int interval = t.getInterval();
+      while (!t.test(null)) {
+        // explore
+      }
+      final long removed = 1000L * interval / (1000 + interval * interval / 1000);
+      t.recordPass(10000, (int) (10000 - removed), 1000000000L);
+    }
+    Assertions.assertEquals(40, t.getCrossings());
+    Assertions.assertEquals(40, t.getHistory().size());
+    Assertions.assertTrue(t.getInterval() > 400 && t.getInterval() < 2500, "interval " + t.getInterval());
+
+    final YieldThreshold.Decision first = t.getHistory().get(0);
+    Assertions.assertEquals(1, first.crossing());
+    Assertions.assertEquals(100, first.interval());
+    Assertions.assertEquals(150, first.nextInterval());
+    Assertions.assertEquals(first.sizeBefore() - first.sizeAfter(), first.yield(), 1e-9);
+    Assertions.assertEquals((first.sizeBefore() - first.sizeAfter()) / 10000.0, first.reductionRatio(), 1e-9);
+  }
+
+  @Test
+  void testFrontiers() {
+    final int[] cards = {3, 1, 4, 1, 5};
+    final int[] dfs = popOrder(Frontier.dfs(), cards);
+    Assertions.assertArrayEquals(new int[]{4, 3, 2, 1, 0}, dfs);
+    Assertions.assertArrayEquals(new int[]{0, 1, 2, 3, 4}, popOrder(Frontier.bfs(), cards));
+    Assertions.assertArrayEquals(new int[]{3, 1, 0, 2, 4}, popOrder(Frontier.smallestFirst(), cards));
+    Assertions.assertArrayEquals(new int[]{4, 2, 0, 3, 1}, popOrder(Frontier.largestFirst(), cards));
+    Assertions.assertEquals("largest", Frontier.of("LARGEST").getName());
+    Assertions.assertThrows(IllegalArgumentException.class, () -> Frontier.of("random"));
+
+    // Interleaved pushes and pops
+    final Frontier f = Frontier.smallestFirst();
+    f.push(record(5, 0));
+    f.push(record(2, 1));
+    Assertions.assertEquals(1, f.pop().outputAddress());
+    f.push(record(7, 2));
+    f.push(record(0, 3));
+    Assertions.assertEquals(3, f.size());
+    Assertions.assertEquals(3, f.pop().outputAddress());
+    Assertions.assertEquals(0, f.pop().outputAddress());
+    Assertions.assertEquals(2, f.pop().outputAddress());
+    Assertions.assertTrue(f.isEmpty());
+  }
+
+  @Test
+  void testRecomputingFrontier() {
+    // 3 states; 0 goes to the next state, 1 stays
+    final Alphabet<Integer> alphabet = Alphabets.integers(0, 1);
+    final CompactNFA<Integer> nfa = new CompactNFA<>(alphabet);
+    for (int q = 0; q < 3; q++) {
+      nfa.addState(q == 0);
+    }
+    nfa.setInitial(0, true);
+    for (int q = 0; q < 3; q++) {
+      nfa.addTransition(q, 0, (q + 1) % 3);
+      nfa.addTransition(q, 1, q);
+    }
+    final PowersetKernel<Integer> kernel = new PowersetKernel<>(nfa);
+    for (boolean depthFirst : new boolean[]{true, false}) {
+      final Frontier frontier = Frontier.recomputing(kernel, alphabet, depthFirst);
+      Assertions.assertEquals(depthFirst ? "dfs-recompute" : "bfs-recompute", frontier.getName());
+      frontier.push(record(2, 0));
+      final BitSet parent = new BitSet();
+      parent.set(0);
+      parent.set(1);
+      frontier.push(parent, 0, kernel.getSuccessor(parent, 0), 1);
+      frontier.push(parent, 1, kernel.getSuccessor(parent, 1), 2);
+      parent.clear(); // the OTF loop reuses the parent buffer
+      Assertions.assertEquals(3, frontier.size());
+      // the shared parent copy is pinned until both children are popped
+      final RecomputingFrontier<Integer> recomputing = (RecomputingFrontier<Integer>) frontier;
+      Assertions.assertEquals(1, recomputing.getPinnedParents());
+      Assertions.assertTrue(frontier.heapBytes(1000) >= 1000);
+
+      // restored from a checkpoint, the frontier pops in the same order
+      final List<DeterminizeRecord<BitSet>> records = new ArrayList<>();
+      frontier.forEach(records::add);
+      final Frontier restored = Frontier.recomputing(kernel, alphabet, depthFirst);
+      restored.pushAll(records);
+
+      final int[] order = depthFirst ? new int[]{2, 1, 0} : new int[]{0, 1, 2};
+      for (int address : order) {
+        final DeterminizeRecord<BitSet> popped = frontier.pop();
+        Assertions.assertEquals(address, popped.outputAddress());
+        Assertions.assertEquals(popped, restored.pop());
+        final BitSet expected = new BitSet();
+        switch (address) {
+          case 0 -> expected.set(0, 2); // record(2, 0)
+          case 1 -> expected.set(1, 3); // {0, 1} on 0
+          default -> expected.set(0, 2); // {0, 1} on 1
+        }
+        Assertions.assertEquals(expected, popped.inputState());
+      }
+      Assertions.assertTrue(frontier.isEmpty());
+      Assertions.assertEquals(0, recomputing.getPinnedParents());
+      Assertions.assertEquals(0, frontier.heapBytes(1000));
+    }
+  }
+
+  @Test
+  void testPackedDequeFrontier() {
+    // Random interleaved pushes and pops, so the rings wrap around and grow; checked against an ArrayDeque
+    final Random random = new Random(11);
+    for (boolean lifo : new boolean[]{true, false}) {
+      final Frontier frontier = lifo ? Frontier.dfs() : Frontier.bfs();
+      final ArrayDeque<DeterminizeRecord<BitSet>> expected = new ArrayDeque<>();
+      final BitSet buffer = new BitSet();
+      for (int step = 0; step < 5000; step++) {
+        if (expected.isEmpty() || random.nextInt(5) < 3) {
+          final BitSet set = new BitSet();
+          for (int i = random.nextInt(8); i > 0; i--) {
+            set.set(random.nextInt(300));
+          }
+          if (random.nextBoolean()) {
+            frontier.push(new DeterminizeRecord<>(set, step));
+          } else {
+            frontier.push(buffer, 0, set, step);
+          }
+          if (lifo) {
+            expected.push(new DeterminizeRecord<>((BitSet) set.clone(), step));
+          } else {
+            expected.addLast(new DeterminizeRecord<>((BitSet) set.clone(), step));
+          }
+          set.clear(); // the frontier keeps a copy
+        } else if (random.nextBoolean()) {
+          final DeterminizeRecord<BitSet> record = expected.pop();
+          Assertions.assertEquals(record.outputAddress(), frontier.pop(buffer));
+          Assertions.assertEquals(record.inputState(), buffer);
+        } else {
+          Assertions.assertEquals(expected.pop(), frontier.pop());
+        }
+        Assertions.assertEquals(expected.size(), frontier.size());
+      }
+      final List<DeterminizeRecord<BitSet>> visited = new ArrayList<>();
+      frontier.forEach(visited::add);
+      Assertions.assertEquals(new ArrayList<>(expected), visited);
+    }
+  }
+
+  private static int[] popOrder(Frontier frontier, int[] cards) {
+    for (int i = 0; i < cards.length; i++) {
+      frontier.push(record(cards[i], i));
+    }
+    final int[] order = new int[cards.length];
+    for (int i = 0; i < cards.length; i++) {
+      order[i] = frontier.pop().outputAddress();
+    }
+    Assertions.assertTrue(frontier.isEmpty());
+    return order;
+  }
+
+  private static DeterminizeRecord<BitSet> record(int cardinality, int address) {
+    final BitSet set = new BitSet();
+    set.set(0, cardinality);
+    return new DeterminizeRecord<>(set, address);
+  }
+
+  @Test
+  void testSpillingFrontier() throws Exception {
+    final Path dir = Files.createTempDirectory("otf-spill-test");
+    final Random random = new Random(7);
+    final ArrayDeque<DeterminizeRecord<BitSet>> expected = new ArrayDeque<>();
+    long spilledTotal;
+    // Small segments, so records span several mapped segments and segments are dropped and re-mapped
+    try (SpillingFrontier f = new SpillingFrontier(8, dir, 256)) {
+      int address = 0;
+      for (int round = 0; round < 200; round++) {
+        final int pushes = random.nextInt(20);
+        for (int i = 0; i < pushes; i++) {
+          final BitSet set = new BitSet();
+          for (int b = 0; b < 40; b++) {
+            set.set(random.nextInt(300));
+          }
+          final DeterminizeRecord<BitSet> r = new DeterminizeRecord<>(set, address++);
+          f.push(r);
+          expected.push(r);
+        }
+        Assertions.assertTrue(f.heapSize() <= 8);
+        Assertions.assertEquals(expected.size(), f.size());
+        Assertions.assertTrue(f.getMappedSegments() <= SpillingFrontier.MAPPED_SEGMENTS + 1);
+        if (round % 10 == 0) {
+          // visits unmapped segments without mapping them
+          final List<Integer> visited = new ArrayList<>();
+          f.forEach(r -> visited.add(r.outputAddress()));
+          Assertions.assertEquals(expected.stream().map(DeterminizeRecord::outputAddress).toList(), visited);
+        }
+        final int pops = random.nextInt(20);
+        for (int i = 0; i < pops && !expected.isEmpty(); i++) {
+          final DeterminizeRecord<BitSet> r = expected.pop();
+          final DeterminizeRecord<BitSet> actual = f.pop();
+          Assertions.assertEquals(r.outputAddress(), actual.outputAddress());
+          Assertions.assertEquals(r.inputState(), actual.inputState());
+        }
+      }
+      while (!expected.isEmpty()) {
+        Assertions.assertEquals(expected.pop().outputAddress(), f.pop().outputAddress());
+      }
+      Assertions.assertTrue(f.isEmpty());
+      spilledTotal = f.getSpilledTotal();
+    }
+    Assertions.assertTrue(spilledTotal > 0);
+    try (var files = Files.list(dir)) {
+      Assertions.assertEquals(0, files.count()); // spill file deleted on close
+    }
+    Files.delete(dir);
+  }
 }
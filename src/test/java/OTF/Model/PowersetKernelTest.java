@@ -0,0 +1,72 @@
+package OTF.Model;
+
+import OTF.TabakovVardiRandomNFA;
+import net.automatalib.automaton.fsa.impl.CompactNFA;
+import net.automatalib.ts.AcceptorPowersetViewTS;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.BitSet;
+import java.util.List;
+
+public class PowersetKernelTest {
+  @Test
+  void testMatchesPowersetView() {
+    for (int seed = 0; seed < 50; seed++) {
+      CompactNFA<Integer> nfa = TabakovVardiRandomNFA.getRandomAutomaton(seed, 70, CompactNFA::new);
+      AcceptorPowersetViewTS<BitSet, Integer, Integer> view = nfa.powersetView();
+      PowersetKernel<Integer> dense = new PowersetKernel<>(nfa);
+      PowersetKernel<Integer> sparse = new PowersetKernel<>(nfa, 0);
+      Assertions.assertTrue(dense.isDense());
+      Assertions.assertFalse(sparse.isDense());
+      Assertions.assertEquals(view.getInitialState(), dense.getInitialState());
+
+      // walk a few metastates and compare successors and acceptance
+      BitSet state = view.getInitialState();
+      for (int step = 0; step < 20 && !state.isEmpty(); step++) {
+        Assertions.assertEquals(view.isAccepting(state), dense.isAccepting(state));
+        Assertions.assertEquals(view.isAccepting(state), sparse.isAccepting(state));
+        BitSet next = null;
+        for (Integer i : nfa.getInputAlphabet()) {
+          BitSet expected = view.getSuccessor(state, i);
+          Assertions.assertEquals(expected, dense.getSuccessor(state, i));
+          Assertions.assertEquals(expected, sparse.getSuccessor(state, i));
+          if (next == null || expected.cardinality() > next.cardinality()) {
+            next = expected;
+          }
+        }
+        state = next;
+      }
+    }
+  }
+
+  @Test
+  void testAllSuccessors() {
+    for (int seed = 0; seed < 50; seed++) {
+      CompactNFA<Integer> nfa = TabakovVardiRandomNFA.getRandomAutomaton(seed, 70, CompactNFA::new);
+      AcceptorPowersetViewTS<BitSet, Integer, Integer> view = nfa.powersetView();
+      int numInputs = nfa.getInputAlphabet().size();
+      for (PowersetKernel<Integer> kernel : List.of(new PowersetKernel<>(nfa), new PowersetKernel<>(nfa, 0))) {
+        BitSet[] succs = new BitSet[numInputs];
+        for (int j = 0; j < numInputs; j++) {
+          succs[j] = new BitSet();
+        }
+        // buffers are reused across metastates
+        BitSet state = view.getInitialState();
+        for (int step = 0; step < 20 && !state.isEmpty(); step++) {
+          kernel.successors(state, succs);
+          BitSet next = null;
+          for (int j = 0; j < numInputs; j++) {
+            BitSet expected = view.getSuccessor(state, nfa.getInputAlphabet().getSymbol(j));
+            Assertions.assertEquals(expected, succs[j]);
+            Assertions.assertEquals(expected, kernel.successor(state, j));
+            if (next == null || expected.cardinality() > next.cardinality()) {
+              next = expected;
+            }
+          }
+          state = next;
+        }
+      }
+    }
+  }
+}
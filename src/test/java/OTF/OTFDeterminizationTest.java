@@ -3,18 +3,36 @@ package OTF;
 import OTF.Compress.AntichainForest2;
 import OTF.Compress.AntichainForest5;
 import OTF.Compress.AntichainForest5Idx;
+import OTF.Compress.SubsetIndex;
+import OTF.Model.DeterminizeRecord;
+import OTF.Model.Frontier;
+import OTF.Model.PowersetKernel;
 import OTF.Model.Threshold;
 import OTF.Registry.AddressRegistry;
+import OTF.Registry.AntichainForestRegistry;
 import OTF.Registry.Registry;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import net.automatalib.alphabet.Alphabet;
 import net.automatalib.automaton.fsa.DFA;
+import net.automatalib.automaton.fsa.impl.CompactDFA;
 import net.automatalib.automaton.fsa.impl.CompactNFA;
+import net.automatalib.util.automaton.Automata;
+import net.automatalib.util.automaton.fsa.NFAs;
+import net.automatalib.util.automaton.minimizer.HopcroftMinimizer;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
+import java.io.UncheckedIOException;
 import java.net.URISyntaxException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
 import java.util.Objects;
+import java.util.function.BiFunction;
+import java.util.function.Function;
 
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
@@ -53,6 +71,14 @@ public class OTFDeterminizationTest {
     registry = new AntichainForest5Idx(myNFA.size());
     newOTF = OTFDeterminization.doOTF(myNFA.powersetView(), myNFA.getInputAlphabet(), threshold, registry);
     Assertions.assertEquals(7, newOTF.size());
+
+    // The kernel reuses its successor buffers, so registries must copy what they keep
+    for (Registry kernelRegistry : new Registry[]{
+        new AntichainForest2(), new AntichainForest5(), new AntichainForest5Idx(myNFA.size()), new AddressRegistry()}) {
+      newOTF = OTFDeterminization.doOTF(
+          new PowersetKernel<>(myNFA), myNFA.getInputAlphabet(), threshold, kernelRegistry);
+      Assertions.assertEquals(7, newOTF.size());
+    }
   }
 
   @Test
@@ -70,4 +96,227 @@ public class OTFDeterminizationTest {
 
     Assertions.assertEquals(12, dfa.size());
   }
+
+  @Test
+  void testParallelBA() throws URISyntaxException {
+    CompactNFA<Integer> myNFA = BAFormat.getBAFile(getFilePath("thm5.ba").toAbsolutePath().toString());
+    Alphabet<Integer> alphabet = myNFA.getInputAlphabet();
+
+    DFA<?, Integer> sequential = OTFDeterminization.doOTF(
+        myNFA.powersetView(), alphabet, Threshold.maxSteps(100), new AntichainForestRegistry<>(myNFA));
+    CompactDFA<Integer> expected = HopcroftMinimizer.minimizeDFA(sequential, alphabet);
+
+    for (Registry registry : new Registry[]{new AntichainForestRegistry<>(myNFA), new AddressRegistry(),
+        new AntichainForestRegistry<>(myNFA, new BitSet[0], true)}) {
+      DFA<?, Integer> parallel = OTFDeterminization.doOTF(
+          myNFA.powersetView(), alphabet, Threshold.maxSteps(100), registry, 4);
+      CompactDFA<Integer> result = HopcroftMinimizer.minimizeDFA(parallel, alphabet);
+      Assertions.assertEquals(expected.size(), result.size());
+      Assertions.assertTrue(Automata.testEquivalence(expected, result, alphabet));
+    }
+
+    Assertions.assertThrows(IllegalArgumentException.class, () -> OTFDeterminization.doOTF(
+        myNFA.powersetView(), alphabet, Threshold.noop(), new AddressRegistry(), 0));
+  }
+
+  /**
+   * Registry, frontier, threshold, and workers of an OTF run on a random NFA.
+   */
+  private record OTFConfig(String name, int steps, int workers, Function<CompactNFA<Integer>, Registry> registry,
+                           BiFunction<PowersetKernel<Integer>, Alphabet<Integer>, Frontier> frontier) {}
+
+  @Test
+  void testRandomNFAs() {
+    final List<OTFConfig> configs = new ArrayList<>();
+    // frequent threshold crossings, so most minimization passes are incremental
+    configs.add(new OTFConfig("ccl", 2, 1, AntichainForestRegistry::new, (kernel, alphabet) -> Frontier.dfs()));
+    configs.add(new OTFConfig("parallel-find", 5, 1, nfa -> {
+      final AntichainForestRegistry<Integer> registry = new AntichainForestRegistry<>(nfa);
+      registry.acf.setParallelFindThreshold(1);
+      return registry;
+    }, (kernel, alphabet) -> Frontier.dfs()));
+    configs.add(new OTFConfig("set-trie", 5, 1, nfa -> {
+      final AntichainForestRegistry<Integer> registry = new AntichainForestRegistry<>(nfa);
+      registry.acf.setSubsetIndex(SubsetIndex.Kind.SET_TRIE);
+      return registry;
+    }, (kernel, alphabet) -> Frontier.dfs()));
+    // concurrent finds count hits while compress demotes, promotes, and orders the searchable ACs by them
+    configs.add(new OTFConfig("concurrent", 3, 4, nfa -> {
+      final AntichainForestRegistry<Integer> registry = new AntichainForestRegistry<>(nfa, new BitSet[0], true);
+      registry.acf.setParallelFindThreshold(1);
+      return registry;
+    }, (kernel, alphabet) -> Frontier.dfs()));
+    for (String order : new String[]{"bfs", "smallest", "largest", "dfs-recompute", "bfs-recompute"}) {
+      configs.add(new OTFConfig(order, 3, 2, AntichainForestRegistry::new,
+          (kernel, alphabet) -> order.endsWith("-recompute")
+              ? Frontier.recomputing(kernel, alphabet, order.startsWith("dfs")) : Frontier.of(order)));
+    }
+
+    for (OTFConfig config : configs) {
+      assertMinimal(config, 50, 30);
+    }
+  }
+
+  /**
+   * Determinize random NFAs with config, and check that the minimized results are the minimal DFAs.
+   */
+  private static void assertMinimal(OTFConfig config, int seeds, int size) {
+    for (int seed = 0; seed < seeds; seed++) {
+      final CompactNFA<Integer> nfa = TabakovVardiRandomNFA.getRandomTrimAutomaton(seed, size, CompactNFA::new);
+      final Alphabet<Integer> alphabet = nfa.getInputAlphabet();
+      final CompactDFA<Integer> expected = HopcroftMinimizer.minimizeDFA(NFAs.determinize(nfa, alphabet), alphabet);
+
+      final PowersetKernel<Integer> kernel = new PowersetKernel<>(nfa);
+      final DFA<?, Integer> det = OTFDeterminization.doOTF(kernel, alphabet, Threshold.maxSteps(config.steps()),
+          config.registry().apply(nfa), config.workers(), config.frontier().apply(kernel, alphabet));
+      final CompactDFA<Integer> result = HopcroftMinimizer.minimizeDFA(det, alphabet);
+      Assertions.assertEquals(expected.size(), result.size(), config.name() + " " + seed);
+      Assertions.assertTrue(Automata.testEquivalence(expected, result, alphabet), config.name() + " " + seed);
+    }
+  }
+
+  @Test
+  void testSpillingFrontier() throws URISyntaxException {
+    final CompactNFA<Integer> nfa = BAFormat.getBAFile(getFilePath("thm5.ba").toAbsolutePath().toString());
+    final Alphabet<Integer> alphabet = nfa.getInputAlphabet();
+    final DFA<?, Integer> expected = OTFDeterminization.doOTF(nfa.powersetView(), alphabet,
+        Threshold.maxSteps(100), new AntichainForestRegistry<>(nfa));
+    final DFA<?, Integer> spilled;
+    try (Frontier frontier = Frontier.spilling(4, Paths.get(System.getProperty("java.io.tmpdir")))) {
+      spilled = OTFDeterminization.doOTF(nfa.powersetView(), alphabet, Threshold.maxSteps(100),
+          new AntichainForestRegistry<>(nfa), 1, frontier);
+    }
+    Assertions.assertTrue(Automata.testEquivalence(
+        HopcroftMinimizer.minimizeDFA(expected, alphabet), HopcroftMinimizer.minimizeDFA(spilled, alphabet), alphabet));
+  }
+
+  @Test
+  void testCheckpointResume() throws Exception {
+    final Path dir = Files.createTempDirectory("otf-checkpoint-test");
+    final Path file = dir.resolve("run.ckpt");
+    final CompactNFA<Integer> thm5 = BAFormat.getBAFile(getFilePath("thm5.ba").toAbsolutePath().toString());
+    final CompactNFA<Integer> random = TabakovVardiRandomNFA.getRandomTrimAutomaton(3, 30, CompactNFA::new);
+
+    for (boolean ccl : new boolean[]{true, false}) {
+      final CompactNFA<Integer> nfa = ccl ? thm5 : random;
+      final Alphabet<Integer> alphabet = nfa.getInputAlphabet();
+      final CompactDFA<Integer> expected = HopcroftMinimizer.minimizeDFA(NFAs.determinize(nfa, alphabet), alphabet);
+      final long fingerprint = Checkpoint.fingerprint(nfa, new BitSet[0], "CCL");
+
+      // Checkpoint after every pass; the last checkpoint is a mid-run state, as if the run had been preempted
+      final Checkpoint writer = new Checkpoint(file, 0, false, fingerprint);
+      try (Frontier frontier = Frontier.spilling(4, dir)) {
+        OTFDeterminization.doOTF(nfa.powersetView(), alphabet, Threshold.maxSteps(ccl ? 100 : 3),
+            ccl ? new AntichainForestRegistry<>(nfa) : new AddressRegistry(), 1, frontier, writer);
+      }
+      Assertions.assertTrue(writer.getWritten() > 0);
+      Assertions.assertTrue(Files.size(file) > 0);
+
+      // a checkpoint of another NFA or algorithm is rejected, even with the same state and input counts
+      for (long other : new long[]{Checkpoint.fingerprint(nfa, new BitSet[0], "CCLS"),
+          Checkpoint.fingerprint(TabakovVardiRandomNFA.getRandomTrimAutomaton(4, 30, CompactNFA::new),
+              new BitSet[0], "CCL")}) {
+        Assertions.assertNotEquals(fingerprint, other);
+        Assertions.assertThrows(UncheckedIOException.class, () -> OTFDeterminization.doOTF(nfa.powersetView(),
+            alphabet, Threshold.maxSteps(100), ccl ? new AntichainForestRegistry<>(nfa) : new AddressRegistry(), 1,
+            Frontier.dfs(), new Checkpoint(file, Long.MAX_VALUE, true, other)));
+      }
+
+      final Checkpoint reader = new Checkpoint(file, Long.MAX_VALUE, true, fingerprint);
+      Assertions.assertTrue(reader.canResume());
+      final DFA<?, Integer> resumed = OTFDeterminization.doOTF(nfa.powersetView(), alphabet,
+          Threshold.maxSteps(100), ccl ? new AntichainForestRegistry<>(nfa) : new AddressRegistry(), 1,
+          Frontier.dfs(), reader);
+      final CompactDFA<Integer> result = HopcroftMinimizer.minimizeDFA(resumed, alphabet);
+      Assertions.assertEquals(expected.size(), result.size());
+      Assertions.assertTrue(Automata.testEquivalence(expected, result, alphabet));
+      Files.delete(file);
+    }
+
+    // the restored frontier pops in the checkpointed order
+    final Alphabet<Integer> alphabet = thm5.getInputAlphabet();
+    for (String order : new String[]{"dfs", "bfs", "smallest"}) {
+      final Frontier frontier = Frontier.of(order);
+      for (int i = 0; i < 5; i++) {
+        final BitSet state = new BitSet();
+        state.set(i);
+        state.set(7);
+        frontier.push(new DeterminizeRecord<>(state, i));
+      }
+      new Checkpoint(file, 0, false, 0).write(new CompactDFA<>(alphabet), new BitSet(), new IntArrayList(),
+          frontier, new AddressRegistry());
+      final Frontier restored = Frontier.of(order);
+      new Checkpoint(file, 0, true, 0).restore(alphabet, new BitSet(), new IntArrayList(), restored,
+          new AddressRegistry());
+      Assertions.assertEquals(frontier.size(), restored.size());
+      Assertions.assertEquals(frontier.pop(), restored.pop()); // first popped record
+      while (!frontier.isEmpty()) {
+        Assertions.assertEquals(frontier.pop(), restored.pop());
+      }
+      Files.delete(file);
+    }
+    Files.delete(dir);
+  }
+
+  @Test
+  void testCheckpointUnsupported() throws Exception {
+    // Registries without checkpoint support are rejected before the run, not at the first checkpoint
+    final Path dir = Files.createTempDirectory("otf-checkpoint-test");
+    final Path file = dir.resolve("run.ckpt");
+    final CompactNFA<Integer> nfa = TabakovVardiRandomNFA.getRandomTrimAutomaton(3, 20, CompactNFA::new);
+    final Alphabet<Integer> alphabet = nfa.getInputAlphabet();
+    for (Registry registry : new Registry[]{new AntichainForest2(), new AntichainForest5(),
+        new AntichainForest5Idx(nfa.size())}) {
+      Assertions.assertFalse(registry.supportsCheckpoint());
+      Assertions.assertThrows(IllegalArgumentException.class, () -> OTFDeterminization.doOTF(nfa.powersetView(),
+          alphabet, Threshold.maxSteps(3), registry, 1, Frontier.dfs(), new Checkpoint(file, 0, false, 0)));
+    }
+    Assertions.assertFalse(Files.exists(file));
+    Files.delete(dir);
+  }
+
+  @Test
+  void testStreamingOutput() throws Exception {
+    final Path dir = Files.createTempDirectory("otf-stream-test");
+    final Path file = dir.resolve("run.stream");
+    final Path baFile = dir.resolve("run.ba");
+    final CompactNFA<Integer> thm5 = BAFormat.getBAFile(getFilePath("thm5.ba").toAbsolutePath().toString());
+
+    for (int seed = 0; seed <= 8; seed++) {
+      final CompactNFA<Integer> nfa = seed == 0 ? thm5
+          : TabakovVardiRandomNFA.getRandomTrimAutomaton(seed, 30, CompactNFA::new);
+      final Alphabet<Integer> alphabet = nfa.getInputAlphabet();
+      final CompactDFA<Integer> expected = HopcroftMinimizer.minimizeDFA(NFAs.determinize(nfa, alphabet), alphabet);
+
+      // streamed states are evicted from the DFA, so registry lookups and minimization see references to them
+      final Registry registry = seed == 0 || seed > 5 ? new AntichainForestRegistry<>(nfa, new BitSet[0], seed > 5)
+          : new AddressRegistry();
+      final int size;
+      try (StreamingOutput stream = new StreamingOutput(file)) {
+        Assertions.assertNull(OTFDeterminization.doOTF(nfa.powersetView(), alphabet,
+            Threshold.maxSteps(seed == 0 ? 100 : 3), registry, seed > 5 ? 4 : 1, Frontier.dfs(), null, stream));
+        if (seed == 0) {
+          Assertions.assertTrue(stream.getStreamedDuringRun() > 0);
+          Assertions.assertTrue(stream.getRecords() < 10000); // streamed duplicates are mostly matched
+        }
+        size = stream.writeMinimalBA(alphabet, baFile);
+      }
+      Assertions.assertEquals(expected.size(), size);
+      final CompactNFA<Integer> written = BAFormat.getBAFile(baFile.toAbsolutePath().toString());
+      Assertions.assertEquals(size, written.size());
+      Assertions.assertTrue(Automata.testEquivalence(expected, NFAs.determinize(written, alphabet), alphabet));
+    }
+
+    try (StreamingOutput stream = new StreamingOutput(file)) {
+      Assertions.assertThrows(IllegalArgumentException.class, () -> OTFDeterminization.doOTF(thm5.powersetView(),
+          thm5.getInputAlphabet(), Threshold.maxSteps(100), new AntichainForest2(), 1, Frontier.dfs(), null,
+          stream));
+      Assertions.assertThrows(IllegalArgumentException.class, () -> OTFDeterminization.doOTF(thm5.powersetView(),
+          thm5.getInputAlphabet(), Threshold.maxSteps(100), new AntichainForestRegistry<>(thm5), 1, Frontier.dfs(),
+          new Checkpoint(dir.resolve("run.ckpt"), 0, false, 0), stream));
+    }
+    Files.delete(file);
+    Files.delete(baFile);
+    Files.delete(dir);
+  }
 }
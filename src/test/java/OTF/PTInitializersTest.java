@@ -28,4 +28,35 @@ class PTInitializersTest {
     int[] testPredData = new int[]{1,0,1,0};
     Assertions.assertArrayEquals(testPredData, pt.predData);
   }
+
+  @Test
+  void testArenaReuse() {
+    CompactDFA<Integer> myDFA = new CompactDFA<>(Alphabets.integers(0,1));
+    for (int i = 0; i < 4; i++) {
+      myDFA.addState(i % 2 == 0);
+    }
+    myDFA.setInitial(0, true);
+    for (int i = 0; i < 3; i++) {
+      myDFA.setTransition(i, 0, i + 1);
+      myDFA.setTransition(i, 1, 0);
+    }
+    BitSet finishedStates = BitSetUtils.convertListToBitSet(List.of(0,1,2));
+
+    Hopcroft fresh = new Hopcroft();
+    PTInitializers.initDeterministic(fresh, myDFA, finishedStates);
+    int predLength = fresh.numStates * fresh.numInputs;
+
+    PTArena arena = new PTArena();
+    for (int pass = 0; pass < 3; pass++) {
+      Hopcroft pt = new Hopcroft();
+      PTInitializers.initDeterministic(pt, myDFA, finishedStates, arena);
+      Assertions.assertEquals(fresh.numStates, pt.numStates);
+      Assertions.assertArrayEquals(fresh.predData, Arrays.copyOf(pt.predData, predLength));
+      pt.computeCoarsestStablePartition();
+    }
+    long bytes = arena.getBytesAllocated();
+    Hopcroft pt = new Hopcroft();
+    PTInitializers.initDeterministic(pt, myDFA, finishedStates, arena);
+    Assertions.assertEquals(bytes, arena.getBytesAllocated()); // arrays are reused
+  }
 }
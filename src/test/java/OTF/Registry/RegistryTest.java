@@ -10,7 +10,11 @@ import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
 import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
@@ -45,6 +49,79 @@ public class RegistryTest {
     Assertions.assertEquals("OTF1", addressRegistry.toString());
   }
 
+  @Test
+  void testGetOrPut() {
+    CompactNFA<Integer> myNfa = new CompactNFA<>(Alphabets.integers(0,1));
+    for(int i=0;i<4;i++) {
+      myNfa.addState();
+    }
+    for (Registry registry : List.of(new AddressRegistry(), new AntichainForestRegistry<>(myNfa),
+        new AntichainForest5())) {
+      BitSet buffer = BitSetUtils.convertListToBitSet(List.of(1,2,3));
+      Assertions.assertEquals(1, registry.getOrPut(buffer, 1));
+      Assertions.assertEquals(1, registry.getOrPut(buffer, 2));
+
+      // reusing the buffer doesn't change the stored element
+      buffer.clear();
+      buffer.set(1);
+      Assertions.assertEquals(0, registry.getOrPut(buffer, 0));
+      Assertions.assertEquals(1, registry.get(BitSetUtils.convertListToBitSet(List.of(1,2,3))));
+      Assertions.assertEquals(0, registry.get(buffer));
+    }
+  }
+
+  @Test
+  void testConcurrentAntichainForestRegistry() throws InterruptedException {
+    CompactNFA<Integer> myNfa = new CompactNFA<>(Alphabets.integers(0,1));
+    for(int i=0;i<12;i++) {
+      myNfa.addState();
+    }
+    final int numElts = 2000;
+    final int numThreads = 8;
+    final BitSet[] simRels = new BitSet[12];
+    simRels[0] = BitSetUtils.convertListToBitSet(List.of(1)); // with 0, 1 is redundant
+    for (BitSet[] sims : List.of(new BitSet[0], simRels)) {
+      AntichainForestRegistry<Integer> registry = new AntichainForestRegistry<>(myNfa, sims, true);
+      Assertions.assertTrue(registry.supportsConcurrentGet());
+      final AtomicInteger nextState = new AtomicInteger();
+      final int[][] states = new int[numThreads][numElts];
+      final int[][] gets = new int[numThreads][numElts];
+      final Thread[] threads = new Thread[numThreads];
+      for (int t = 0; t < numThreads; t++) {
+        final int thread = t;
+        threads[t] = new Thread(() -> {
+          final BitSet buffer = new BitSet();
+          for (int k = 0; k < numElts; k++) {
+            final int i = (k * 7 + thread * 131) % numElts; // threads race on different elements
+            buffer.clear();
+            buffer.or(BitSet.valueOf(new long[]{i + 1}));
+            states[thread][i] = registry.getOrPut(buffer, nextState.getAndIncrement());
+            gets[thread][i] = registry.get(buffer);
+          }
+        });
+        threads[t].start();
+      }
+      for (Thread thread : threads) {
+        thread.join();
+      }
+
+      // every thread got the same state for each (pruned) element, and each has its own state
+      final Map<Long, Integer> prunedStates = new HashMap<>();
+      for (int i = 0; i < numElts; i++) {
+        final int elt = i;
+        final long pruned = sims.length > 0 && (i + 1) % 2 == 1 ? (i + 1) & ~2L : i + 1;
+        final int state = prunedStates.computeIfAbsent(pruned, p -> states[0][elt]);
+        for (int t = 0; t < numThreads; t++) {
+          Assertions.assertEquals(state, states[t][i]);
+          Assertions.assertEquals(state, gets[t][i]);
+        }
+        Assertions.assertEquals(state, registry.get(BitSet.valueOf(new long[]{i + 1})));
+      }
+      Assertions.assertEquals(prunedStates.size(), new HashSet<>(prunedStates.values()).size());
+      Assertions.assertEquals(prunedStates.size(), registry.getMaxIntermediateCount());
+    }
+  }
+
   @Test
   void testAntichainForestRegistryCCL() {
     CompactNFA<Integer> myNfa = new CompactNFA<>(Alphabets.integers(0,1));
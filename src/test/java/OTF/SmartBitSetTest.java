@@ -723,4 +723,57 @@ class SmartBitSetTest {
     // so sub is not a subset of sup.
     assertFalse(sub.isSubset(sup));
   }
-}
\ No newline at end of file
+
+  @Test
+  void testCopyFromAndTrimmedCopy() {
+    java.util.BitSet big = new java.util.BitSet();
+    big.set(3);
+    big.set(300);
+    bitSet1.copyFrom(big);
+    assertEquals(SmartBitSet.valueOf(big.toLongArray()), bitSet1);
+    assertEquals(SmartBitSet.valueOf(big.toLongArray()).hashCode(), bitSet1.hashCode());
+
+    // shrinking reuses the array and clears the old words
+    java.util.BitSet small = new java.util.BitSet();
+    small.set(5);
+    final long[] words = bitSet1.words;
+    bitSet1.copyFrom(small);
+    assertSame(words, bitSet1.words);
+    assertEquals(SmartBitSet.valueOf(small.toLongArray()), bitSet1);
+    assertEquals(SmartBitSet.valueOf(small.toLongArray()).hashCode(), bitSet1.hashCode());
+    assertEquals(1, bitSet1.cardinality());
+
+    SmartBitSet copy = bitSet1.trimmedCopy();
+    assertEquals(bitSet1, copy);
+    assertEquals(1, copy.words.length);
+    assertSame(words, bitSet1.words);
+    bitSet1.copyFrom(new java.util.BitSet());
+    assertTrue(bitSet1.isEmpty());
+    assertTrue(copy.get(5));
+  }
+
+  @Test
+  void testSignature() {
+    SmartBitSet sub = createBitSet(200, 1, 129);
+    SmartBitSet sup = createBitSet(200, 1, 65, 129);
+    assertEquals(1L << 1, sub.signature()); // 1 and 129 fold onto the same bit
+    assertEquals(1L << 1, sup.signature()); // and so does 65
+    assertTrue(sub.isSubsetBySignature(sup));
+    assertFalse(sup.isSubsetBySignature(sub));
+
+    // same signature, but not a subset: the word scan decides
+    SmartBitSet other = createBitSet(200, 1, 65);
+    assertEquals(sup.signature(), other.signature());
+    assertFalse(sub.isSubsetBySignature(other));
+
+    // rejected by the signatures alone; mutations invalidate the cached signature
+    SmartBitSet far = createBitSet(200, 2);
+    assertNotEquals(0L, far.signature() & ~sup.signature());
+    assertFalse(far.isSubsetBySignature(sup));
+    sup.set(66); // folds onto bit 2, so only the word scan rejects far
+    assertFalse(far.isSubsetBySignature(sup));
+    sup.set(2);
+    assertTrue(far.isSubsetBySignature(sup));
+    assertEquals(sup.signature(), sup.trimmedCopy().signature());
+  }
+}